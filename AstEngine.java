@@ -0,0 +1,94 @@
+import java.util.List;
+
+// Motor de execução que roda direto a árvore, sem gerar código: traduz
+// Stmt/Expr para os nós executáveis de Node (com os slots já resolvidos
+// pelo SemanticAnalyzer) e executa a raiz. Os nós se especializam durante
+// a execução; veja Node.
+public class AstEngine {
+
+    private final Node.Block root;
+    private final int frameSize;
+    private final VmIo io;
+
+    public AstEngine(List<Stmt> program, int frameSize) {
+        this(program, frameSize, new VmIo());
+    }
+
+    public AstEngine(List<Stmt> program, int frameSize, VmIo io) {
+        this.root = block(program);
+        this.frameSize = frameSize;
+        this.io = io;
+    }
+
+    public void run() {
+        try {
+            root.execute(new Node.Frame(frameSize, io));
+        } finally {
+            io.flush();
+        }
+    }
+
+    private Node.Block block(List<Stmt> statements) {
+        Node.StmtNode[] nodes = new Node.StmtNode[statements.size()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = stmt(statements.get(i));
+        }
+        return new Node.Block(nodes);
+    }
+
+    private Node.StmtNode stmt(Stmt stmt) {
+        if (stmt instanceof Stmt.VarDecl) {
+            // Toda declaração zera o slot: os slots de um bloco são
+            // reaproveitados depois dele, por outro bloco ou por uma
+            // declaração do nível de cima
+            Stmt.VarDecl v = (Stmt.VarDecl) stmt;
+            if (v.type.type == TokenType.INT) {
+                return new Node.IntAssign(v.slot, new Node.Const(0.0));
+            }
+            return new Node.RealAssign(v.slot, new Node.Const(0.0));
+        } else if (stmt instanceof Stmt.Assign) {
+            Stmt.Assign a = (Stmt.Assign) stmt;
+            if ("int".equals(a.varType)) {
+                return new Node.IntAssign(a.slot, expr(a.value));
+            }
+            return new Node.RealAssign(a.slot, expr(a.value));
+        } else if (stmt instanceof Stmt.Print) {
+            return new Node.Print(expr(((Stmt.Print) stmt).expression));
+        } else if (stmt instanceof Stmt.Input) {
+            Stmt.Input i = (Stmt.Input) stmt;
+            return new Node.Input(i.slot, i.name.lexeme, "int".equals(i.varType));
+        } else if (stmt instanceof Stmt.ExpressionStmt) {
+            Expr e = ((Stmt.ExpressionStmt) stmt).expression;
+            return new Node.Discard(expr(e), e.isInt());
+        } else if (stmt instanceof Stmt.Block) {
+            return block(((Stmt.Block) stmt).statements);
+        } else if (stmt instanceof Stmt.If) {
+            Stmt.If i = (Stmt.If) stmt;
+            return new Node.If(expr(i.condition), stmt(i.thenBranch),
+                    i.elseBranch != null ? stmt(i.elseBranch) : null);
+        } else if (stmt instanceof Stmt.While) {
+            Stmt.While w = (Stmt.While) stmt;
+            return new Node.While(expr(w.condition), stmt(w.body));
+        }
+        throw new RuntimeException("Tipo de comando desconhecido.");
+    }
+
+    private Node.ExprNode expr(Expr expr) {
+        if (expr instanceof Expr.Literal) {
+            return new Node.Const(((Expr.Literal) expr).value);
+        } else if (expr instanceof Expr.Variable) {
+            Expr.Variable v = (Expr.Variable) expr;
+            return v.isInt() ? new Node.IntVar(v.slot) : new Node.RealVar(v.slot);
+        } else if (expr instanceof Expr.Grouping) {
+            return expr(((Expr.Grouping) expr).expression);
+        } else if (expr instanceof Expr.Unary) {
+            Expr.Unary u = (Expr.Unary) expr;
+            if (u.operator.type != TokenType.MINUS) return expr(u.right);
+            return u.isInt() ? new Node.IntNeg(expr(u.right)) : new Node.RealNeg(expr(u.right));
+        } else if (expr instanceof Expr.Binary) {
+            Expr.Binary b = (Expr.Binary) expr;
+            return new Node.UninitializedBinary(b.operator.type, b.isInt(), expr(b.left), expr(b.right));
+        }
+        throw new RuntimeException("Tipo de expressão desconhecido.");
+    }
+}
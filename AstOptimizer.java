@@ -0,0 +1,230 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// Otimizações sobre a árvore, executadas entre o SemanticAnalyzer e o
+// CodeGenerator:
+//   - dobra de constantes (1 + 2 * 3 vira 7)
+//   - simplificações algébricas: x*1, 1*x, x/1 e x-0; x+0, 0+x e -(-x)
+//     só em int
+//   - if/while com condição constante perdem o ramo que nunca executa
+//   - comandos depois de um laço infinito são removidos (inalcançáveis)
+//
+// Os valores dobrados são calculados com as mesmas operações do
+// Interpreter (long para expressões int, double para real). Contas int
+// com divisão por zero ou resultado fora da faixa exata de um double
+// ficam para a execução. As simplificações só trocam uma expressão por um
+// operando do mesmo tipo. Em real, x+0, 0+x e -(-x) trocariam -0.0 por
+// 0.0, então ficam como estão.
+public class AstOptimizer {
+
+    // Maior inteiro que um double representa sem perda (2^53)
+    private static final double MAX_EXACT = 9007199254740992.0;
+
+    // Se o último comando otimizado pode terminar (falso após laço infinito)
+    private boolean completes;
+
+    public List<Stmt> optimize(List<Stmt> program) {
+        return optimizeList(program);
+    }
+
+    private List<Stmt> optimizeList(List<Stmt> statements) {
+        List<Stmt> result = new ArrayList<>();
+        boolean reachable = true;
+        for (Stmt stmt : statements) {
+            if (!reachable) break;
+            Stmt optimized = optimizeStmt(stmt);
+            if (optimized != null) result.add(optimized);
+            reachable = completes;
+        }
+        completes = reachable;
+        return result;
+    }
+
+    // Devolve o comando otimizado, ou null se ele pode ser removido
+    private Stmt optimizeStmt(Stmt stmt) {
+        completes = true;
+        if (stmt instanceof Stmt.Assign) {
+            Stmt.Assign a = (Stmt.Assign) stmt;
+            Stmt.Assign result = new Stmt.Assign(a.name, optimizeExpr(a.value));
+            result.slot = a.slot;
+            result.varType = a.varType;
+            return result;
+        } else if (stmt instanceof Stmt.Print) {
+            return new Stmt.Print(optimizeExpr(((Stmt.Print) stmt).expression));
+        } else if (stmt instanceof Stmt.ExpressionStmt) {
+            return new Stmt.ExpressionStmt(optimizeExpr(((Stmt.ExpressionStmt) stmt).expression));
+        } else if (stmt instanceof Stmt.Block) {
+            return new Stmt.Block(optimizeList(((Stmt.Block) stmt).statements));
+        } else if (stmt instanceof Stmt.If) {
+            return optimizeIf((Stmt.If) stmt);
+        } else if (stmt instanceof Stmt.While) {
+            return optimizeWhile((Stmt.While) stmt);
+        }
+        return stmt; // VarDecl e Input não mudam
+    }
+
+    private Stmt optimizeIf(Stmt.If stmt) {
+        Expr condition = optimizeExpr(stmt.condition);
+        if (condition instanceof Expr.Literal) {
+            Stmt taken = isTrue((Expr.Literal) condition) ? stmt.thenBranch : stmt.elseBranch;
+            return taken == null ? null : optimizeStmt(taken);
+        }
+
+        Stmt thenBranch = optimizeStmt(stmt.thenBranch);
+        boolean thenCompletes = completes;
+        Stmt elseBranch = null;
+        boolean elseCompletes = true;
+        if (stmt.elseBranch != null) {
+            elseBranch = optimizeStmt(stmt.elseBranch);
+            elseCompletes = completes;
+        }
+        completes = thenCompletes || elseCompletes;
+        // Um ramo removido continua precisando de um comando no lugar
+        if (thenBranch == null) thenBranch = new Stmt.Block(new ArrayList<>());
+        return new Stmt.If(condition, thenBranch, elseBranch);
+    }
+
+    private Stmt optimizeWhile(Stmt.While stmt) {
+        Expr condition = optimizeExpr(stmt.condition);
+        if (condition instanceof Expr.Literal && !isTrue((Expr.Literal) condition)) {
+            completes = true;
+            return null;
+        }
+        Stmt body = optimizeStmt(stmt.body);
+        if (body == null) body = new Stmt.Block(new ArrayList<>());
+        // Sem break na linguagem, um while(constante verdadeira) nunca termina
+        completes = !(condition instanceof Expr.Literal);
+        return new Stmt.While(condition, body);
+    }
+
+    private Expr optimizeExpr(Expr expr) {
+        if (expr instanceof Expr.Grouping) {
+            return optimizeExpr(((Expr.Grouping) expr).expression);
+        } else if (expr instanceof Expr.Unary) {
+            return optimizeUnary((Expr.Unary) expr);
+        } else if (expr instanceof Expr.Binary) {
+            return optimizeBinary((Expr.Binary) expr);
+        }
+        return expr; // Literal e Variable
+    }
+
+    private Expr optimizeUnary(Expr.Unary u) {
+        Expr right = optimizeExpr(u.right);
+        if (u.operator.type != TokenType.MINUS) return right;
+
+        // O CodeGenerator calcula -x como 0 - x
+        if (right instanceof Expr.Literal) {
+            Expr folded = fold(TokenType.MINUS, literal(0.0, right.isInt()), (Expr.Literal) right, u.type);
+            if (folded != null) return folded;
+        }
+        // Em real, -(-x) não é x quando x é -0.0: 0 - (0 - -0.0) dá 0.0
+        if (right.isInt() && right instanceof Expr.Unary
+                && ((Expr.Unary) right).operator.type == TokenType.MINUS) {
+            return ((Expr.Unary) right).right;
+        }
+        Expr.Unary result = new Expr.Unary(u.operator, right);
+        result.type = u.type;
+        return result;
+    }
+
+    private Expr optimizeBinary(Expr.Binary b) {
+        Expr left = optimizeExpr(b.left);
+        Expr right = optimizeExpr(b.right);
+        TokenType op = b.operator.type;
+
+        if (left instanceof Expr.Literal && right instanceof Expr.Literal) {
+            Expr folded = fold(op, (Expr.Literal) left, (Expr.Literal) right, b.type);
+            if (folded != null) return folded;
+        }
+
+        // Só troca pelo operando se o tipo da expressão não muda
+        boolean leftKeepsType = b.type.equals(left.type);
+        boolean rightKeepsType = b.type.equals(right.type);
+        switch (op) {
+            case PLUS:
+                // Em real, -0.0 + 0 dá 0.0: só vale para int
+                if (!b.isInt()) break;
+                if (leftKeepsType && isConstant(right, 0.0)) return left;
+                if (rightKeepsType && isConstant(left, 0.0)) return right;
+                break;
+            case MINUS:
+                if (leftKeepsType && isConstant(right, 0.0)) return left;
+                break;
+            case STAR:
+                if (leftKeepsType && isConstant(right, 1.0)) return left;
+                if (rightKeepsType && isConstant(left, 1.0)) return right;
+                break;
+            case SLASH:
+                if (leftKeepsType && isConstant(right, 1.0)) return left;
+                break;
+            default:
+                break;
+        }
+        Expr.Binary result = new Expr.Binary(left, b.operator, right);
+        result.type = b.type;
+        return result;
+    }
+
+    // Dobra a operação entre duas constantes; null se deve ficar para a execução
+    private static Expr fold(TokenType op, Expr.Literal left, Expr.Literal right, String type) {
+        if (!"int".equals(type)) {
+            return literal(foldReal(op, left.value, right.value), false);
+        }
+        long a = (long) left.value;
+        long b = (long) right.value;
+        if (op == TokenType.SLASH && b == 0) return null;
+        long value = foldInt(op, a, b);
+        if (Math.abs((double) value) > MAX_EXACT) return null;
+        return literal(value, true);
+    }
+
+    private static long foldInt(TokenType op, long a, long b) {
+        switch (op) {
+            case PLUS:          return a + b;
+            case MINUS:         return a - b;
+            case STAR:          return a * b;
+            case SLASH:         return a / b;
+            case EQUAL_EQUAL:   return a == b ? 1 : 0;
+            case BANG_EQUAL:    return a != b ? 1 : 0;
+            case GREATER:       return a > b ? 1 : 0;
+            case GREATER_EQUAL: return a >= b ? 1 : 0;
+            case LESS:          return a < b ? 1 : 0;
+            case LESS_EQUAL:    return a <= b ? 1 : 0;
+            default:
+                throw new RuntimeException("Operador não suportado: " + op);
+        }
+    }
+
+    // Mesmo cálculo que o Interpreter faz para cada opcode
+    private static double foldReal(TokenType op, double a, double b) {
+        switch (op) {
+            case PLUS:          return a + b;
+            case MINUS:         return a - b;
+            case STAR:          return a * b;
+            case SLASH:         return a / b;
+            case EQUAL_EQUAL:   return a == b ? 1.0 : 0.0;
+            case BANG_EQUAL:    return a != b ? 1.0 : 0.0;
+            case GREATER:       return a > b ? 1.0 : 0.0;
+            case GREATER_EQUAL: return a >= b ? 1.0 : 0.0;
+            case LESS:          return a < b ? 1.0 : 0.0;
+            case LESS_EQUAL:    return a <= b ? 1.0 : 0.0;
+            default:
+                throw new RuntimeException("Operador não suportado: " + op);
+        }
+    }
+
+    private static Expr.Literal literal(double value, boolean isInt) {
+        Expr.Literal literal = new Expr.Literal(value, isInt);
+        literal.type = isInt ? "int" : "real";
+        return literal;
+    }
+
+    private static boolean isConstant(Expr expr, double value) {
+        return expr instanceof Expr.Literal && ((Expr.Literal) expr).value == value;
+    }
+
+    // JMP_IF_FALSE só salta quando a condição é 0.0
+    private static boolean isTrue(Expr.Literal literal) {
+        return literal.value != 0.0;
+    }
+}
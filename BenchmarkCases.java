@@ -0,0 +1,218 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+// Casos dos benchmarks JMH (módulo jmh/): os programas medidos e, para cada
+// etapa do compilador ou motor de execução, a operação repetida na
+// medição. As entradas de cada etapa são preparadas fora da operação.
+//
+// Etapas: lex, parse, semantic, codegen, ssa, peephole (cada uma sozinha,
+// sobre a saída das anteriores), run (executar um programa já compilado)
+// e pipeline (compilar e executar). Motores das duas últimas: interp,
+// tiered, jvm, reg e ast.
+//
+// Programas: small, large, loop, deep[:N] ou o caminho de um arquivo. Não
+// podem usar INPUT; a saída é descartada. O deep:N aninha N comandos e tem
+// uma expressão com N níveis de parênteses (deep sozinho usa N = 10000);
+// como parser, semântico e gerador não são recursivos, o tempo por
+// operação cresce linearmente com N.
+public final class BenchmarkCases {
+
+    // Desligadas: as fases não são medidas uma a uma
+    private static final CompileMetrics NO_METRICS = new CompileMetrics(null);
+
+    private BenchmarkCases() {
+    }
+
+    // O valor devolvido pela operação: nas etapas run e pipeline, as
+    // instruções despachadas (-1 nos motores que não contam); nas outras, o
+    // tamanho do resultado (tokens, comandos ou instruções), que depende do
+    // trabalho todo e impede o JIT de descartá-lo
+    public static LongSupplier operation(String stage, String source, String engine, CompileOptions options) {
+        switch (stage) {
+            case "lex":
+                return () -> new Lexer(source).tokenize().size();
+            case "parse": {
+                List<Token> tokens = new Lexer(source).tokenize();
+                return () -> new Parser(tokens).parse().size();
+            }
+            case "semantic": {
+                List<Stmt> program = new Parser(new Lexer(source)).parse();
+                return () -> {
+                    new SemanticAnalyzer().analyze(program);
+                    return program.size();
+                };
+            }
+            case "codegen": {
+                List<Stmt> program = frontEnd(source, options).program;
+                return () -> new CodeGenerator().generate(program).size();
+            }
+            case "ssa": {
+                CompileOptions.Tree tree = frontEnd(source, options);
+                if (!tree.shallow) throw new RuntimeException("Árvore funda demais para o SSA.");
+                List<Instruction> code = new CodeGenerator().generate(tree.program);
+                return () -> new SsaOptimizer().optimize(code).size();
+            }
+            case "peephole": {
+                CompileOptions.Tree tree = frontEnd(source, options);
+                List<Instruction> generated = new CodeGenerator().generate(tree.program);
+                List<Instruction> code = options.ssa && tree.shallow
+                        ? new SsaOptimizer().optimize(generated) : generated;
+                return () -> new PeepholeOptimizer().optimize(code).size();
+            }
+            case "run": {
+                CompileOptions.Result compiled = compile(source, options);
+                return () -> execute(engine, compiled);
+            }
+            case "pipeline":
+                return () -> execute(engine, compile(source, options));
+            default:
+                throw new RuntimeException("Etapa desconhecida: " + stage);
+        }
+    }
+
+    // Se o valor da operação é a contagem de instruções executadas. O
+    // tiered não entra: as voltas dos laços compilados não são contadas
+    public static boolean countsInstructions(String stage, String engine) {
+        return (stage.equals("run") || stage.equals("pipeline"))
+                && (engine.equals("interp") || engine.equals("reg"));
+    }
+
+    // Árvore analisada e otimizada, como o Main entrega ao gerador
+    private static CompileOptions.Tree frontEnd(String source, CompileOptions options) {
+        return options.frontEnd(new Parser(new Lexer(source)).parse(), NO_METRICS);
+    }
+
+    private static CompileOptions.Result compile(String source, CompileOptions options) {
+        return options.compile(new Parser(new Lexer(source)).parse(), NO_METRICS);
+    }
+
+    // Executa com a saída descartada; devolve as instruções despachadas (-1 se o motor não conta)
+    private static long execute(String engine, CompileOptions.Result c) {
+        VmIo io = new VmIo(new OutputSink(OutputStream.nullOutputStream(), false),
+                new NumberReader(new ByteArrayInputStream(new byte[0])), false);
+        switch (engine) {
+            case "interp":
+            case "tiered": {
+                Interpreter interpreter = engine.equals("interp")
+                        ? new Interpreter(c.program, io)
+                        : new Interpreter(c.program, io, 1000);
+                interpreter.run();
+                return interpreter.getExecutedCount();
+            }
+            case "jvm":
+                // Sobre o código, não sobre o programa: a tradução entra na medição
+                new JvmEngine(c.program.code(), c.program.frameSize, io).run();
+                return -1;
+            case "reg": {
+                RegisterCodeGenerator generator = new RegisterCodeGenerator(c.tree.slotCount);
+                List<RegInstruction> code = generator.generate(c.tree.program);
+                RegisterInterpreter interpreter = new RegisterInterpreter(code,
+                        generator.getRealRegisters(), generator.getIntRegisters(), io);
+                interpreter.run();
+                return interpreter.getExecutedCount();
+            }
+            case "ast":
+                new AstEngine(c.tree.program, c.tree.slotCount, io).run();
+                return -1;
+            default:
+                throw new RuntimeException("Motor desconhecido: " + engine);
+        }
+    }
+
+    // ---------------- Programas ----------------
+
+    public static String source(String program) throws IOException {
+        switch (program) {
+            case "small": return SMALL;
+            case "large": return large(400);
+            case "loop":  return LOOP;
+            case "deep":  return deep(10000);
+            default:
+                if (program.startsWith("deep:")) return deep(Integer.parseInt(program.substring(5)));
+                return new String(Files.readAllBytes(Paths.get(program)), StandardCharsets.UTF_8);
+        }
+    }
+
+    // O laço do programa.txt, sem o INPUT
+    private static final String SMALL =
+            "int valor;\n"
+            + "int i;\n"
+            + "valor = 10;\n"
+            + "i = 0;\n"
+            + "while (i < valor) {\n"
+            + "    print i + 1;\n"
+            + "    i = i + 1;\n"
+            + "}\n";
+
+    // Laços aninhados com aritmética int e real (cerca de 250 mil voltas)
+    private static final String LOOP =
+            "int i; int j; int n; int s; real x;\n"
+            + "n = 500; i = 0; s = 0; x = 0.0;\n"
+            + "while (i < n) {\n"
+            + "    j = 0;\n"
+            + "    while (j < n) {\n"
+            + "        s = s + i * j - (j / 3);\n"
+            + "        x = x + 0.5 * j;\n"
+            + "        j = j + 1;\n"
+            + "    }\n"
+            + "    i = i + 1;\n"
+            + "}\n"
+            + "print s;\n"
+            + "print x;\n";
+
+    // Programa longo em linha reta, com ifs e laços curtos: exercita o
+    // front-end mais que a execução
+    private static String large(int blocks) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("int a; int b; int c; real x; real y;\n");
+        sb.append("a = 1; b = 2; c = 3; x = 1.5; y = 2.5;\n");
+        for (int k = 0; k < blocks; k++) {
+            sb.append("a = (a + ").append(k).append(") * 3 - b / 2;\n");
+            sb.append("x = x * 0.5 + y - ").append(k).append(".25;\n");
+            sb.append("if (a > b) { b = a - c; } else { c = c + ").append(k % 7).append("; }\n");
+            sb.append("{ int t; t = 0; while (t < 3) { y = y + t * 2; t = t + 1; } }\n");
+            if (k % 50 == 0) sb.append("print a + b + c;\n");
+        }
+        sb.append("print x + y;\n");
+        return sb.toString();
+    }
+
+    // Aninhamento sintético de profundidade n: ifs, blocos e laços de uma
+    // volta uns dentro dos outros e, no fundo, a = (((a + 1) + 1) ... + 1)
+    // com n parênteses. Executado, imprime 1 + n.
+    private static String deep(int depth) {
+        StringBuilder sb = new StringBuilder();
+        StringBuilder closing = new StringBuilder();
+        sb.append("int a;\na = 1;\n");
+        for (int k = 0; k < depth; k++) {
+            switch (k % 3) {
+                case 0:
+                    sb.append("if (a > 0) {\n");
+                    closing.append("}\n");
+                    break;
+                case 1:
+                    sb.append("{ int v").append(k).append(";\n");
+                    closing.append("}\n");
+                    break;
+                default:
+                    sb.append("while (v").append(k - 1).append(" < 1) { v").append(k - 1)
+                            .append(" = v").append(k - 1).append(" + 1;\n");
+                    closing.append("}\n");
+                    break;
+            }
+        }
+        sb.append("a = ");
+        for (int k = 0; k < depth; k++) sb.append('(');
+        sb.append('a');
+        for (int k = 0; k < depth; k++) sb.append(" + 1)");
+        sb.append(";\nprint a;\n");
+        sb.append(closing);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,295 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Forma compacta do código intermediário: um int[] com o opcode seguido
+// dos operandos de cada instrução, um pool de constantes sem repetições e
+// a tabela de nomes das variáveis. Pode ser gravada em um arquivo .bc e
+// carregada depois sem passar de novo pelo léxico, sintático e semântico.
+// O int[] é a forma gravada; quem executa é o Interpreter, sobre as
+// Instruction que decode monta a partir dele.
+//
+// Formato do arquivo (big-endian):
+//   magic "A3BC", versão, profundidade máxima das pilhas double e int,
+//   tamanho do frame,
+//   nº de constantes, nº de nomes, nº de instruções, nº de palavras,
+//   constantes (double), palavras (int), nomes (u2 tamanho + UTF-8)
+public class Bytecode {
+
+    private static final int MAGIC = 0x41334243; // "A3BC"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 9 * 4;
+
+    public final int[] code;
+    public final double[] constants;
+    public final String[] names;
+    public final int instructionCount;
+    public final int maxStackDepth;
+    public final int maxIntStackDepth;
+    public final int frameSize;
+
+    private Bytecode(int[] code, double[] constants, String[] names, int instructionCount,
+                     int maxStackDepth, int maxIntStackDepth, int frameSize) {
+        this.code = code;
+        this.constants = constants;
+        this.names = names;
+        this.instructionCount = instructionCount;
+        this.maxStackDepth = maxStackDepth;
+        this.maxIntStackDepth = maxIntStackDepth;
+        this.frameSize = frameSize;
+    }
+
+    public static Bytecode encode(List<Instruction> instructions, int maxStackDepth,
+                                  int maxIntStackDepth, int frameSize) {
+        List<Integer> words = new ArrayList<>();
+        List<Double> constants = new ArrayList<>();
+        Map<Long, Integer> constantIndex = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        Map<String, Integer> nameIndex = new HashMap<>();
+
+        for (Instruction ins : instructions) {
+            words.add(ins.op.ordinal());
+            switch (ins.op) {
+                case PUSH_CONST:
+                case IPUSH_CONST:
+                    words.add(constant(ins.numOperand, constants, constantIndex));
+                    break;
+                case LOAD_VAR:
+                case STORE_VAR:
+                case INPUT:
+                case ILOAD_VAR:
+                case ISTORE_VAR:
+                case IINPUT:
+                    words.add(ins.slot);
+                    words.add(name(ins.strOperand, names, nameIndex));
+                    break;
+                case INC_VAR:
+                case IINC_VAR:
+                    words.add(ins.slot);
+                    words.add(name(ins.strOperand, names, nameIndex));
+                    words.add(constant(ins.numOperand, constants, constantIndex));
+                    break;
+                case ADD_VV:
+                case SUB_VV:
+                case MUL_VV:
+                case DIV_VV:
+                case IADD_VV:
+                case ISUB_VV:
+                case IMUL_VV:
+                case IDIV_VV:
+                    words.add(ins.slot);
+                    words.add(name(ins.strOperand, names, nameIndex));
+                    words.add(ins.slot2);
+                    words.add(name(ins.strOperand2, names, nameIndex));
+                    break;
+                default:
+                    if (ins.op.isJump()) words.add(ins.jumpTarget);
+                    break;
+            }
+        }
+
+        int[] code = new int[words.size()];
+        for (int i = 0; i < code.length; i++) code[i] = words.get(i);
+        double[] pool = new double[constants.size()];
+        for (int i = 0; i < pool.length; i++) pool[i] = constants.get(i);
+
+        return new Bytecode(code, pool, names.toArray(new String[0]),
+                instructions.size(), maxStackDepth, maxIntStackDepth, frameSize);
+    }
+
+    // Chave pelos bits para diferenciar 0.0 de -0.0
+    private static int constant(double value, List<Double> constants, Map<Long, Integer> constantIndex) {
+        long bits = Double.doubleToRawLongBits(value);
+        Integer index = constantIndex.get(bits);
+        if (index == null) {
+            index = constants.size();
+            constants.add(value);
+            constantIndex.put(bits, index);
+        }
+        return index;
+    }
+
+    private static int name(String name, List<String> names, Map<String, Integer> nameIndex) {
+        Integer index = nameIndex.get(name);
+        if (index == null) {
+            index = names.size();
+            names.add(name);
+            nameIndex.put(name, index);
+        }
+        return index;
+    }
+
+    // Reconstrói as instruções executadas pelo Interpreter direto num
+    // array (o CompiledProgram fica com ele, sem cópia). As Instruction são
+    // imutáveis, então as iguais são criadas uma vez só: as sem operando por
+    // opcode, as constantes por índice do pool e as de variável por opcode,
+    // slot e nome; num programa típico sobram poucas dezenas de objetos
+    // além dos saltos e das superinstruções.
+    public Instruction[] decode() {
+        OpCode[] opcodes = OpCode.values();
+        Instruction[] instructions = new Instruction[instructionCount];
+        Instruction[] simple = new Instruction[opcodes.length];
+        Instruction[] pushes = new Instruction[constants.length * 2];
+        Map<Long, Instruction> variables = new HashMap<>();
+        int i = 0;
+        int n = 0;
+        while (i < code.length) {
+            OpCode op = opcodes[code[i++]];
+            Instruction ins;
+            switch (op) {
+                case PUSH_CONST:
+                case IPUSH_CONST: {
+                    int index = code[i++] * 2 + (op == OpCode.PUSH_CONST ? 0 : 1);
+                    ins = pushes[index];
+                    if (ins == null) {
+                        ins = pushes[index] = new Instruction(op, constants[index / 2]);
+                    }
+                    break;
+                }
+                case LOAD_VAR:
+                case STORE_VAR:
+                case INPUT:
+                case ILOAD_VAR:
+                case ISTORE_VAR:
+                case IINPUT: {
+                    int slot = code[i++];
+                    int name = code[i++];
+                    long key = ((long) op.ordinal() << 56) | ((long) slot << 28) | name;
+                    ins = variables.get(key);
+                    if (ins == null) {
+                        ins = new Instruction(op, names[name], slot);
+                        variables.put(key, ins);
+                    }
+                    break;
+                }
+                case INC_VAR:
+                case IINC_VAR: {
+                    int slot = code[i++];
+                    String name = names[code[i++]];
+                    ins = new Instruction(op, name, constants[code[i++]], slot, -1);
+                    break;
+                }
+                case ADD_VV:
+                case SUB_VV:
+                case MUL_VV:
+                case DIV_VV:
+                case IADD_VV:
+                case ISUB_VV:
+                case IMUL_VV:
+                case IDIV_VV: {
+                    int slot = code[i++];
+                    String name = names[code[i++]];
+                    int slot2 = code[i++];
+                    ins = new Instruction(op, name, slot, names[code[i++]], slot2);
+                    break;
+                }
+                default:
+                    if (op.isJump()) {
+                        ins = new Instruction(op, code[i++]);
+                    } else {
+                        ins = simple[op.ordinal()];
+                        if (ins == null) ins = simple[op.ordinal()] = new Instruction(op);
+                    }
+                    break;
+            }
+            instructions[n++] = ins;
+        }
+        if (n != instructionCount) {
+            throw new RuntimeException("Arquivo de bytecode inválido: " + n + " instruções, esperadas "
+                    + instructionCount);
+        }
+        return instructions;
+    }
+
+    public void write(Path path) throws IOException {
+        byte[][] encodedNames = new byte[names.length][];
+        int namesSize = 0;
+        for (int i = 0; i < names.length; i++) {
+            encodedNames[i] = names[i].getBytes(StandardCharsets.UTF_8);
+            namesSize += 2 + encodedNames[i].length;
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE + constants.length * 8 + code.length * 4 + namesSize);
+        buf.putInt(MAGIC).putInt(VERSION)
+           .putInt(maxStackDepth).putInt(maxIntStackDepth).putInt(frameSize)
+           .putInt(constants.length).putInt(names.length)
+           .putInt(instructionCount).putInt(code.length);
+        buf.asDoubleBuffer().put(constants);
+        buf.position(buf.position() + constants.length * 8);
+        buf.asIntBuffer().put(code);
+        buf.position(buf.position() + code.length * 4);
+        for (byte[] name : encodedNames) {
+            buf.putShort((short) name.length).put(name);
+        }
+        buf.flip();
+
+        // Grava em um arquivo temporário de nome único e renomeia, para que
+        // um leitor nunca veja um .bc pela metade e dois processos gravando
+        // o mesmo arquivo não se atropelem
+        Path dir = path.toAbsolutePath().getParent();
+        Path tmp = Files.createTempFile(dir, path.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                while (buf.hasRemaining()) ch.write(buf);
+            }
+            try {
+                Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    // Mapeia o arquivo em memória e copia as seções direto do mapeamento
+    public static Bytecode load(Path path) throws IOException {
+        MappedByteBuffer buf;
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+
+        if (buf.remaining() < HEADER_SIZE || buf.getInt() != MAGIC) {
+            throw new RuntimeException("Arquivo de bytecode inválido: " + path);
+        }
+        int version = buf.getInt();
+        if (version != VERSION) {
+            throw new RuntimeException("Versão de bytecode não suportada: " + version);
+        }
+        int maxStackDepth = buf.getInt();
+        int maxIntStackDepth = buf.getInt();
+        int frameSize = buf.getInt();
+        int constantCount = buf.getInt();
+        int nameCount = buf.getInt();
+        int instructionCount = buf.getInt();
+        int wordCount = buf.getInt();
+
+        double[] constants = new double[constantCount];
+        buf.asDoubleBuffer().get(constants);
+        buf.position(buf.position() + constantCount * 8);
+        int[] code = new int[wordCount];
+        buf.asIntBuffer().get(code);
+        buf.position(buf.position() + wordCount * 4);
+
+        String[] names = new String[nameCount];
+        for (int i = 0; i < nameCount; i++) {
+            byte[] bytes = new byte[buf.getShort() & 0xFFFF];
+            buf.get(bytes);
+            names[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        return new Bytecode(code, constants, names, instructionCount,
+                maxStackDepth, maxIntStackDepth, frameSize);
+    }
+}
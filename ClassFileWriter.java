@@ -0,0 +1,167 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Escritor mínimo de arquivos .class: monta o constant pool e uma classe
+// com um único método estático. Só cobre o que o JvmCompiler precisa.
+public class ClassFileWriter {
+
+    private static final int CLASS_VERSION = 61; // Java 17
+
+    // Buffer de bytes que cresce sob demanda e permite corrigir valores
+    // já escritos (usado nos deslocamentos dos saltos)
+    public static class ByteVector {
+        private byte[] data = new byte[256];
+        private int length = 0;
+
+        public int size() {
+            return length;
+        }
+
+        public ByteVector u1(int v) {
+            ensure(1);
+            data[length++] = (byte) v;
+            return this;
+        }
+
+        public ByteVector u2(int v) {
+            ensure(2);
+            data[length++] = (byte) (v >>> 8);
+            data[length++] = (byte) v;
+            return this;
+        }
+
+        public ByteVector u4(int v) {
+            ensure(4);
+            data[length++] = (byte) (v >>> 24);
+            data[length++] = (byte) (v >>> 16);
+            data[length++] = (byte) (v >>> 8);
+            data[length++] = (byte) v;
+            return this;
+        }
+
+        public ByteVector bytes(byte[] b, int off, int len) {
+            ensure(len);
+            System.arraycopy(b, off, data, length, len);
+            length += len;
+            return this;
+        }
+
+        public ByteVector bytes(ByteVector other) {
+            return bytes(other.data, 0, other.length);
+        }
+
+        public void patchU2(int at, int v) {
+            data[at] = (byte) (v >>> 8);
+            data[at + 1] = (byte) v;
+        }
+
+        public byte[] toByteArray() {
+            return Arrays.copyOf(data, length);
+        }
+
+        private void ensure(int n) {
+            if (length + n > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, length + n));
+            }
+        }
+    }
+
+    private final ByteVector pool = new ByteVector();
+    private final Map<String, Integer> entries = new HashMap<>();
+    private int poolCount = 1; // índice 0 não é usado
+
+    public int utf8(String s) {
+        return entry("U" + s, () -> {
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            pool.u1(1).u2(b.length).bytes(b, 0, b.length);
+        }, 1);
+    }
+
+    public int classRef(String internalName) {
+        int name = utf8(internalName);
+        return entry("C" + internalName, () -> pool.u1(7).u2(name), 1);
+    }
+
+    public int string(String s) {
+        int value = utf8(s);
+        return entry("S" + s, () -> pool.u1(8).u2(value), 1);
+    }
+
+    public int intConst(int v) {
+        return entry("I" + v, () -> pool.u1(3).u4(v), 1);
+    }
+
+    // Constantes double e long ocupam duas posições no constant pool
+    public int doubleConst(double d) {
+        long bits = Double.doubleToRawLongBits(d);
+        return entry("D" + bits, () -> pool.u1(6).u4((int) (bits >>> 32)).u4((int) bits), 2);
+    }
+
+    public int longConst(long v) {
+        return entry("J" + v, () -> pool.u1(5).u4((int) (v >>> 32)).u4((int) v), 2);
+    }
+
+    public int methodRef(String owner, String name, String descriptor) {
+        int ownerIndex = classRef(owner);
+        int nameIndex = utf8(name);
+        int descIndex = utf8(descriptor);
+        int nameAndType = entry("N" + name + ":" + descriptor, () -> pool.u1(12).u2(nameIndex).u2(descIndex), 1);
+        return entry("M" + owner + "." + name + descriptor, () -> pool.u1(10).u2(ownerIndex).u2(nameAndType), 1);
+    }
+
+    private int entry(String key, Runnable write, int width) {
+        Integer index = entries.get(key);
+        if (index == null) {
+            index = poolCount;
+            write.run();
+            poolCount += width;
+            if (poolCount > 0xFFFF) {
+                throw new RuntimeException("Constant pool grande demais.");
+            }
+            entries.put(key, index);
+        }
+        return index;
+    }
+
+    // Monta a classe final com um método public static
+    public byte[] toBytes(String className, String methodName, String descriptor,
+                          int maxStack, int maxLocals, ByteVector code,
+                          ByteVector stackMapFrames, int frameCount) {
+        if (code.size() > 0xFFFF) {
+            throw new RuntimeException("Método gerado grande demais para a JVM.");
+        }
+        int thisClass = classRef(className);
+        int superClass = classRef("java/lang/Object");
+        int methodNameIndex = utf8(methodName);
+        int descriptorIndex = utf8(descriptor);
+        int codeAttr = utf8("Code");
+        int stackMapAttr = frameCount > 0 ? utf8("StackMapTable") : 0;
+
+        ByteVector method = new ByteVector();
+        method.u2(0x0009).u2(methodNameIndex).u2(descriptorIndex).u2(1); // public static
+        int stackMapSize = frameCount > 0 ? 2 + stackMapFrames.size() : 0;
+        int codeAttrLength = 2 + 2 + 4 + code.size() + 2 + 2
+                + (frameCount > 0 ? 6 + stackMapSize : 0);
+        method.u2(codeAttr).u4(codeAttrLength)
+              .u2(maxStack).u2(maxLocals)
+              .u4(code.size()).bytes(code)
+              .u2(0)                                  // tabela de exceções
+              .u2(frameCount > 0 ? 1 : 0);
+        if (frameCount > 0) {
+            method.u2(stackMapAttr).u4(stackMapSize).u2(frameCount).bytes(stackMapFrames);
+        }
+
+        ByteVector out = new ByteVector();
+        out.u4(0xCAFEBABE).u2(0).u2(CLASS_VERSION)
+           .u2(poolCount).bytes(pool)
+           .u2(0x0030)                                 // final super
+           .u2(thisClass).u2(superClass)
+           .u2(0)                                      // interfaces
+           .u2(0)                                      // campos
+           .u2(1).bytes(method)
+           .u2(0);                                     // atributos da classe
+        return out.toByteArray();
+    }
+}
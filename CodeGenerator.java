@@ -1,127 +1,320 @@
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.List;
 
 public class CodeGenerator {
 
     private final List<Instruction> code = new ArrayList<>();
+    private int maxStackDepth = 0;
+    private int maxIntStackDepth = 0;
+
+    // Pilhas explícitas de genStmt e genExpr, reaproveitadas (ficam vazias
+    // entre um comando ou expressão e o seguinte)
+    private final Deque<Object> statements = new ArrayDeque<>();
+    private final Deque<Object> expressions = new ArrayDeque<>();
 
     public List<Instruction> generate(List<Stmt> program) {
         for (Stmt stmt : program) {
             genStmt(stmt);
         }
+        maxStackDepth = computeMaxStackDepth(code);
+        maxIntStackDepth = computeMaxIntStackDepth(code);
         return code;
     }
 
-    private void genStmt(Stmt stmt) {
+    // Profundidade máxima das pilhas do código gerado (válidas após generate)
+    public int getMaxStackDepth() {
+        return maxStackDepth;
+    }
+
+    public int getMaxIntStackDepth() {
+        return maxIntStackDepth;
+    }
+
+    // Altura máxima da pilha de double entre todas as instruções alcançáveis
+    public static int computeMaxStackDepth(List<Instruction> code) {
+        return maxDepth(code, computeStackDepths(code), false);
+    }
+
+    // Altura máxima da pilha de int (long)
+    public static int computeMaxIntStackDepth(List<Instruction> code) {
+        return maxDepth(code, computeIntStackDepths(code), true);
+    }
+
+    private static int maxDepth(List<Instruction> code, int[] depthAt, boolean intLane) {
+        int max = 0;
+        for (int i = 0; i < code.size(); i++) {
+            if (depthAt[i] < 0) continue;
+            OpCode op = code.get(i).op;
+            int after = intLane ? depthAt[i] - op.intPops + op.intPushes
+                                : depthAt[i] - op.pops + op.pushes;
+            if (after > max) max = after;
+        }
+        return max;
+    }
+
+    // Percorre todos os caminhos do código acompanhando a altura da pilha
+    // antes de cada instrução (-1 nas inalcançáveis). A altura precisa ser
+    // a mesma quando dois caminhos chegam na mesma instrução, senão o
+    // código é inválido. A posição code.size() representa o fim do programa.
+    public static int[] computeStackDepths(List<Instruction> code) {
+        return stackDepths(code, false);
+    }
+
+    public static int[] computeIntStackDepths(List<Instruction> code) {
+        return stackDepths(code, true);
+    }
+
+    private static int[] stackDepths(List<Instruction> code, boolean intLane) {
+        int[] depthAt = new int[code.size() + 1];
+        Arrays.fill(depthAt, -1);
+        Deque<Integer> work = new ArrayDeque<>();
+        depthAt[0] = 0;
+        work.push(0);
+
+        while (!work.isEmpty()) {
+            int pc = work.pop();
+            if (pc >= code.size()) continue;
+            Instruction ins = code.get(pc);
+            int depth = depthAt[pc];
+            int pops = intLane ? ins.op.intPops : ins.op.pops;
+            int pushes = intLane ? ins.op.intPushes : ins.op.pushes;
+
+            if (depth < pops) {
+                throw new RuntimeException("Pilha insuficiente em " + pc + ": " + ins);
+            }
+            depth = depth - pops + pushes;
+
+            if (ins.op.isJump()) {
+                flowTo(depthAt, work, ins.jumpTarget, depth);
+            }
+            if (ins.op != OpCode.JMP) {
+                flowTo(depthAt, work, pc + 1, depth);
+            }
+        }
+        return depthAt;
+    }
+
+    // Quantidade de slots de variáveis referenciados pelo código
+    public static int computeFrameSize(List<Instruction> code) {
+        int size = 0;
+        for (Instruction ins : code) {
+            if (ins.slot + 1 > size) size = ins.slot + 1;
+            if (ins.slot2 + 1 > size) size = ins.slot2 + 1;
+        }
+        return size;
+    }
+
+    private static void flowTo(int[] depthAt, Deque<Integer> work, int target, int depth) {
+        if (target < 0 || target >= depthAt.length) {
+            throw new RuntimeException("Destino de salto inválido: " + target);
+        }
+        if (depthAt[target] == -1) {
+            depthAt[target] = depth;
+            work.push(target);
+        } else if (depthAt[target] != depth) {
+            throw new RuntimeException("Altura de pilha inconsistente na instrução " + target);
+        }
+    }
+
+    // Gera os comandos sem recursão: a pilha explícita guarda comandos
+    // ainda por gerar e ações (Runnable) que rodam quando chegam ao topo,
+    // como corrigir o destino de um salto ou fechar um bloco
+    private void genStmt(Stmt root) {
+        Deque<Object> pending = statements;
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Object item = pending.pop();
+            if (item instanceof Runnable) {
+                ((Runnable) item).run();
+            } else {
+                genStmt((Stmt) item, pending);
+            }
+        }
+    }
+
+    private void genStmt(Stmt stmt, Deque<Object> pending) {
         if (stmt instanceof Stmt.VarDecl) {
+            // Toda declaração zera o slot: os slots de um bloco são
+            // reaproveitados depois dele, por outro bloco ou por uma
+            // declaração do nível de cima
+            Stmt.VarDecl v = (Stmt.VarDecl) stmt;
+            if (v.type.type == TokenType.INT) {
+                code.add(new Instruction(OpCode.IPUSH_CONST, 0.0));
+                code.add(new Instruction(OpCode.ISTORE_VAR, v.name.lexeme, v.slot));
+            } else {
+                code.add(new Instruction(OpCode.PUSH_CONST, 0.0));
+                code.add(new Instruction(OpCode.STORE_VAR, v.name.lexeme, v.slot));
+            }
         } else if (stmt instanceof Stmt.Assign) {
             Stmt.Assign a = (Stmt.Assign) stmt;
-            genExpr(a.value);
-            code.add(new Instruction(OpCode.STORE_VAR, a.name.lexeme));
+            boolean intVar = "int".equals(a.varType);
+            genExprAs(a.value, intVar);
+            code.add(new Instruction(intVar ? OpCode.ISTORE_VAR : OpCode.STORE_VAR, a.name.lexeme, a.slot));
         } else if (stmt instanceof Stmt.Print) {
-            genExpr(((Stmt.Print) stmt).expression);
+            // Valores int são impressos no mesmo formato dos real
+            genExprAs(((Stmt.Print) stmt).expression, false);
             code.add(new Instruction(OpCode.PRINT));
         } else if (stmt instanceof Stmt.Input) {
             Stmt.Input i = (Stmt.Input) stmt;
-            code.add(new Instruction(OpCode.INPUT, i.name.lexeme));
+            OpCode op = "int".equals(i.varType) ? OpCode.IINPUT : OpCode.INPUT;
+            code.add(new Instruction(op, i.name.lexeme, i.slot));
         } else if (stmt instanceof Stmt.ExpressionStmt) {
-            genExpr(((Stmt.ExpressionStmt) stmt).expression);
-            code.add(new Instruction(OpCode.POP)); 
+            Expr e = ((Stmt.ExpressionStmt) stmt).expression;
+            genExpr(e);
+            code.add(new Instruction(e.isInt() ? OpCode.IPOP : OpCode.POP));
         } else if (stmt instanceof Stmt.Block) {
-            for (Stmt s : ((Stmt.Block) stmt).statements) {
-                genStmt(s);
+            List<Stmt> statements = ((Stmt.Block) stmt).statements;
+            for (int i = statements.size() - 1; i >= 0; i--) {
+                pending.push(statements.get(i));
             }
         } else if (stmt instanceof Stmt.If) {
-            genIf((Stmt.If) stmt);
+            genIf((Stmt.If) stmt, pending);
         } else if (stmt instanceof Stmt.While) {
-            genWhile((Stmt.While) stmt);
+            genWhile((Stmt.While) stmt, pending);
         }
     }
 
-    private void genIf(Stmt.If stmt) {
-        genExpr(stmt.condition);
-        
-        int jmpIfFalseIndex = code.size();
-        code.add(new Instruction(OpCode.JMP_IF_FALSE, -1));
-
-        
-        genStmt(stmt.thenBranch);
+    private void genIf(Stmt.If stmt, Deque<Object> pending) {
+        int jmpIfFalseIndex = genCondition(stmt.condition);
 
         if (stmt.elseBranch != null) {
-            
-            int jmpEndIndex = code.size();
-            code.add(new Instruction(OpCode.JMP, -1));
-
-            
-            code.get(jmpIfFalseIndex).jumpTarget = code.size();
-
-            
-            genStmt(stmt.elseBranch);
-
-           
-            code.get(jmpEndIndex).jumpTarget = code.size();
+            // Depois do then: salto para o fim, o else e a correção do salto
+            pending.push((Runnable) () -> {
+                int jmpEndIndex = code.size();
+                code.add(new Instruction(OpCode.JMP, -1));
+                patchJump(jmpIfFalseIndex);
+                pending.push((Runnable) () -> patchJump(jmpEndIndex));
+                pending.push(stmt.elseBranch);
+            });
         } else {
-            
-            code.get(jmpIfFalseIndex).jumpTarget = code.size();
+            pending.push((Runnable) () -> patchJump(jmpIfFalseIndex));
         }
+        pending.push(stmt.thenBranch);
     }
 
-    private void genWhile(Stmt.While stmt) {
+    private void genWhile(Stmt.While stmt, Deque<Object> pending) {
         int loopStart = code.size();
 
-        genExpr(stmt.condition);
-        int jmpIfFalseIndex = code.size();
-        code.add(new Instruction(OpCode.JMP_IF_FALSE, -1));
+        // Condição constante verdadeira (deixada pelo AstOptimizer): não testa
+        if (stmt.condition instanceof Expr.Literal && ((Expr.Literal) stmt.condition).value != 0.0) {
+            pending.push((Runnable) () -> code.add(new Instruction(OpCode.JMP, loopStart)));
+            pending.push(stmt.body);
+            return;
+        }
+
+        int jmpIfFalseIndex = genCondition(stmt.condition);
+        pending.push((Runnable) () -> {
+            code.add(new Instruction(OpCode.JMP, loopStart));
+            patchJump(jmpIfFalseIndex);
+        });
+        pending.push(stmt.body);
+    }
 
-        genStmt(stmt.body);
+    // Aponta o salto em `index` para a próxima instrução a ser gerada
+    private void patchJump(int index) {
+        code.set(index, code.get(index).withJumpTarget(code.size()));
+    }
 
-        
-        code.add(new Instruction(OpCode.JMP, loopStart));
+    // Gera a condição e o salto para quando ela é falsa (destino a corrigir)
+    private int genCondition(Expr condition) {
+        genExpr(condition);
+        int index = code.size();
+        code.add(new Instruction(condition.isInt() ? OpCode.IJMP_IF_FALSE : OpCode.JMP_IF_FALSE, -1));
+        return index;
+    }
 
-        
-        code.get(jmpIfFalseIndex).jumpTarget = code.size();
+    // Gera a expressão convertendo o resultado para int ou real se preciso
+    private void genExprAs(Expr expr, boolean asInt) {
+        pushAs(expressions, expr, asInt);
+        genExpr(expressions);
     }
 
     private void genExpr(Expr expr) {
+        expressions.push(expr);
+        genExpr(expressions);
+    }
+
+    // A pilha tem expressões a gerar no próprio tipo e instruções prontas,
+    // emitidas quando chegam ao topo (o operador depois dos operandos)
+    private void genExpr(Deque<Object> pending) {
+        while (!pending.isEmpty()) {
+            Object item = pending.pop();
+            if (item instanceof Instruction) {
+                code.add((Instruction) item);
+            } else {
+                expand((Expr) item, pending);
+            }
+        }
+    }
+
+    // Empilha a expressão com a conversão para int ou real, se preciso
+    private static void pushAs(Deque<Object> pending, Expr expr, boolean asInt) {
+        // Constantes já saem no tipo pedido, sem instrução de conversão
+        if (expr instanceof Expr.Literal && expr.isInt() != asInt) {
+            double value = ((Expr.Literal) expr).value;
+            if (asInt) {
+                pending.push(new Instruction(OpCode.IPUSH_CONST, (double) (long) value));
+            } else {
+                pending.push(new Instruction(OpCode.PUSH_CONST, value));
+            }
+            return;
+        }
+        if (expr.isInt() && !asInt) {
+            pending.push(new Instruction(OpCode.I2D));
+        } else if (!expr.isInt() && asInt) {
+            pending.push(new Instruction(OpCode.D2I));
+        }
+        pending.push(expr);
+    }
+
+    // Emite as folhas na hora; nós internos empilham o operador e depois
+    // os operandos, que saem primeiro
+    private void expand(Expr expr, Deque<Object> pending) {
+        boolean intExpr = expr.isInt();
         if (expr instanceof Expr.Literal) {
             Expr.Literal lit = (Expr.Literal) expr;
-            code.add(new Instruction(OpCode.PUSH_CONST, lit.value));
+            code.add(new Instruction(intExpr ? OpCode.IPUSH_CONST : OpCode.PUSH_CONST, lit.value));
         } else if (expr instanceof Expr.Variable) {
             Expr.Variable v = (Expr.Variable) expr;
-            code.add(new Instruction(OpCode.LOAD_VAR, v.name.lexeme));
+            code.add(new Instruction(intExpr ? OpCode.ILOAD_VAR : OpCode.LOAD_VAR, v.name.lexeme, v.slot));
         } else if (expr instanceof Expr.Grouping) {
-            genExpr(((Expr.Grouping) expr).expression);
+            pending.push(((Expr.Grouping) expr).expression);
         } else if (expr instanceof Expr.Unary) {
             Expr.Unary u = (Expr.Unary) expr;
-           
+            // -x é calculado como 0 - x
             if (u.operator.type == TokenType.MINUS) {
-                code.add(new Instruction(OpCode.PUSH_CONST, 0.0));
-                genExpr(u.right);
-                code.add(new Instruction(OpCode.SUB));
-            } else {
-                genExpr(u.right);
+                code.add(new Instruction(intExpr ? OpCode.IPUSH_CONST : OpCode.PUSH_CONST, 0.0));
+                pending.push(new Instruction(intExpr ? OpCode.ISUB : OpCode.SUB));
             }
+            pending.push(u.right);
         } else if (expr instanceof Expr.Binary) {
             Expr.Binary b = (Expr.Binary) expr;
-            genExpr(b.left);
-            genExpr(b.right);
-
-            switch (b.operator.type) {
-                case PLUS:          code.add(new Instruction(OpCode.ADD)); break;
-                case MINUS:         code.add(new Instruction(OpCode.SUB)); break;
-                case STAR:          code.add(new Instruction(OpCode.MUL)); break;
-                case SLASH:         code.add(new Instruction(OpCode.DIV)); break;
-                case EQUAL_EQUAL:   code.add(new Instruction(OpCode.CMP_EQ)); break;
-                case BANG_EQUAL:    code.add(new Instruction(OpCode.CMP_NEQ)); break;
-                case GREATER:       code.add(new Instruction(OpCode.CMP_GT)); break;
-                case GREATER_EQUAL: code.add(new Instruction(OpCode.CMP_GTE)); break;
-                case LESS:          code.add(new Instruction(OpCode.CMP_LT)); break;
-                case LESS_EQUAL:    code.add(new Instruction(OpCode.CMP_LTE)); break;
-                default:
-                    throw new RuntimeException("Operador não suportado: " + b.operator.lexeme);
-            }
+            pending.push(new Instruction(binaryOp(b, intExpr)));
+            // Operação int só com os dois lados int; senão converte para real
+            pushAs(pending, b.right, intExpr);
+            pushAs(pending, b.left, intExpr);
         } else {
             throw new RuntimeException("Tipo de expressão desconhecido.");
         }
     }
+
+    private static OpCode binaryOp(Expr.Binary b, boolean intExpr) {
+        switch (b.operator.type) {
+            case PLUS:          return intExpr ? OpCode.IADD : OpCode.ADD;
+            case MINUS:         return intExpr ? OpCode.ISUB : OpCode.SUB;
+            case STAR:          return intExpr ? OpCode.IMUL : OpCode.MUL;
+            case SLASH:         return intExpr ? OpCode.IDIV : OpCode.DIV;
+            case EQUAL_EQUAL:   return intExpr ? OpCode.ICMP_EQ : OpCode.CMP_EQ;
+            case BANG_EQUAL:    return intExpr ? OpCode.ICMP_NEQ : OpCode.CMP_NEQ;
+            case GREATER:       return intExpr ? OpCode.ICMP_GT : OpCode.CMP_GT;
+            case GREATER_EQUAL: return intExpr ? OpCode.ICMP_GTE : OpCode.CMP_GTE;
+            case LESS:          return intExpr ? OpCode.ICMP_LT : OpCode.CMP_LT;
+            case LESS_EQUAL:    return intExpr ? OpCode.ICMP_LTE : OpCode.CMP_LTE;
+            default:
+                throw new RuntimeException("Operador não suportado: " + b.operator.lexeme);
+        }
+    }
 }
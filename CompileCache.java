@@ -0,0 +1,173 @@
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// Cache de compilação em disco. A chave é o SHA-256 do código-fonte junto
+// com a identidade do compilador e as opções que mudam o código gerado; o
+// valor é o bytecode (.bc) já pronto, guardado em <diretório>/<chave>.bc.
+// A identidade do compilador é o SHA-256 dos seus .class (ou do jar), então
+// qualquer compilação nova do compilador invalida as entradas antigas sem
+// depender de alguém lembrar de mudar COMPILER_VERSION.
+// Num acerto o Main pula léxico, sintático, semântico e geração de código.
+//
+// Vários processos podem usar o mesmo diretório: cada entrada é gravada
+// em um arquivo temporário e renomeada (Bytecode.write), e uma entrada
+// que sumiu ou não pôde ser lida conta apenas como falta. Quando o total
+// passa do limite, as entradas usadas há mais tempo (pela data de
+// modificação, renovada a cada acerto) são apagadas.
+public class CompileCache {
+
+    // Entra na chave junto com o resumo dos .class; só é necessário mudar
+    // quando os .class não puderem ser lidos (ver compilerDigest)
+    public static final String COMPILER_VERSION = "4";
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    private static final String SUFFIX = ".bc";
+
+    private final Path dir;
+    private final long maxBytes;
+    private long hits = 0;
+    private long misses = 0;
+
+    public CompileCache(Path dir, long maxBytes) throws IOException {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(dir);
+    }
+
+    public static String key(byte[] source, String options) {
+        MessageDigest digest = sha256();
+        digest.update((COMPILER_VERSION + "\0" + compilerDigest() + "\0" + options + "\0")
+                .getBytes(StandardCharsets.UTF_8));
+        return hex(digest.digest(source));
+    }
+
+    private static String compilerDigest;
+
+    // SHA-256 das classes do compilador: do jar, quando roda de um, ou dos
+    // .class do diretório (o pacote padrão fica todo no mesmo diretório).
+    // Calculado uma vez por processo; "" se a origem das classes não pode
+    // ser lida, e aí só COMPILER_VERSION separa as versões
+    static synchronized String compilerDigest() {
+        if (compilerDigest == null) {
+            try {
+                compilerDigest = hex(digestOf(Paths.get(
+                        CompileCache.class.getProtectionDomain().getCodeSource().getLocation().toURI())));
+            } catch (IOException | URISyntaxException | RuntimeException e) {
+                compilerDigest = "";
+            }
+        }
+        return compilerDigest;
+    }
+
+    private static byte[] digestOf(Path location) throws IOException {
+        MessageDigest digest = sha256();
+        if (!Files.isDirectory(location)) {
+            digest.update(Files.readAllBytes(location));
+            return digest.digest();
+        }
+        List<Path> classes = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(location, "*.class")) {
+            for (Path path : entries) classes.add(path);
+        }
+        Collections.sort(classes);
+        for (Path path : classes) {
+            digest.update(path.getFileName().toString().getBytes(StandardCharsets.UTF_8));
+            digest.update(Files.readAllBytes(path));
+        }
+        return digest.digest();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 indisponível.", e);
+        }
+    }
+
+    private static String hex(byte[] hash) {
+        StringBuilder sb = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    // Bytecode guardado para a chave, ou null numa falta
+    public Bytecode get(String key) {
+        Path path = dir.resolve(key + SUFFIX);
+        try {
+            Bytecode bytecode = Bytecode.load(path);
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+            hits++;
+            return bytecode;
+        } catch (NoSuchFileException e) {
+            misses++;
+            return null;
+        } catch (IOException | RuntimeException e) {
+            // Entrada corrompida ou de outra versão do formato: descarta
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException ignored) {
+            }
+            misses++;
+            return null;
+        }
+    }
+
+    public void put(String key, Bytecode bytecode) throws IOException {
+        bytecode.write(dir.resolve(key + SUFFIX));
+        evict();
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    // Apaga as entradas menos usadas até o total caber no limite
+    private void evict() throws IOException {
+        List<Path> paths = new ArrayList<>();
+        List<BasicFileAttributes> attrs = new ArrayList<>();
+        long total = 0;
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+            for (Path path : entries) {
+                try {
+                    BasicFileAttributes a = Files.readAttributes(path, BasicFileAttributes.class);
+                    paths.add(path);
+                    attrs.add(a);
+                    total += a.size();
+                } catch (NoSuchFileException e) {
+                    // apagada por outro processo no meio da listagem
+                }
+            }
+        }
+        if (total <= maxBytes) return;
+
+        Integer[] order = new Integer[paths.size()];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, (a, b) ->
+                attrs.get(a).lastModifiedTime().compareTo(attrs.get(b).lastModifiedTime()));
+        for (int i = 0; i < order.length && total > maxBytes; i++) {
+            Files.deleteIfExists(paths.get(order[i]));
+            total -= attrs.get(order[i]).size();
+        }
+    }
+}
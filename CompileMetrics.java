@@ -0,0 +1,231 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.LongSupplier;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// Métricas por fase da compilação e da execução: tempo de relógio, bytes
+// alocados pela thread durante a fase (com.sun.management.ThreadMXBean) e
+// o tamanho do que a fase produziu (tokens, nós da árvore, instruções).
+//
+// Cada fase vira um evento JFR compilador.Phase, com início e duração
+// reais, gravado quando há uma gravação ativa (-XX:StartFlightRecording).
+// Com um caminho de saída (--metrics) o resumo também é gravado em JSON
+// no fim. Sem nenhum dos dois as chamadas não fazem nada: nem os tamanhos
+// são calculados.
+public class CompileMetrics {
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    @Name("compilador.Phase")
+    @Label("Fase da compilação")
+    @Category({ "Compilador", "Fases" })
+    static class PhaseEvent extends Event {
+        @Label("Fase")
+        String phase;
+
+        @Label("Bytes alocados")
+        @DataAmount
+        long allocatedBytes;
+
+        @Label("Unidade do tamanho")
+        String unit;
+
+        @Label("Tamanho")
+        long size;
+    }
+
+    private static final class Phase {
+        final String name;
+        final long nanos;
+        final long allocatedBytes; // -1 se a JVM não mede
+        final String unit;
+        final long size;           // -1 se não disponível
+
+        Phase(String name, long nanos, long allocatedBytes, String unit, long size) {
+            this.name = name;
+            this.nanos = nanos;
+            this.allocatedBytes = allocatedBytes;
+            this.unit = unit;
+            this.size = size;
+        }
+    }
+
+    private final String outputPath; // "-" para a saída padrão
+    private final boolean active;
+    private final List<Phase> phases = new ArrayList<>();
+    private String source;
+    private String engine;
+
+    // Fase aberta
+    private PhaseEvent event;
+    private String current;
+    private long startNanos;
+    private long startBytes;
+
+    public CompileMetrics(String outputPath) {
+        this.outputPath = outputPath;
+        this.active = outputPath != null || new PhaseEvent().isEnabled();
+        if (active && THREADS instanceof com.sun.management.ThreadMXBean) {
+            ((com.sun.management.ThreadMXBean) THREADS).setThreadAllocatedMemoryEnabled(true);
+        }
+    }
+
+    // Falso sem --metrics e sem gravação JFR
+    public boolean isActive() {
+        return active;
+    }
+
+    public void describe(String source, String engine) {
+        this.source = source;
+        this.engine = engine;
+    }
+
+    public void begin(String phase) {
+        if (!active) return;
+        current = phase;
+        event = new PhaseEvent();
+        event.begin();
+        startBytes = allocatedBytes();
+        startNanos = System.nanoTime();
+    }
+
+    // Fecha a fase aberta; `size` só é calculado com as métricas ligadas
+    // e pode devolver -1 quando o tamanho não existe (ex.: motor jvm)
+    public void end(String unit, LongSupplier size) {
+        if (!active || current == null) return;
+        long nanos = System.nanoTime() - startNanos;
+        long bytes = allocatedBytes();
+        bytes = startBytes < 0 || bytes < 0 ? -1 : bytes - startBytes;
+        long value = size.getAsLong();
+        event.end();
+        if (event.shouldCommit()) {
+            event.phase = current;
+            event.allocatedBytes = bytes;
+            event.unit = unit;
+            event.size = value;
+            event.commit();
+        }
+        phases.add(new Phase(current, nanos, bytes, unit, value));
+        current = null;
+        event = null;
+    }
+
+    private static long allocatedBytes() {
+        if (THREADS instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    // ---------------- Resumo em JSON ----------------
+
+    // Grava o JSON, se pedido; uma fase interrompida por erro fica de fora
+    public void finish() {
+        if (outputPath == null) return;
+        String json = toJson();
+        if (outputPath.equals("-")) {
+            System.out.println(json);
+            return;
+        }
+        try {
+            Files.write(Paths.get(outputPath), (json + "\n").getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new RuntimeException("Erro ao gravar as métricas em " + outputPath + ": " + e.getMessage(), e);
+        }
+    }
+
+    public String toJson() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"source\":").append(string(source));
+        sb.append(",\"engine\":").append(string(engine));
+        sb.append(",\"phases\":[");
+        long totalNanos = 0;
+        long totalBytes = 0;
+        for (int i = 0; i < phases.size(); i++) {
+            Phase p = phases.get(i);
+            if (i > 0) sb.append(',');
+            sb.append("{\"phase\":").append(string(p.name));
+            sb.append(",\"nanos\":").append(p.nanos);
+            sb.append(",\"allocatedBytes\":").append(number(p.allocatedBytes));
+            sb.append(",\"unit\":").append(string(p.unit));
+            sb.append(",\"size\":").append(number(p.size));
+            sb.append('}');
+            totalNanos += p.nanos;
+            totalBytes = totalBytes < 0 || p.allocatedBytes < 0 ? -1 : totalBytes + p.allocatedBytes;
+        }
+        sb.append("],\"totalNanos\":").append(totalNanos);
+        sb.append(",\"totalAllocatedBytes\":").append(number(totalBytes));
+        sb.append('}');
+        return sb.toString();
+    }
+
+    private static String number(long value) {
+        return value < 0 ? "null" : Long.toString(value);
+    }
+
+    private static String string(String value) {
+        if (value == null) return "null";
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    // ---------------- Tamanhos ----------------
+
+    // Nós da árvore (comandos e expressões, incluindo parênteses), sem
+    // recursão: a árvore pode ser funda demais para a pilha Java
+    public static long countNodes(List<Stmt> program) {
+        Deque<Object> pending = new ArrayDeque<>(program);
+        long count = 0;
+        while (!pending.isEmpty()) {
+            Object node = pending.pop();
+            count++;
+            if (node instanceof Stmt.Assign) {
+                pending.push(((Stmt.Assign) node).value);
+            } else if (node instanceof Stmt.ExpressionStmt) {
+                pending.push(((Stmt.ExpressionStmt) node).expression);
+            } else if (node instanceof Stmt.Print) {
+                pending.push(((Stmt.Print) node).expression);
+            } else if (node instanceof Stmt.Block) {
+                pending.addAll(((Stmt.Block) node).statements);
+            } else if (node instanceof Stmt.If) {
+                Stmt.If s = (Stmt.If) node;
+                pending.push(s.condition);
+                pending.push(s.thenBranch);
+                if (s.elseBranch != null) pending.push(s.elseBranch);
+            } else if (node instanceof Stmt.While) {
+                pending.push(((Stmt.While) node).condition);
+                pending.push(((Stmt.While) node).body);
+            } else if (node instanceof Expr.Binary) {
+                pending.push(((Expr.Binary) node).left);
+                pending.push(((Expr.Binary) node).right);
+            } else if (node instanceof Expr.Unary) {
+                pending.push(((Expr.Unary) node).right);
+            } else if (node instanceof Expr.Grouping) {
+                pending.push(((Expr.Grouping) node).expression);
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,131 @@
+import java.util.List;
+import java.util.function.LongSupplier;
+
+// Opções de compilação (as flags --no-ast-opt, --unroll, --no-ssa e
+// --no-peephole) e o pipeline que elas escolhem, o mesmo no Main, nos
+// benchmarks (BenchmarkCases), no CompileServer e no CompiledProgram.compile:
+//
+//     semântico -> otimizações na árvore -> desenrolamento      (frontEnd)
+//     -> código de pilha -> SSA -> superinstruções              (generate)
+//
+// A árvore do frontEnd também é a entrada dos motores reg e ast. Programas
+// mais fundos que Main.MAX_OPTIMIZED_DEPTH passam sem as etapas recursivas
+// (otimizações na árvore, desenrolamento e SSA). As opções são imutáveis e
+// podem ser compartilhadas entre threads; cada compilação tem o seu estado.
+public final class CompileOptions {
+
+    // Os padrões do Main
+    public static final CompileOptions DEFAULT = new CompileOptions(true, 4, true, true);
+
+    public final boolean astOpt;
+    public final int unroll; // 1 desliga o desenrolamento
+    public final boolean ssa;
+    public final boolean peephole;
+
+    public CompileOptions(boolean astOpt, int unroll, boolean ssa, boolean peephole) {
+        this.astOpt = astOpt;
+        this.unroll = unroll;
+        this.ssa = ssa;
+        this.peephole = peephole;
+    }
+
+    // Entra na chave dos caches: o mesmo fonte com outras opções é outro programa
+    public String key() {
+        return "ast-opt=" + astOpt + ";unroll=" + unroll + ";ssa=" + ssa + ";peephole=" + peephole;
+    }
+
+    // Árvore analisada e otimizada, como o gerador a recebe
+    public static final class Tree {
+        public final List<Stmt> program;
+        public final int slotCount;
+        public final int maxDepth;
+        public final boolean shallow; // etapas recursivas aplicadas
+
+        Tree(List<Stmt> program, int slotCount, int maxDepth, boolean shallow) {
+            this.program = program;
+            this.slotCount = slotCount;
+            this.maxDepth = maxDepth;
+            this.shallow = shallow;
+        }
+    }
+
+    // O programa compilado e as otimizações que rodaram (null as que não
+    // rodaram), para os números que o Main mostra
+    public static final class Result {
+        public final Tree tree;
+        public final CompiledProgram program;
+        public final SsaOptimizer ssaOptimizer;
+        public final PeepholeOptimizer peepholeOptimizer;
+
+        Result(Tree tree, CompiledProgram program, SsaOptimizer ssaOptimizer,
+               PeepholeOptimizer peepholeOptimizer) {
+            this.tree = tree;
+            this.program = program;
+            this.ssaOptimizer = ssaOptimizer;
+            this.peepholeOptimizer = peepholeOptimizer;
+        }
+    }
+
+    public Result compile(List<Stmt> program, CompileMetrics metrics) {
+        return generate(frontEnd(program, metrics), metrics);
+    }
+
+    public Tree frontEnd(List<Stmt> program, CompileMetrics metrics) {
+        metrics.begin("semantic");
+        SemanticAnalyzer semantic = new SemanticAnalyzer();
+        semantic.analyze(program);
+        metrics.end("slots", () -> semantic.getSlotCount());
+        boolean shallow = semantic.getMaxDepth() <= Main.MAX_OPTIMIZED_DEPTH;
+
+        if (astOpt && shallow) {
+            metrics.begin("ast-opt");
+            program = new AstOptimizer().optimize(program);
+            metrics.end("nodes", nodes(program));
+        }
+        if (shallow) {
+            metrics.begin("unroll");
+            program = new LoopUnroller(unroll).optimize(program);
+            metrics.end("nodes", nodes(program));
+        }
+        return new Tree(program, semantic.getSlotCount(), semantic.getMaxDepth(), shallow);
+    }
+
+    public Result generate(Tree tree, CompileMetrics metrics) {
+        metrics.begin("codegen");
+        List<Instruction> code = new CodeGenerator().generate(tree.program);
+        int frameSize = tree.slotCount;
+        metrics.end("instructions", instructions(code));
+
+        // Otimização global sobre o grafo de fluxo em SSA; os slots são
+        // renumerados, então o frame é recalculado
+        SsaOptimizer ssaOptimizer = null;
+        if (ssa && tree.shallow) {
+            metrics.begin("ssa");
+            ssaOptimizer = new SsaOptimizer();
+            code = ssaOptimizer.optimize(code);
+            frameSize = CodeGenerator.computeFrameSize(code);
+            metrics.end("instructions", instructions(code));
+        }
+
+        PeepholeOptimizer peepholeOptimizer = null;
+        if (peephole) {
+            metrics.begin("peephole");
+            peepholeOptimizer = new PeepholeOptimizer();
+            code = peepholeOptimizer.optimize(code);
+            metrics.end("instructions", instructions(code));
+        }
+
+        CompiledProgram program = new CompiledProgram(code, CodeGenerator.computeMaxStackDepth(code),
+                CodeGenerator.computeMaxIntStackDepth(code), frameSize);
+        return new Result(tree, program, ssaOptimizer, peepholeOptimizer);
+    }
+
+    // Os tamanhos, para CompileMetrics.end (só calculados com as métricas ligadas)
+    private static LongSupplier nodes(List<Stmt> program) {
+        return () -> CompileMetrics.countNodes(program);
+    }
+
+    private static LongSupplier instructions(List<Instruction> code) {
+        return code::size;
+    }
+}
@@ -0,0 +1,451 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// Servidor local de compilação e execução (java Main --serve endereço).
+// Uma JVM que fica no ar evita a partida da JVM a cada programa, e depois
+// das primeiras requisições o laço do Interpreter já está compilado pelo
+// JIT. Os programas são compilados com as opções da linha de comando
+// (--no-ssa, --unroll etc., ver CompileOptions) e ficam num cache em
+// memória pela chave do fonte (SHA-256, como no CompileCache), então um
+// fonte repetido nem passa pelo front-end.
+//
+// Protocolo, uma requisição por conexão:
+//
+//     cliente:  RUN <bytes do fonte> <bytes da entrada>\n
+//               o fonte, em UTF-8
+//               a entrada: números separados por espaços ou linhas
+//     servidor: a saída do programa, enviada à medida que é produzida
+//               (em blocos de até 64 KB), e por fim uma linha de estado:
+//                   #OK <instruções executadas> <milissegundos>
+//                   #ERRO <mensagem>
+//               depois fecha a conexão.
+//
+// O endereço é um número de porta (TCP só em 127.0.0.1) ou o caminho de
+// um socket Unix. Um único seletor NIO aceita, lê as requisições e envia
+// as saídas; a compilação roda num grupo de trabalhadores (um por
+// processador) e a execução no ProgramScheduler, em fatias, para que um
+// programa longo não segure uma thread enquanto os curtos esperam. Cada
+// execução tem prazo (cancelada por um temporizador) e um limite de
+// instruções; uma requisição que não chega inteira dentro do prazo também
+// é descartada. Um cliente que não lê a saída para o programa num PRINT
+// sem ocupar thread (ver ProgramScheduler.submit), e a conexão é fechada
+// quando passa o prazo sem que ele leia nada.
+public class CompileServer {
+
+    public static final long DEFAULT_TIMEOUT_MILLIS = 10_000;
+    public static final long DEFAULT_MAX_INSTRUCTIONS = 1_000_000_000L;
+
+    private static final int MAX_HEADER_BYTES = 128;
+    private static final int MAX_REQUEST_BYTES = 16 * 1024 * 1024;
+    // Saída ainda não enviada além disso para o programa até o cliente ler
+    private static final int MAX_PENDING_OUTPUT = 1024 * 1024;
+    // Sem ler nada por mais que isso, com saída por enviar, o cliente é
+    // tido como parado: um programa cancelado fecha a conexão em vez de
+    // deixar a linha de estado esperando por ele
+    private static final long STALLED_MILLIS = 1000;
+    private static final int CACHE_ENTRIES = 256;
+    // Conexões esperando o accept; muitos clientes chegam juntos
+    private static final int BACKLOG = 1024;
+
+    private final String address;
+    private final CompileOptions options;
+    private final long timeoutMillis;
+    private final long maxInstructions;
+    // Compilação: só usa CPU, então uma thread por processador
+    private final ExecutorService workers =
+            Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    private final ProgramScheduler scheduler = new ProgramScheduler();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "prazo");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Programas pela chave do fonte, os menos usados saem primeiro
+    private final Map<String, CompiledProgram> programs =
+            new LinkedHashMap<String, CompiledProgram>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CompiledProgram> eldest) {
+                    return size() > CACHE_ENTRIES;
+                }
+            };
+
+    private Selector selector;
+    // Conexões com saída nova ou terminadas, avisadas pelos trabalhadores
+    private final Queue<Connection> ready = new ConcurrentLinkedQueue<>();
+
+    public CompileServer(String address, CompileOptions options, long timeoutMillis, long maxInstructions) {
+        this.address = address;
+        this.options = options;
+        this.timeoutMillis = timeoutMillis;
+        this.maxInstructions = maxInstructions;
+    }
+
+    // Não retorna: atende até o processo terminar
+    public void serve() throws IOException {
+        selector = Selector.open();
+        try (ServerSocketChannel server = open()) {
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+            System.out.println("Servidor ouvindo em " + server.getLocalAddress());
+            while (true) {
+                selector.select(1000);
+                for (SelectionKey key : selector.selectedKeys()) {
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) {
+                        accept(server);
+                        continue;
+                    }
+                    Connection c = (Connection) key.attachment();
+                    try {
+                        if (key.isReadable()) c.read();
+                        if (key.isValid() && key.isWritable()) c.send();
+                    } catch (IOException e) {
+                        c.close();
+                    }
+                }
+                selector.selectedKeys().clear();
+                Connection c;
+                while ((c = ready.poll()) != null) {
+                    try {
+                        c.send();
+                    } catch (IOException e) {
+                        c.close();
+                    }
+                }
+                expire();
+            }
+        }
+    }
+
+    private ServerSocketChannel open() throws IOException {
+        if (address.matches("[0-9]+")) {
+            ServerSocketChannel server = ServerSocketChannel.open();
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(address)), BACKLOG);
+            return server;
+        }
+        // Um socket antigo no mesmo caminho (de um servidor que caiu) é
+        // apagado; um arquivo ou diretório de verdade, não
+        Path path = Paths.get(address);
+        if (Files.exists(path) && !Files.isRegularFile(path) && !Files.isDirectory(path)) {
+            Files.delete(path);
+        }
+        SocketAddress socket = UnixDomainSocketAddress.of(path);
+        ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(socket, BACKLOG);
+        return server;
+    }
+
+    private void accept(ServerSocketChannel server) throws IOException {
+        SocketChannel channel;
+        while ((channel = server.accept()) != null) {
+            channel.configureBlocking(false);
+            Connection c = new Connection(channel);
+            c.key = channel.register(selector, SelectionKey.OP_READ, c);
+        }
+    }
+
+    // Fecha as conexões cuja requisição não chegou inteira no prazo e as
+    // com saída que o cliente não lê há mais que o prazo
+    private void expire() {
+        long now = System.nanoTime();
+        long timeout = timeoutMillis * 1_000_000L;
+        for (SelectionKey key : selector.keys()) {
+            Object attachment = key.attachment();
+            if (attachment instanceof Connection) {
+                Connection c = (Connection) attachment;
+                if (!c.started && now - c.openedAt > timeout) {
+                    c.close();
+                } else if (c.stalledSince != 0 && now - c.stalledSince > timeout) {
+                    c.close();
+                }
+            }
+        }
+    }
+
+    // ---------------- Compilação e execução (trabalhadores) ----------------
+
+    private CompiledProgram program(byte[] source) {
+        String key = CompileCache.key(source, options.key());
+        CompiledProgram program;
+        synchronized (programs) {
+            program = programs.get(key);
+        }
+        if (program == null) {
+            // Dois pedidos simultâneos do mesmo fonte podem compilar os dois; o resultado é igual
+            program = CompiledProgram.compile(new String(source, StandardCharsets.UTF_8), options);
+            synchronized (programs) {
+                programs.put(key, program);
+            }
+        }
+        return program;
+    }
+
+    private void execute(Connection c, byte[] source, byte[] input) {
+        long start = System.nanoTime();
+        CompiledProgram program;
+        try {
+            program = program(source);
+        } catch (RuntimeException e) {
+            c.finish(status("#ERRO " + e.getMessage()));
+            return;
+        } catch (StackOverflowError e) {
+            c.finish(status("#ERRO pilha Java estourada"));
+            return;
+        }
+        NumberReader reader = new NumberReader(new ByteArrayInputStream(input));
+        ProgramScheduler.Task task = scheduler.submit(program, c.output, c::writable, reader::nextDouble,
+                maxInstructions);
+        c.task = task;
+        // Cancelado (prazo ou conexão fechada) com o cliente parado: ele não
+        // receberia a linha de estado
+        task.onCancel(() -> {
+            long since = c.stalledSince;
+            if (since != 0 && System.nanoTime() - since > STALLED_MILLIS * 1_000_000L) c.close();
+        });
+        ScheduledFuture<?> deadline = timer.schedule(() -> {
+            c.timedOut = true;
+            task.cancel();
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+        task.completion().whenComplete((executed, error) -> {
+            deadline.cancel(false);
+            if (error == null) {
+                c.finish(status("#OK " + executed + " " + (System.nanoTime() - start) / 1_000_000));
+            } else if (c.timedOut) {
+                c.finish(status("#ERRO tempo esgotado (" + timeoutMillis + " ms)"));
+            } else if (error instanceof StackOverflowError) {
+                c.finish(status("#ERRO pilha Java estourada"));
+            } else {
+                c.finish(status("#ERRO " + error.getMessage()));
+            }
+        });
+    }
+
+    private static String status(String line) {
+        return line.replace('\n', ' ') + "\n";
+    }
+
+    // ---------------- Conexão ----------------
+
+    private final class Connection {
+        final SocketChannel channel;
+        final long openedAt = System.nanoTime();
+        SelectionKey key;
+
+        // Requisição, lida pelo seletor
+        private final ByteBuffer buffer = ByteBuffer.allocate(8192);
+        private byte[] request = new byte[MAX_HEADER_BYTES];
+        private int received = 0;
+        private int headerLength = -1;
+        private int sourceLength;
+        private int inputLength;
+        volatile boolean started = false;
+        private boolean reading = true;
+
+        // Execução, no escalonador
+        volatile ProgramScheduler.Task task;
+        volatile boolean timedOut = false;
+
+        // Saída: os trabalhadores acrescentam em `pending` e o seletor envia.
+        // stalledSince (escrito só no seletor) é quando o cliente leu pela
+        // última vez, com saída por enviar desde então, ou 0
+        private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+        private ByteBuffer sending;
+        volatile long stalledSince = 0;
+        private boolean finished = false;
+        private boolean closed = false;
+
+        // O programa não espera aqui: com `pending` cheio ele para antes do
+        // PRINT (writable) e o seletor o retoma depois de enviar
+        final OutputStream output = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                synchronized (Connection.this) {
+                    if (closed) throw new IOException("conexão fechada pelo cliente");
+                    pending.write(b, off, len);
+                }
+                wake();
+            }
+        };
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        // Se a saída aceita mais (fechada, aceita: o PRINT falha na escrita)
+        synchronized boolean writable() {
+            return closed || pending.size() <= MAX_PENDING_OUTPUT;
+        }
+
+        void read() throws IOException {
+            buffer.clear();
+            int n = channel.read(buffer);
+            if (n < 0) {
+                // Cliente fechou o envio: antes de a requisição chegar inteira
+                // é desistência; depois, só não há mais o que ler
+                if (!started) {
+                    close();
+                } else {
+                    reading = false;
+                    interest(sending != null && sending.hasRemaining());
+                }
+                return;
+            }
+            if (started) return; // bytes além da requisição são ignorados
+            buffer.flip();
+            append(buffer);
+            if (headerLength < 0 && !parseHeader()) return;
+            if (received >= headerLength + sourceLength + inputLength) {
+                started = true;
+                byte[] source = Arrays.copyOfRange(request, headerLength, headerLength + sourceLength);
+                byte[] input = Arrays.copyOfRange(request, headerLength + sourceLength,
+                        headerLength + sourceLength + inputLength);
+                request = null;
+                workers.execute(() -> execute(this, source, input));
+            }
+        }
+
+        private void append(ByteBuffer data) {
+            int needed = received + data.remaining();
+            if (needed > request.length) {
+                request = Arrays.copyOf(request, Math.max(needed, request.length * 2));
+            }
+            data.get(request, received, data.remaining());
+            received = needed;
+        }
+
+        // false enquanto a primeira linha não chegou inteira
+        private boolean parseHeader() {
+            int end = -1;
+            for (int i = 0; i < received; i++) {
+                if (request[i] == '\n') {
+                    end = i;
+                    break;
+                }
+            }
+            if (end < 0) {
+                if (received > MAX_HEADER_BYTES) reject("requisição inválida: linha inicial longa demais");
+                return false;
+            }
+            String[] parts = new String(request, 0, end, StandardCharsets.US_ASCII).trim().split(" +");
+            try {
+                if (parts.length != 3 || !parts[0].equals("RUN")) throw new NumberFormatException();
+                sourceLength = Integer.parseInt(parts[1]);
+                inputLength = Integer.parseInt(parts[2]);
+            } catch (NumberFormatException e) {
+                reject("requisição inválida: esperado RUN <bytes do fonte> <bytes da entrada>");
+                return false;
+            }
+            if (sourceLength < 0 || inputLength < 0 || (long) sourceLength + inputLength > MAX_REQUEST_BYTES) {
+                reject("requisição inválida: tamanho acima de " + MAX_REQUEST_BYTES + " bytes");
+                return false;
+            }
+            headerLength = end + 1;
+            return true;
+        }
+
+        private void reject(String message) {
+            started = true;
+            finish("#ERRO " + message + "\n");
+            wake();
+        }
+
+        // Chamado pelo trabalhador ao terminar: a linha de estado é a última coisa enviada
+        void finish(String status) {
+            synchronized (this) {
+                if (!closed) pending.writeBytes(status.getBytes(StandardCharsets.UTF_8));
+                finished = true;
+            }
+            wake();
+        }
+
+        private void wake() {
+            ready.add(this);
+            selector.wakeup();
+        }
+
+        // No seletor: envia o que der sem bloquear; fecha ao terminar
+        void send() throws IOException {
+            while (true) {
+                if (sending == null || !sending.hasRemaining()) {
+                    synchronized (this) {
+                        if (closed) return;
+                        if (pending.size() == 0) {
+                            if (finished) {
+                                close();
+                            } else {
+                                interest(false);
+                            }
+                            return;
+                        }
+                        sending = ByteBuffer.wrap(pending.toByteArray());
+                        pending.reset();
+                    }
+                    // Fora da trava da conexão, que writable usa com a da Task
+                    ProgramScheduler.Task running = task;
+                    if (running != null) running.outputReady();
+                }
+                int written = channel.write(sending);
+                if (sending.hasRemaining()) {
+                    if (written > 0 || stalledSince == 0) stalledSince = System.nanoTime();
+                    interest(true);
+                    return;
+                }
+                stalledSince = 0;
+            }
+        }
+
+        private void interest(boolean write) {
+            if (!key.isValid()) return;
+            key.interestOps((reading ? SelectionKey.OP_READ : 0) | (write ? SelectionKey.OP_WRITE : 0));
+        }
+
+        // No seletor ou, no cancelamento, na thread de quem cancela. Um
+        // programa ainda rodando é cancelado.
+        void close() {
+            synchronized (this) {
+                if (closed) return;
+                closed = true;
+            }
+            ProgramScheduler.Task running = task;
+            if (running != null) running.cancel();
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // já fechado pelo outro lado
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+import java.io.ByteArrayOutputStream;
+import java.lang.invoke.MethodHandle;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.DoubleSupplier;
+
+// Programa compilado, pronto para executar: o código de pilha e os tamanhos
+// das pilhas e do frame. É imutável (as Instruction também são) e pode ser
+// compartilhado entre threads; o estado de cada execução fica no motor
+// criado para ela (Interpreter ou JvmEngine) e no seu VmIo.
+//
+// Uso embutido:
+//
+//     CompiledProgram program = CompiledProgram.compile(fonte);
+//     ProgramScheduler scheduler = new ProgramScheduler();
+//     CompletableFuture<String> saida = program.submit(scheduler, 1, 2, 3);
+//
+// Cada execução tem a sua entrada e o seu buffer de saída, então milhares
+// de execuções simultâneas não disputam System.in nem System.out. No
+// escalonador elas rodam em fatias sobre uma thread por processador, sem
+// uma thread por execução; run executa na thread de quem chama.
+public final class CompiledProgram {
+
+    private final Instruction[] code;
+    private final List<Instruction> view;
+    public final int maxStackDepth;
+    public final int maxIntStackDepth;
+    public final int frameSize;
+
+    // Tradução para a JVM, feita na primeira execução no motor jvm e
+    // reaproveitada pelas seguintes: o método gerado não guarda estado.
+    // Fica null se a JVM não aceita o programa (ver JvmEngine)
+    private volatile MethodHandle jvmMethod;
+    private volatile boolean jvmTranslated = false;
+
+    public CompiledProgram(List<Instruction> code, int maxStackDepth, int maxIntStackDepth, int frameSize) {
+        this(code.toArray(new Instruction[0]), maxStackDepth, maxIntStackDepth, frameSize);
+    }
+
+    // Fica com o array (Bytecode.decode), sem cópia
+    private CompiledProgram(Instruction[] code, int maxStackDepth, int maxIntStackDepth, int frameSize) {
+        this.code = code;
+        this.view = Collections.unmodifiableList(Arrays.asList(this.code));
+        this.maxStackDepth = maxStackDepth;
+        this.maxIntStackDepth = maxIntStackDepth;
+        this.frameSize = frameSize;
+    }
+
+    public static CompiledProgram fromBytecode(Bytecode bytecode) {
+        return new CompiledProgram(bytecode.decode(), bytecode.maxStackDepth, bytecode.maxIntStackDepth,
+                bytecode.frameSize);
+    }
+
+    // Compila com as opções padrão do Main
+    public static CompiledProgram compile(String source) {
+        return compile(source, CompileOptions.DEFAULT);
+    }
+
+    public static CompiledProgram compile(String source, CompileOptions options) {
+        List<Stmt> program = new Parser(new Lexer(source)).parse();
+        return options.compile(program, new CompileMetrics(null)).program;
+    }
+
+    // Somente leitura
+    public List<Instruction> code() {
+        return view;
+    }
+
+    // O array é compartilhado pelos Interpreter, que só o leem
+    Instruction[] instructions() {
+        return code;
+    }
+
+    MethodHandle jvmMethod() {
+        if (!jvmTranslated) {
+            synchronized (this) {
+                if (!jvmTranslated) {
+                    try {
+                        jvmMethod = JvmCompiler.compile(view, frameSize);
+                    } catch (RuntimeException e) {
+                        // Limites do formato de classe: a tradução não é possível
+                        jvmMethod = null;
+                    }
+                    jvmTranslated = true;
+                }
+            }
+        }
+        return jvmMethod;
+    }
+
+    // ---------------- Execução embutida ----------------
+
+    // Executa no Interpreter com os números dados como entrada (sem prompt)
+    // e devolve o texto impresso
+    public String run(double... input) {
+        return run(numbers(input));
+    }
+
+    public String run(DoubleSupplier input) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new Interpreter(this, new VmIo(new OutputSink(out, false, StandardCharsets.UTF_8), input, false)).run();
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static DoubleSupplier numbers(double[] input) {
+        return new DoubleSupplier() {
+            private int next = 0;
+
+            @Override
+            public double getAsDouble() {
+                if (next == input.length) {
+                    throw new RuntimeException("Erro de execução: fim da entrada ao ler um número.");
+                }
+                return input[next++];
+            }
+        };
+    }
+
+    // Executa no ProgramScheduler, em fatias, com os números dados como
+    // entrada; completa com o texto impresso ou com o erro da execução
+    public CompletableFuture<String> submit(ProgramScheduler scheduler, double... input) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        return scheduler.submit(this, out, numbers(input), Long.MAX_VALUE).completion()
+                .thenApply(executed -> new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+}
@@ -1,5 +1,11 @@
 public abstract class Expr {
 
+    public String type; // "int" ou "real", preenchido pelo SemanticAnalyzer
+
+    public boolean isInt() {
+        return "int".equals(type);
+    }
+
     public static class Binary extends Expr {
         public final Expr left;
         public final Token operator;
@@ -24,14 +30,17 @@ public abstract class Expr {
 
     public static class Literal extends Expr {
         public final double value;
+        public final boolean integral; // escrito sem ponto decimal
 
-        public Literal(double value) {
+        public Literal(double value, boolean integral) {
             this.value = value;
+            this.integral = integral;
         }
     }
 
     public static class Variable extends Expr {
         public final Token name;
+        public int slot = -1; // preenchido pelo SemanticAnalyzer
 
         public Variable(Token name) {
             this.name = name;
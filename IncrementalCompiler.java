@@ -0,0 +1,227 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// Compilação incremental para o modo --watch. Guarda, de cada comando do
+// nível de cima, os tokens que ocupa, a árvore e o código gerado; numa
+// recompilação só o trecho alterado do texto é relido (TokenBuffer.edit),
+// só os comandos que tocam esse trecho são lidos de novo pelo parser e só
+// eles passam pelo semântico e pelo gerador. Os comandos de depois são
+// reaproveitados a partir do primeiro que começa num token antigo, com os
+// destinos de salto deslocados quando a posição deles no código mudou.
+//
+// O contexto de um comando é só o escopo global: os slots e os tipos das
+// declarações do nível de cima antes dele. Enquanto o trecho refeito tem
+// as mesmas declarações que tinha, os comandos depois dele continuam
+// válidos; se elas mudaram, esses comandos são analisados e gerados de
+// novo (os tokens e as árvores continuam reaproveitados).
+//
+// Cada comando é gerado separado, então o que trabalha no programa todo
+// fica de fora: otimizações na árvore, desenrolamento e SSA. As
+// superinstruções são aplicadas comando a comando (nenhuma atravessa o
+// fim de um comando do nível de cima). Uma recompilação que falha não
+// muda nada: a seguinte compara com o último texto compilado.
+public class IncrementalCompiler {
+
+    // Um comando do nível de cima
+    private static final class Fragment {
+        final Stmt stmt;
+        final String declaration; // "tipo nome" se for uma declaração
+        final int first;          // primeiro token do comando
+        final int end;            // token seguinte ao último (o parser olhou até ele)
+        final int base;           // posição do código no programa
+        final Instruction[] code; // já com os saltos apontando para base + destino
+        final int[] jumps;        // índices dos saltos em code
+        final int maxStackDepth;
+        final int maxIntStackDepth;
+        final int frameSize;
+
+        Fragment(Stmt stmt, int first, int end, int base, Instruction[] code, int[] jumps,
+                 int maxStackDepth, int maxIntStackDepth, int frameSize) {
+            this.stmt = stmt;
+            this.declaration = declaration(stmt);
+            this.first = first;
+            this.end = end;
+            this.base = base;
+            this.code = code;
+            this.jumps = jumps;
+            this.maxStackDepth = maxStackDepth;
+            this.maxIntStackDepth = maxIntStackDepth;
+            this.frameSize = frameSize;
+        }
+
+        // O mesmo comando com os tokens deslocados de `shift` e o código
+        // em `newBase`; só os saltos são refeitos
+        Fragment moved(int shift, int newBase) {
+            if (shift == 0 && newBase == base) return this;
+            Instruction[] placed = code;
+            if (newBase != base && jumps.length > 0) {
+                placed = code.clone();
+                for (int j : jumps) {
+                    placed[j] = placed[j].withJumpTarget(placed[j].jumpTarget + newBase - base);
+                }
+            }
+            return new Fragment(stmt, first + shift, end + shift, newBase, placed, jumps,
+                    maxStackDepth, maxIntStackDepth, frameSize);
+        }
+    }
+
+    private final boolean peephole;
+
+    // Estado da última compilação que deu certo
+    private TokenBuffer tokens;
+    private List<Fragment> fragments = new ArrayList<>();
+
+    // Números da última compilação
+    private int relexedTokens;
+    private int reparsedStatements;
+    private int regeneratedStatements;
+    private int reusedStatements;
+
+    public IncrementalCompiler(boolean peephole) {
+        this.peephole = peephole;
+    }
+
+    public CompiledProgram compile(String source) {
+        TokenBuffer edited = tokens == null ? new TokenBuffer(source) : tokens.edit(source);
+        int shift = edited.shift();
+        int oldResume = edited.changedTo() - shift; // primeiro token antigo depois da alteração
+
+        // Comandos antes da alteração, incluindo o token que o parser olhou
+        // depois de cada um
+        int keep = 0;
+        while (keep < fragments.size() && fragments.get(keep).end < edited.changedFrom()) keep++;
+
+        // Relê comandos até chegar no começo de um comando antigo depois da alteração
+        int at = keep == 0 ? 0 : fragments.get(keep - 1).end;
+        Parser parser = new Parser(edited.cursor(at));
+        List<Stmt> parsed = new ArrayList<>();
+        List<int[]> ranges = new ArrayList<>();
+        int resume = keep;
+        while (true) {
+            while (resume < fragments.size()
+                    && (fragments.get(resume).first < oldResume || fragments.get(resume).first + shift < at)) {
+                resume++;
+            }
+            if (resume < fragments.size() && fragments.get(resume).first + shift == at) break;
+            Stmt stmt = parser.parseStatement();
+            if (stmt == null) break;
+            int end = edited.indexOf(parser.currentOffset(), at);
+            parsed.add(stmt);
+            ranges.add(new int[] { at, end });
+            at = end;
+        }
+
+        // Semântico: o escopo global até a alteração vem só das declarações
+        SemanticAnalyzer semantic = new SemanticAnalyzer();
+        List<Stmt> declarations = new ArrayList<>();
+        for (int i = 0; i < keep; i++) {
+            if (fragments.get(i).declaration != null) declarations.add(fragments.get(i).stmt);
+        }
+        semantic.analyze(declarations);
+        semantic.analyze(parsed);
+
+        List<String> removed = new ArrayList<>();
+        for (int i = keep; i < resume; i++) {
+            if (fragments.get(i).declaration != null) removed.add(fragments.get(i).declaration);
+        }
+        List<String> added = new ArrayList<>();
+        for (Stmt stmt : parsed) {
+            if (declaration(stmt) != null) added.add(declaration(stmt));
+        }
+        boolean sameScope = removed.equals(added);
+        List<Fragment> rest = fragments.subList(resume, fragments.size());
+        if (!sameScope) {
+            List<Stmt> statements = new ArrayList<>(rest.size());
+            for (Fragment f : rest) statements.add(f.stmt);
+            semantic.analyze(statements);
+        }
+
+        // Código: novo para o trecho relido (e para o resto se o escopo mudou)
+        List<Fragment> result = new ArrayList<>(keep + parsed.size() + rest.size());
+        result.addAll(fragments.subList(0, keep));
+        int base = keep == 0 ? 0 : last(result).base + last(result).code.length;
+        for (int i = 0; i < parsed.size(); i++) {
+            Fragment f = generate(parsed.get(i), ranges.get(i)[0], ranges.get(i)[1], base);
+            result.add(f);
+            base += f.code.length;
+        }
+        for (Fragment old : rest) {
+            Fragment f = sameScope ? old.moved(shift, base)
+                                   : generate(old.stmt, old.first + shift, old.end + shift, base);
+            result.add(f);
+            base += f.code.length;
+        }
+
+        Instruction[] code = new Instruction[base];
+        int maxStackDepth = 0;
+        int maxIntStackDepth = 0;
+        int frameSize = 0;
+        for (Fragment f : result) {
+            System.arraycopy(f.code, 0, code, f.base, f.code.length);
+            maxStackDepth = Math.max(maxStackDepth, f.maxStackDepth);
+            maxIntStackDepth = Math.max(maxIntStackDepth, f.maxIntStackDepth);
+            frameSize = Math.max(frameSize, f.frameSize);
+        }
+        CompiledProgram program = new CompiledProgram(Arrays.asList(code), maxStackDepth, maxIntStackDepth,
+                frameSize);
+
+        relexedTokens = edited.changedTo() - edited.changedFrom();
+        reparsedStatements = parsed.size();
+        regeneratedStatements = sameScope ? parsed.size() : parsed.size() + rest.size();
+        reusedStatements = result.size() - regeneratedStatements;
+        tokens = edited;
+        fragments = result;
+        return program;
+    }
+
+    private static Fragment last(List<Fragment> fragments) {
+        return fragments.get(fragments.size() - 1);
+    }
+
+    // Cada comando do nível de cima começa e termina com as pilhas vazias,
+    // então as alturas máximas do programa são as maiores entre os comandos
+    private Fragment generate(Stmt stmt, int first, int end, int base) {
+        List<Instruction> code = new CodeGenerator().generate(Collections.singletonList(stmt));
+        if (peephole) code = new PeepholeOptimizer().optimize(code);
+        Instruction[] placed = new Instruction[code.size()];
+        int[] jumps = new int[code.size()];
+        int jumpCount = 0;
+        for (int i = 0; i < placed.length; i++) {
+            Instruction ins = code.get(i);
+            if (ins.op.isJump()) {
+                ins = ins.withJumpTarget(ins.jumpTarget + base);
+                jumps[jumpCount++] = i;
+            }
+            placed[i] = ins;
+        }
+        return new Fragment(stmt, first, end, base, placed, Arrays.copyOf(jumps, jumpCount),
+                CodeGenerator.computeMaxStackDepth(code), CodeGenerator.computeMaxIntStackDepth(code),
+                CodeGenerator.computeFrameSize(code));
+    }
+
+    private static String declaration(Stmt stmt) {
+        if (!(stmt instanceof Stmt.VarDecl)) return null;
+        Stmt.VarDecl v = (Stmt.VarDecl) stmt;
+        return v.type.lexeme + " " + v.name.lexeme;
+    }
+
+    // Tokens relidos, comandos lidos de novo pelo parser, comandos com
+    // código novo e comandos com o código reaproveitado na última compilação
+    public int getRelexedTokens() {
+        return relexedTokens;
+    }
+
+    public int getReparsedStatements() {
+        return reparsedStatements;
+    }
+
+    public int getRegeneratedStatements() {
+        return regeneratedStatements;
+    }
+
+    public int getReusedStatements() {
+        return reusedStatements;
+    }
+}
@@ -0,0 +1,143 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+
+// Teste diferencial do modo --watch: aplica edições aleatórias a um
+// programa (inserir um trecho, apagar alguns caracteres, apagar, duplicar
+// ou mover uma linha) e, depois de cada uma, compara
+//   - os tokens de TokenBuffer.edit com os de um TokenBuffer novo do texto;
+//   - o código de um IncrementalCompiler que recebeu todas as edições com
+//     o de um IncrementalCompiler novo (instruções, alturas das pilhas e
+//     frame), ou os dois falhando, quando o texto não compila.
+// Os trechos inseridos incluem pedaços que quebram a sintaxe (chaves,
+// parênteses e else soltos, comentários), então muitas versões não
+// compilam; depois de uma que não compila o texto volta, na maioria das
+// vezes, para o último que compilou, como quem corrige o que digitou.
+//
+// Uso:
+//   java IncrementalFuzzer [--seed N] [--steps N] [programa.txt]
+//   --seed N     semente das edições (padrão 1)
+//   --steps N    quantas edições (padrão 10000)
+//
+// Na primeira diferença mostra o passo, o texto e as duas versões, e
+// termina com código 1.
+public class IncrementalFuzzer {
+
+    private static final String[] PIECES = {
+        "int q;\n", "x = x + 1;\n", "print x;\n", "if (x > 2) print 1; else print 2;\n",
+        "while (x < 10) { x = x + 1; }\n", "{ int z; z = 3; print z; }\n", "real x;\n", "int x;\n",
+        "q = 2;\n", "// comentário\n", "}", "{", "else", ";", "1.5", "x", " ", "\n", "//", "(", ")", "if (x) ",
+    };
+
+    public static void main(String[] args) throws IOException {
+        long seed = 1;
+        int steps = 10000;
+        String path = "programa.txt";
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--seed":  seed = Long.parseLong(args[++i]); break;
+                case "--steps": steps = Integer.parseInt(args[++i]); break;
+                default:        path = args[i]; break;
+            }
+        }
+        Random random = new Random(seed);
+        String text = new String(Files.readAllBytes(Paths.get(path)), StandardCharsets.UTF_8);
+
+        IncrementalCompiler incremental = new IncrementalCompiler(true);
+        TokenBuffer tokens = null;
+        String lastGood = null;
+        int compiled = 0;
+        for (int step = 0; step < steps; step++) {
+            // Tokens: a edição contra a releitura inteira
+            String expectedTokens = tokens(null, text);
+            String actualTokens = tokens(tokens, text);
+            check(step, text, "nos tokens", expectedTokens, actualTokens);
+            if (!expectedTokens.startsWith("ERRO")) {
+                tokens = tokens == null ? new TokenBuffer(text) : tokens.edit(text);
+            }
+
+            // Código: a recompilação incremental contra uma compilação nova
+            String expected = code(new IncrementalCompiler(true), text);
+            String actual = code(incremental, text);
+            boolean failed = expected.startsWith("ERRO");
+            check(step, text, "no código", expected, failed && actual.startsWith("ERRO") ? expected : actual);
+            if (!failed) {
+                compiled++;
+                lastGood = text;
+            } else if (lastGood != null && random.nextInt(3) > 0) {
+                text = lastGood;
+            }
+            text = edit(text, random);
+        }
+        System.out.println(steps + " edição(ões), " + compiled + " versão(ões) compilada(s), sem diferenças");
+    }
+
+    private static void check(int step, String text, String what, String expected, String actual) {
+        if (expected.equals(actual)) return;
+        System.out.println("Diferença " + what + " no passo " + step);
+        System.out.println("--- texto:\n" + text);
+        System.out.println("--- compilação nova:\n" + expected);
+        System.out.println("--- incremental:\n" + actual);
+        System.exit(1);
+    }
+
+    // Tipo, início e tamanho de cada token; de `previous.edit` ou de um buffer novo
+    private static String tokens(TokenBuffer previous, String text) {
+        TokenBuffer buffer;
+        try {
+            buffer = previous == null ? new TokenBuffer(text) : previous.edit(text);
+        } catch (RuntimeException e) {
+            return "ERRO: " + e.getMessage();
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < buffer.size(); i++) {
+            sb.append(buffer.type(i)).append(' ').append(buffer.start(i)).append(' ')
+              .append(buffer.length(i)).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static String code(IncrementalCompiler compiler, String text) {
+        CompiledProgram program;
+        try {
+            program = compiler.compile(text);
+        } catch (RuntimeException e) {
+            return "ERRO: " + e.getMessage();
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Instruction ins : program.code()) sb.append(ins).append('\n');
+        return sb.append(program.maxStackDepth).append(' ').append(program.maxIntStackDepth).append(' ')
+                 .append(program.frameSize).toString();
+    }
+
+    private static String edit(String text, Random random) {
+        int at = random.nextInt(text.length() + 1);
+        int lineStart = text.lastIndexOf('\n', Math.max(0, at - 1)) + 1;
+        int lineEnd = text.indexOf('\n', at);
+        lineEnd = lineEnd < 0 ? text.length() : lineEnd + 1;
+        switch (random.nextInt(5)) {
+            case 0:
+                return text.substring(0, at) + PIECES[random.nextInt(PIECES.length)] + text.substring(at);
+            case 1: {
+                int end = Math.min(text.length(), at + random.nextInt(8));
+                return text.substring(0, at) + text.substring(end);
+            }
+            case 2:
+                return text.substring(0, lineStart) + text.substring(lineEnd);
+            case 3: {
+                String line = text.substring(lineStart, lineEnd);
+                int to = random.nextInt(text.length() + 1);
+                return text.substring(0, to) + line + text.substring(to);
+            }
+            default: {
+                // Move a linha para outro lugar
+                String line = text.substring(lineStart, lineEnd);
+                String rest = text.substring(0, lineStart) + text.substring(lineEnd);
+                int to = random.nextInt(rest.length() + 1);
+                return rest.substring(0, to) + line + rest.substring(to);
+            }
+        }
+    }
+}
@@ -1,46 +1,83 @@
 public class Instruction {
     public final OpCode op;
-    public final String strOperand; // para variáveis
-    public final double numOperand; // para constantes
-    public int jumpTarget;          // para saltos (pode ser modificado na geração)
+    public final String strOperand; // nome da variável (para mensagens e INPUT)
+    public final double numOperand; // para constantes (as int também, sempre inteiras)
+    public final int slot;          // posição da variável no frame
+    public final String strOperand2; // segunda variável das superinstruções *_VV
+    public final int slot2;
+    public final int jumpTarget;    // para saltos
 
     // Instrução sem operandos
     public Instruction(OpCode op) {
-        this(op, null, 0.0, -1);
+        this(op, null, 0.0, -1, -1);
     }
 
     // Instrução com número
     public Instruction(OpCode op, double numOperand) {
-        this(op, null, numOperand, -1);
+        this(op, null, numOperand, -1, -1);
     }
 
-    // Instrução com string
-    public Instruction(OpCode op, String strOperand) {
-        this(op, strOperand, 0.0, -1);
+    // Instrução com variável já resolvida para um slot
+    public Instruction(OpCode op, String name, int slot) {
+        this(op, name, 0.0, slot, -1);
     }
 
     // Instrução de salto
     public Instruction(OpCode op, int jumpTarget) {
-        this(op, null, 0.0, jumpTarget);
+        this(op, null, 0.0, -1, jumpTarget);
     }
 
-    public Instruction(OpCode op, String strOperand, double numOperand, int jumpTarget) {
+    // Instrução com duas variáveis (superinstruções *_VV)
+    public Instruction(OpCode op, String name, int slot, String name2, int slot2) {
+        this(op, name, 0.0, slot, name2, slot2, -1);
+    }
+
+    public Instruction(OpCode op, String strOperand, double numOperand, int slot, int jumpTarget) {
+        this(op, strOperand, numOperand, slot, null, -1, jumpTarget);
+    }
+
+    public Instruction(OpCode op, String strOperand, double numOperand, int slot,
+                       String strOperand2, int slot2, int jumpTarget) {
         this.op = op;
         this.strOperand = strOperand;
         this.numOperand = numOperand;
+        this.slot = slot;
+        this.strOperand2 = strOperand2;
+        this.slot2 = slot2;
         this.jumpTarget = jumpTarget;
     }
 
+    // A mesma instrução com outro destino de salto (a geração corrige os
+    // saltos para frente assim, sem mudar instruções já criadas)
+    public Instruction withJumpTarget(int target) {
+        return new Instruction(op, strOperand, numOperand, slot, strOperand2, slot2, target);
+    }
+
     @Override
     public String toString() {
         switch (op) {
             case PUSH_CONST: return op + " " + numOperand;
+            case IPUSH_CONST: return op + " " + (long) numOperand;
             case LOAD_VAR:
             case STORE_VAR:
-            case INPUT:     return op + " " + strOperand;
-            case JMP:
-            case JMP_IF_FALSE: return op + " -> " + jumpTarget;
-            default: return op.toString();
+            case INPUT:
+            case ILOAD_VAR:
+            case ISTORE_VAR:
+            case IINPUT:    return op + " " + strOperand + " [" + slot + "]";
+            case PROFILE:   return op + " [" + slot + "]";
+            case INC_VAR:   return op + " " + strOperand + " [" + slot + "] " + numOperand;
+            case IINC_VAR:  return op + " " + strOperand + " [" + slot + "] " + (long) numOperand;
+            case ADD_VV:
+            case SUB_VV:
+            case MUL_VV:
+            case DIV_VV:
+            case IADD_VV:
+            case ISUB_VV:
+            case IMUL_VV:
+            case IDIV_VV:   return op + " " + strOperand + " [" + slot + "] " + strOperand2 + " [" + slot2 + "]";
+            default:
+                if (op.isJump()) return op + " -> " + jumpTarget;
+                return op.toString();
         }
     }
 }
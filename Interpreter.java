@@ -1,144 +1,616 @@
-import java.util.ArrayDeque;
-import java.util.Deque;
-import java.util.HashMap;
+import java.lang.invoke.MethodHandle;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.Scanner;
 
 public class Interpreter {
 
-    private final List<Instruction> code;
-    private final Deque<Double> stack = new ArrayDeque<>();
-    private final Map<String, Double> vars = new HashMap<>();
-    private final Scanner scanner = new Scanner(System.in);
+    private final Instruction[] code;
+    // Pilha de operandos primitiva, dimensionada uma única vez pela
+    // profundidade máxima calculada pelo CodeGenerator
+    private final double[] stack;
+    // Valores int ficam numa pilha e num frame de long separados
+    private final long[] istack;
+    // Variáveis ficam em slots fixos resolvidos pelo SemanticAnalyzer
+    private final double[] frame;
+    private final long[] iframe;
+    private final VmIo io;
+    private long executed = 0;
+
+    // Estado entre fatias (step): fora delas as pilhas ficam nos arrays.
+    // O fim da fatia fica em campos, lidos só nos saltos para trás, para
+    // não ocupar registradores no laço principal. A fatia acaba com
+    // SliceEnd, que leva o pc de retomada em resumePc.
+    private int pc = 0;
+    private int sp = 0;
+    private int isp = 0;
+    private long sliceEnd = Long.MAX_VALUE;
+    private int resumePc;
+    private Slice slice;
+
+    private static final class SliceEnd extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        static final SliceEnd INSTANCE = new SliceEnd();
+
+        private SliceEnd() {
+            super(null, null, false, false);
+        }
+    }
+
+    // Como terminou uma fatia de execução
+    public enum Slice {
+        YIELDED,  // usou o quantum; continua no próximo step
+        BLOCKED,  // parado num INPUT sem entrada ou num PRINT sem saída (VmIo.Blocked)
+        FINISHED
+    }
+
+    // Execução em camadas: cada JMP para trás (o fim de um while) conta
+    // quantas vezes executou; ao passar do limite o laço [destino, JMP] é
+    // compilado pelo JvmCompiler e, daí em diante, a execução entra no
+    // código compilado com os valores atuais dos frames e volta a ser
+    // interpretada no pc em que ele sai. Desligada com tierThreshold <= 0.
+    private final int tierThreshold;
+    private final int[] backEdgeCounts;     // por pc do JMP; -1 = não compila
+    private final MethodHandle[] compiledLoops;
+    private int compiledLoopCount = 0;
+
+    // Com perfil o código executado é o instrumentado pelo OpcodeProfiler
+    // e as instruções PROFILE somam nos contadores dele; sem perfil o laço
+    // é o mesmo e nenhuma instrução PROFILE aparece
+    private final OpcodeProfiler profiler;
+    private final long[] profile;
+
+    // Limites da execução (modo servidor): instruções despachadas e
+    // cancelamento vindo de outra thread (ex.: tempo esgotado). Só são
+    // conferidos nos saltos para trás, os únicos que repetem código: os JMP
+    // e também os condicionais tomados, já que o peephole e o SSA podem
+    // fechar um laço com um salto condicional. Fora dos laços o custo é
+    // zero. Com limites não há compilação em camadas: um laço compilado
+    // não passaria pelo teste.
+    private long maxInstructions = Long.MAX_VALUE;
+    private boolean limited = false;
+    private volatile boolean cancelled = false;
 
     public Interpreter(List<Instruction> code) {
+        this(code, CodeGenerator.computeMaxStackDepth(code), CodeGenerator.computeMaxIntStackDepth(code),
+                CodeGenerator.computeFrameSize(code));
+    }
+
+    public Interpreter(List<Instruction> code, int maxStackDepth, int maxIntStackDepth, int frameSize) {
+        this(code, maxStackDepth, maxIntStackDepth, frameSize, new VmIo());
+    }
+
+    public Interpreter(List<Instruction> code, int maxStackDepth, int maxIntStackDepth, int frameSize,
+                       VmIo io) {
+        this(code, maxStackDepth, maxIntStackDepth, frameSize, io, 0);
+    }
+
+    public Interpreter(List<Instruction> code, int maxStackDepth, int maxIntStackDepth, int frameSize,
+                       VmIo io, int tierThreshold) {
+        this(code, maxStackDepth, maxIntStackDepth, frameSize, io, tierThreshold, null);
+    }
+
+    // Com perfil não há compilação em camadas: os laços compilados não
+    // passariam pelos contadores
+    public Interpreter(List<Instruction> code, int maxStackDepth, int maxIntStackDepth, int frameSize,
+                       VmIo io, int tierThreshold, OpcodeProfiler profiler) {
+        this((profiler != null ? profiler.instrument() : code).toArray(new Instruction[0]),
+                maxStackDepth, maxIntStackDepth, frameSize, io, profiler != null ? 0 : tierThreshold, profiler);
+    }
+
+    // Uma execução de um programa compartilhado: as pilhas, os frames e os
+    // laços compilados são desta execução, o código é o do programa (sem
+    // cópia). Várias execuções do mesmo programa podem rodar em paralelo,
+    // cada uma com o seu VmIo.
+    public Interpreter(CompiledProgram program, VmIo io) {
+        this(program, io, 0);
+    }
+
+    public Interpreter(CompiledProgram program, VmIo io, int tierThreshold) {
+        this(program.instructions(), program.maxStackDepth, program.maxIntStackDepth, program.frameSize,
+                io, tierThreshold, null);
+    }
+
+    private Interpreter(Instruction[] code, int maxStackDepth, int maxIntStackDepth, int frameSize,
+                        VmIo io, int tierThreshold, OpcodeProfiler profiler) {
+        this.profiler = profiler;
+        this.profile = profiler != null ? profiler.getCounters() : null;
+        this.io = io;
+        this.tierThreshold = tierThreshold;
+        this.backEdgeCounts = tierThreshold > 0 ? new int[code.length] : null;
+        this.compiledLoops = tierThreshold > 0 ? new MethodHandle[code.length] : null;
         this.code = code;
+        this.stack = new double[maxStackDepth];
+        this.istack = new long[maxIntStackDepth];
+        this.frame = new double[frameSize];
+        this.iframe = new long[frameSize];
+    }
+
+    // Instruções despachadas pela última execução (as dos laços
+    // compilados e os contadores do perfil não entram na conta)
+    public long getExecutedCount() {
+        return profiler != null ? profiler.getInstructionCount() : executed;
+    }
+
+    // Laços compilados durante a execução
+    public int getCompiledLoopCount() {
+        return compiledLoopCount;
+    }
+
+    // Antes de run: falha com erro de execução ao passar de maxInstructions
+    public void limitInstructions(long maxInstructions) {
+        this.maxInstructions = maxInstructions;
+        this.limited = true;
+    }
+
+    // Pode ser chamado de outra thread; a execução para no próximo laço.
+    // Só tem efeito com limitInstructions (use Long.MAX_VALUE para nenhum)
+    public void cancel() {
+        this.cancelled = true;
     }
 
     public void run() {
-        int pc = 0; // program counter
-
-        while (pc < code.size()) {
-            Instruction ins = code.get(pc);
-
-            switch (ins.op) {
-                case PUSH_CONST:
-                    stack.push(ins.numOperand);
-                    pc++;
-                    break;
-                case LOAD_VAR:
-                    stack.push(vars.getOrDefault(ins.strOperand, 0.0));
-                    pc++;
-                    break;
-                case STORE_VAR: {
-                    double value = stack.pop();
-                    vars.put(ins.strOperand, value);
-                    pc++;
-                    break;
-                }
-                case ADD: {
-                    double b = stack.pop();
-                    double a = stack.pop();
-                    stack.push(a + b);
-                    pc++;
-                    break;
-                }
-                case SUB: {
-                    double b = stack.pop();
-                    double a = stack.pop();
-                    stack.push(a - b);
-                    pc++;
-                    break;
-                }
-                case MUL: {
-                    double b = stack.pop();
-                    double a = stack.pop();
-                    stack.push(a * b);
-                    pc++;
-                    break;
-                }
-                case DIV: {
-                    double b = stack.pop();
-                    double a = stack.pop();
-                    stack.push(a / b);
-                    pc++;
-                    break;
-                }
-                case CMP_EQ: {
-                    double b = stack.pop();
-                    double a = stack.pop();
-                    stack.push(a == b ? 1.0 : 0.0);
-                    pc++;
-                    break;
-                }
-                case CMP_NEQ: {
-                    double b = stack.pop();
-                    double a = stack.pop();
-                    stack.push(a != b ? 1.0 : 0.0);
-                    pc++;
-                    break;
-                }
-                case CMP_GT: {
-                    double b = stack.pop();
-                    double a = stack.pop();
-                    stack.push(a > b ? 1.0 : 0.0);
-                    pc++;
-                    break;
-                }
-                case CMP_GTE: {
-                    double b = stack.pop();
-                    double a = stack.pop();
-                    stack.push(a >= b ? 1.0 : 0.0);
-                    pc++;
-                    break;
-                }
-                case CMP_LT: {
-                    double b = stack.pop();
-                    double a = stack.pop();
-                    stack.push(a < b ? 1.0 : 0.0);
-                    pc++;
-                    break;
-                }
-                case CMP_LTE: {
-                    double b = stack.pop();
-                    double a = stack.pop();
-                    stack.push(a <= b ? 1.0 : 0.0);
-                    pc++;
-                    break;
-                }
-                case PRINT: {
-                    double value = stack.pop();
-                    System.out.println(value);
-                    pc++;
-                    break;
-                }
-                case INPUT: {
-                    System.out.print(ins.strOperand + " = ");
-                    double value = scanner.nextDouble();
-                    vars.put(ins.strOperand, value);
-                    pc++;
-                    break;
-                }
-                case JMP:
-                    pc = ins.jumpTarget;
-                    break;
-                case JMP_IF_FALSE: {
-                    double cond = stack.pop();
-                    if (cond == 0.0) {
-                        pc = ins.jumpTarget;
-                    } else {
+        try {
+            if (loop() == Slice.BLOCKED) {
+                throw new RuntimeException("Erro de execução: entrada não disponível.");
+            }
+        } finally {
+            io.flush();
+        }
+    }
+
+    // Execução em fatias, para um escalonador (ProgramScheduler): roda até
+    // gastar `quantum` instruções, parar num INPUT sem entrada pronta ou
+    // num PRINT sem espaço na saída (o VmIo lança Blocked antes de ler ou
+    // escrever) ou terminar, e guarda pc e pilhas para o próximo step, em
+    // que a instrução é repetida. O quantum só é conferido nos saltos para
+    // trás, como os limites; sem laço o código acaba sozinho. Fatias não
+    // usam compilação em camadas, que rodaria o laço inteiro.
+    public Slice step(long quantum) {
+        limited = true;
+        sliceEnd = quantum > Long.MAX_VALUE - executed ? Long.MAX_VALUE : executed + quantum;
+        try {
+            Slice slice = loop();
+            if (slice != Slice.YIELDED) io.flush();
+            return slice;
+        } catch (RuntimeException | Error e) {
+            io.flush();
+            throw e;
+        }
+    }
+
+    private Slice loop() {
+        final Instruction[] code = this.code;
+        final double[] stack = this.stack;
+        final long[] istack = this.istack;
+        final double[] frame = this.frame;
+        final long[] iframe = this.iframe;
+        final long[] profile = this.profile;
+        final boolean backEdges = backEdgeCounts != null || limited;
+        int sp = this.sp;   // stack pointer: próxima posição livre
+        int isp = this.isp; // idem para a pilha de int
+        int pc = this.pc;   // program counter
+        long executed = this.executed; // instruções despachadas
+        slice = Slice.FINISHED;
+
+        try {
+            while (pc < code.length) {
+                Instruction ins = code[pc];
+                executed++;
+
+                switch (ins.op) {
+                    case PUSH_CONST:
+                        stack[sp++] = ins.numOperand;
+                        pc++;
+                        break;
+                    case LOAD_VAR:
+                        stack[sp++] = frame[ins.slot];
+                        pc++;
+                        break;
+                    case STORE_VAR:
+                        frame[ins.slot] = stack[--sp];
+                        pc++;
+                        break;
+                    case ADD: {
+                        double b = stack[--sp];
+                        double a = stack[--sp];
+                        stack[sp++] = a + b;
+                        pc++;
+                        break;
+                    }
+                    case SUB: {
+                        double b = stack[--sp];
+                        double a = stack[--sp];
+                        stack[sp++] = a - b;
+                        pc++;
+                        break;
+                    }
+                    case MUL: {
+                        double b = stack[--sp];
+                        double a = stack[--sp];
+                        stack[sp++] = a * b;
+                        pc++;
+                        break;
+                    }
+                    case DIV: {
+                        double b = stack[--sp];
+                        double a = stack[--sp];
+                        stack[sp++] = a / b;
+                        pc++;
+                        break;
+                    }
+                    case CMP_EQ: {
+                        double b = stack[--sp];
+                        double a = stack[--sp];
+                        stack[sp++] = a == b ? 1.0 : 0.0;
+                        pc++;
+                        break;
+                    }
+                    case CMP_NEQ: {
+                        double b = stack[--sp];
+                        double a = stack[--sp];
+                        stack[sp++] = a != b ? 1.0 : 0.0;
+                        pc++;
+                        break;
+                    }
+                    case CMP_GT: {
+                        double b = stack[--sp];
+                        double a = stack[--sp];
+                        stack[sp++] = a > b ? 1.0 : 0.0;
+                        pc++;
+                        break;
+                    }
+                    case CMP_GTE: {
+                        double b = stack[--sp];
+                        double a = stack[--sp];
+                        stack[sp++] = a >= b ? 1.0 : 0.0;
+                        pc++;
+                        break;
+                    }
+                    case CMP_LT: {
+                        double b = stack[--sp];
+                        double a = stack[--sp];
+                        stack[sp++] = a < b ? 1.0 : 0.0;
                         pc++;
+                        break;
                     }
-                    break;
+                    case CMP_LTE: {
+                        double b = stack[--sp];
+                        double a = stack[--sp];
+                        stack[sp++] = a <= b ? 1.0 : 0.0;
+                        pc++;
+                        break;
+                    }
+                    case PRINT:
+                        // O valor só sai da pilha depois de impresso: o
+                        // PRINT bloqueado é repetido com a pilha intacta
+                        io.print(stack[sp - 1]);
+                        sp--;
+                        pc++;
+                        break;
+                    case INPUT:
+                        frame[ins.slot] = io.input(ins.strOperand);
+                        pc++;
+                        break;
+                    case JMP:
+                        if (ins.jumpTarget <= pc && backEdges) {
+                            pc = backEdge(pc, ins.jumpTarget, executed);
+                        } else {
+                            pc = ins.jumpTarget;
+                        }
+                        break;
+                    case JMP_IF_FALSE: {
+                        double cond = stack[--sp];
+                        if (cond == 0.0) {
+                            pc = taken(pc, ins.jumpTarget, executed);
+                        } else {
+                            pc++;
+                        }
+                        break;
+                    }
+                    case POP:
+                        sp--;
+                        pc++;
+                        break;
+                    case INC_VAR:
+                        frame[ins.slot] += ins.numOperand;
+                        pc++;
+                        break;
+                    case ADD_VV:
+                        stack[sp++] = frame[ins.slot] + frame[ins.slot2];
+                        pc++;
+                        break;
+                    case SUB_VV:
+                        stack[sp++] = frame[ins.slot] - frame[ins.slot2];
+                        pc++;
+                        break;
+                    case MUL_VV:
+                        stack[sp++] = frame[ins.slot] * frame[ins.slot2];
+                        pc++;
+                        break;
+                    case DIV_VV:
+                        stack[sp++] = frame[ins.slot] / frame[ins.slot2];
+                        pc++;
+                        break;
+                    case JMP_IF_NOT_EQ: {
+                        double b = stack[--sp];
+                        double a = stack[--sp];
+                        pc = a == b ? pc + 1 : taken(pc, ins.jumpTarget, executed);
+                        break;
+                    }
+                    case JMP_IF_NOT_NEQ: {
+                        double b = stack[--sp];
+                        double a = stack[--sp];
+                        pc = a != b ? pc + 1 : taken(pc, ins.jumpTarget, executed);
+                        break;
+                    }
+                    case JMP_IF_NOT_GT: {
+                        double b = stack[--sp];
+                        double a = stack[--sp];
+                        pc = a > b ? pc + 1 : taken(pc, ins.jumpTarget, executed);
+                        break;
+                    }
+                    case JMP_IF_NOT_GTE: {
+                        double b = stack[--sp];
+                        double a = stack[--sp];
+                        pc = a >= b ? pc + 1 : taken(pc, ins.jumpTarget, executed);
+                        break;
+                    }
+                    case JMP_IF_NOT_LT: {
+                        double b = stack[--sp];
+                        double a = stack[--sp];
+                        pc = a < b ? pc + 1 : taken(pc, ins.jumpTarget, executed);
+                        break;
+                    }
+                    case JMP_IF_NOT_LTE: {
+                        double b = stack[--sp];
+                        double a = stack[--sp];
+                        pc = a <= b ? pc + 1 : taken(pc, ins.jumpTarget, executed);
+                        break;
+                    }
+                    case IPUSH_CONST:
+                        istack[isp++] = (long) ins.numOperand;
+                        pc++;
+                        break;
+                    case ILOAD_VAR:
+                        istack[isp++] = iframe[ins.slot];
+                        pc++;
+                        break;
+                    case ISTORE_VAR:
+                        iframe[ins.slot] = istack[--isp];
+                        pc++;
+                        break;
+                    case IADD: {
+                        long b = istack[--isp];
+                        long a = istack[--isp];
+                        istack[isp++] = a + b;
+                        pc++;
+                        break;
+                    }
+                    case ISUB: {
+                        long b = istack[--isp];
+                        long a = istack[--isp];
+                        istack[isp++] = a - b;
+                        pc++;
+                        break;
+                    }
+                    case IMUL: {
+                        long b = istack[--isp];
+                        long a = istack[--isp];
+                        istack[isp++] = a * b;
+                        pc++;
+                        break;
+                    }
+                    case IDIV: {
+                        long b = istack[--isp];
+                        long a = istack[--isp];
+                        istack[isp++] = a / checkDivisor(b);
+                        pc++;
+                        break;
+                    }
+                    case ICMP_EQ: {
+                        long b = istack[--isp];
+                        long a = istack[--isp];
+                        istack[isp++] = a == b ? 1 : 0;
+                        pc++;
+                        break;
+                    }
+                    case ICMP_NEQ: {
+                        long b = istack[--isp];
+                        long a = istack[--isp];
+                        istack[isp++] = a != b ? 1 : 0;
+                        pc++;
+                        break;
+                    }
+                    case ICMP_GT: {
+                        long b = istack[--isp];
+                        long a = istack[--isp];
+                        istack[isp++] = a > b ? 1 : 0;
+                        pc++;
+                        break;
+                    }
+                    case ICMP_GTE: {
+                        long b = istack[--isp];
+                        long a = istack[--isp];
+                        istack[isp++] = a >= b ? 1 : 0;
+                        pc++;
+                        break;
+                    }
+                    case ICMP_LT: {
+                        long b = istack[--isp];
+                        long a = istack[--isp];
+                        istack[isp++] = a < b ? 1 : 0;
+                        pc++;
+                        break;
+                    }
+                    case ICMP_LTE: {
+                        long b = istack[--isp];
+                        long a = istack[--isp];
+                        istack[isp++] = a <= b ? 1 : 0;
+                        pc++;
+                        break;
+                    }
+                    case IINPUT:
+                        iframe[ins.slot] = (long) io.input(ins.strOperand);
+                        pc++;
+                        break;
+                    case IJMP_IF_FALSE:
+                        if (istack[--isp] == 0) {
+                            pc = taken(pc, ins.jumpTarget, executed);
+                        } else {
+                            pc++;
+                        }
+                        break;
+                    case IPOP:
+                        isp--;
+                        pc++;
+                        break;
+                    case I2D:
+                        stack[sp++] = istack[--isp];
+                        pc++;
+                        break;
+                    case D2I:
+                        istack[isp++] = (long) stack[--sp];
+                        pc++;
+                        break;
+                    case IINC_VAR:
+                        iframe[ins.slot] += (long) ins.numOperand;
+                        pc++;
+                        break;
+                    case IADD_VV:
+                        istack[isp++] = iframe[ins.slot] + iframe[ins.slot2];
+                        pc++;
+                        break;
+                    case ISUB_VV:
+                        istack[isp++] = iframe[ins.slot] - iframe[ins.slot2];
+                        pc++;
+                        break;
+                    case IMUL_VV:
+                        istack[isp++] = iframe[ins.slot] * iframe[ins.slot2];
+                        pc++;
+                        break;
+                    case IDIV_VV:
+                        istack[isp++] = iframe[ins.slot] / checkDivisor(iframe[ins.slot2]);
+                        pc++;
+                        break;
+                    case IJMP_IF_NOT_EQ: {
+                        long b = istack[--isp];
+                        long a = istack[--isp];
+                        pc = a == b ? pc + 1 : taken(pc, ins.jumpTarget, executed);
+                        break;
+                    }
+                    case IJMP_IF_NOT_NEQ: {
+                        long b = istack[--isp];
+                        long a = istack[--isp];
+                        pc = a != b ? pc + 1 : taken(pc, ins.jumpTarget, executed);
+                        break;
+                    }
+                    case IJMP_IF_NOT_GT: {
+                        long b = istack[--isp];
+                        long a = istack[--isp];
+                        pc = a > b ? pc + 1 : taken(pc, ins.jumpTarget, executed);
+                        break;
+                    }
+                    case IJMP_IF_NOT_GTE: {
+                        long b = istack[--isp];
+                        long a = istack[--isp];
+                        pc = a >= b ? pc + 1 : taken(pc, ins.jumpTarget, executed);
+                        break;
+                    }
+                    case IJMP_IF_NOT_LT: {
+                        long b = istack[--isp];
+                        long a = istack[--isp];
+                        pc = a < b ? pc + 1 : taken(pc, ins.jumpTarget, executed);
+                        break;
+                    }
+                    case IJMP_IF_NOT_LTE: {
+                        long b = istack[--isp];
+                        long a = istack[--isp];
+                        pc = a <= b ? pc + 1 : taken(pc, ins.jumpTarget, executed);
+                        break;
+                    }
+                    case PROFILE:
+                        profile[ins.slot]++;
+                        pc++;
+                        break;
+                    default:
+                        throw new RuntimeException("Opcode desconhecido: " + ins.op);
                 }
-                case POP:
-                    stack.pop();
-                    pc++;
-                    break;
-                default:
-                    throw new RuntimeException("Opcode desconhecido: " + ins.op);
             }
+        } catch (SliceEnd e) {
+            pc = resumePc;
+            slice = Slice.YIELDED;
+        } catch (VmIo.Blocked e) {
+            // O INPUT ou PRINT em pc não executou
+            executed--;
+            slice = Slice.BLOCKED;
+        } finally {
+            this.executed = executed;
+        }
+        // Depois de um erro o estado não interessa: não há próximo step
+        this.pc = pc;
+        this.sp = sp;
+        this.isp = isp;
+        return this.slice;
+    }
+
+    // Conta a passagem pelo JMP para trás em `pc` e devolve onde continuar:
+    // o início do laço, ou o pc de saída depois de rodar a versão compilada.
+    // Com limites só passa por limit.
+    // Nos JMP as pilhas estão vazias, então só os frames precisam passar
+    // para o código compilado.
+    private int backEdge(int pc, int header, long executed) {
+        if (limited) return limit(header, executed);
+        MethodHandle loop = compiledLoops[pc];
+        if (loop == null) {
+            if (backEdgeCounts[pc] < 0 || ++backEdgeCounts[pc] < tierThreshold) {
+                return header;
+            }
+            try {
+                loop = JvmCompiler.compileRegion(Arrays.asList(code), frame.length, header, pc + 1);
+            } catch (RuntimeException e) {
+                // Trecho que o JvmCompiler não aceita: continua interpretado
+                backEdgeCounts[pc] = -1;
+                return header;
+            }
+            compiledLoops[pc] = loop;
+            compiledLoopCount++;
+        }
+        try {
+            return (int) loop.invokeExact(frame, iframe, io);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    // Destino de um salto condicional tomado; para trás ele fecha um laço e
+    // passa pelos limites (sem compilação em camadas, que só parte de JMP)
+    private int taken(int pc, int target, long executed) {
+        return target <= pc && limited ? limit(target, executed) : target;
+    }
+
+    // Confere o cancelamento, as instruções já executadas e o fim da fatia
+    // antes de voltar ao início do laço em `header`
+    private int limit(int header, long executed) {
+        if (cancelled) {
+            throw new RuntimeException("Erro de execução: execução cancelada.");
+        }
+        if (executed > maxInstructions) {
+            throw new RuntimeException("Erro de execução: limite de " + maxInstructions
+                    + " instruções excedido.");
+        }
+        if (executed >= sliceEnd) {
+            resumePc = header;
+            throw SliceEnd.INSTANCE;
+        }
+        return header;
+    }
+
+    static long checkDivisor(long b) {
+        if (b == 0) {
+            throw new RuntimeException("Erro de execução: divisão inteira por zero.");
         }
+        return b;
     }
 }
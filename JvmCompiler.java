@@ -0,0 +1,488 @@
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Traduz o código intermediário para uma classe JVM com um único método
+// estático int run(double[] frame, long[] iframe, VmIo io), carregada como
+// hidden class. Cada slot vira duas variáveis locais do método, uma double
+// e uma long (o mesmo slot pode ser real num bloco e int em outro), JMP e
+// JMP_IF_FALSE viram desvios da JVM, e o HotSpot passa a otimizar os
+// laços do programa diretamente.
+//
+// Pode traduzir o programa inteiro (compile) ou só um trecho [início, fim)
+// (compileRegion), usado pelo Interpreter para compilar um laço quente.
+// Todo salto para fora do trecho, e a saída pelo fim dele, devolve as
+// variáveis aos frames e retorna o pc onde a interpretação deve continuar.
+//
+// Em todo destino de salto as pilhas de operandos estão vazias (os saltos
+// só aparecem entre comandos), então todos os frames da StackMapTable são
+// iguais: os três parâmetros e as variáveis, sem nada na pilha.
+public class JvmCompiler {
+
+    private static final String CLASS_NAME = "A3Program";
+    private static final String METHOD_NAME = "run";
+    private static final String DESCRIPTOR = "([D[JLVmIo;)I";
+    private static final String SELF = "JvmCompiler";
+
+    // Opcodes da JVM usados pelo gerador
+    private static final int ICONST_0 = 0x03;
+    private static final int LCONST_0 = 0x09;
+    private static final int LCONST_1 = 0x0a;
+    private static final int DCONST_0 = 0x0e;
+    private static final int DCONST_1 = 0x0f;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int LDC = 0x12;
+    private static final int LDC_W = 0x13;
+    private static final int LDC2_W = 0x14;
+    private static final int LLOAD = 0x16;
+    private static final int DLOAD = 0x18;
+    private static final int ALOAD_0 = 0x2a;
+    private static final int ALOAD_1 = 0x2b;
+    private static final int ALOAD_2 = 0x2c;
+    private static final int LALOAD = 0x2f;
+    private static final int DALOAD = 0x31;
+    private static final int LSTORE = 0x37;
+    private static final int DSTORE = 0x39;
+    private static final int LASTORE = 0x50;
+    private static final int DASTORE = 0x52;
+    private static final int POP2 = 0x58;
+    private static final int LADD = 0x61;
+    private static final int DADD = 0x63;
+    private static final int LSUB = 0x65;
+    private static final int DSUB = 0x67;
+    private static final int LMUL = 0x69;
+    private static final int DMUL = 0x6b;
+    private static final int LDIV = 0x6d;
+    private static final int DDIV = 0x6f;
+    private static final int L2D = 0x8a;
+    private static final int D2L = 0x8f;
+    private static final int LCMP = 0x94;
+    private static final int DCMPL = 0x97;
+    private static final int DCMPG = 0x98;
+    private static final int IFEQ = 0x99;
+    private static final int IFNE = 0x9a;
+    private static final int IFLT = 0x9b;
+    private static final int IFGE = 0x9c;
+    private static final int IFGT = 0x9d;
+    private static final int IFLE = 0x9e;
+    private static final int GOTO = 0xa7;
+    private static final int IRETURN = 0xac;
+    private static final int INVOKEVIRTUAL = 0xb6;
+    private static final int INVOKESTATIC = 0xb8;
+    private static final int WIDE = 0xc4;
+
+    private static final int FIRST_VAR_LOCAL = 3; // depois de frame, iframe e io
+
+    private final List<Instruction> code;
+    private final int frameSize;
+    private final int start;
+    private final int end;
+    private final ClassFileWriter cw = new ClassFileWriter();
+    private final ClassFileWriter.ByteVector out = new ClassFileWriter.ByteVector();
+    private final ClassFileWriter.ByteVector frames = new ClassFileWriter.ByteVector();
+    private final List<int[]> pendingJumps = new ArrayList<>(); // {início do desvio, pc destino}
+    private int[] offsetOf;
+    private int frameCount = 0;
+    private int lastFrameOffset = -1;
+
+    private JvmCompiler(List<Instruction> code, int frameSize, int start, int end) {
+        this.code = code;
+        this.frameSize = frameSize;
+        this.start = start;
+        this.end = end;
+    }
+
+    // Gera, carrega e devolve o método run do programa
+    public static MethodHandle compile(List<Instruction> code, int frameSize) {
+        return compileRegion(code, frameSize, 0, code.size());
+    }
+
+    // Idem para as instruções [start, end); a execução entra em start e o
+    // método devolve o pc de saída
+    public static MethodHandle compileRegion(List<Instruction> code, int frameSize, int start, int end) {
+        byte[] bytes = new JvmCompiler(code, frameSize, start, end).generate();
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+            return lookup.findStatic(lookup.lookupClass(), METHOD_NAME,
+                    MethodType.methodType(int.class, double[].class, long[].class, VmIo.class));
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException("Falha ao carregar o código gerado: " + e.getMessage(), e);
+        }
+    }
+
+    // Chamados pelo código gerado
+    public static void print(double value, VmIo io) {
+        io.print(value);
+    }
+
+    public static double cmpEq(double a, double b)  { return a == b ? 1.0 : 0.0; }
+    public static double cmpNeq(double a, double b) { return a != b ? 1.0 : 0.0; }
+    public static double cmpGt(double a, double b)  { return a > b ? 1.0 : 0.0; }
+    public static double cmpGte(double a, double b) { return a >= b ? 1.0 : 0.0; }
+    public static double cmpLt(double a, double b)  { return a < b ? 1.0 : 0.0; }
+    public static double cmpLte(double a, double b) { return a <= b ? 1.0 : 0.0; }
+
+    public static long icmpEq(long a, long b)  { return a == b ? 1 : 0; }
+    public static long icmpNeq(long a, long b) { return a != b ? 1 : 0; }
+    public static long icmpGt(long a, long b)  { return a > b ? 1 : 0; }
+    public static long icmpGte(long a, long b) { return a >= b ? 1 : 0; }
+    public static long icmpLt(long a, long b)  { return a < b ? 1 : 0; }
+    public static long icmpLte(long a, long b) { return a <= b ? 1 : 0; }
+
+    private byte[] generate() {
+        if (frameSize > (0xFFFF - FIRST_VAR_LOCAL) / 4) {
+            throw new RuntimeException("Variáveis demais para o motor JVM.");
+        }
+        int n = code.size();
+        int[] depthAt = CodeGenerator.computeStackDepths(code);
+        int[] intDepthAt = CodeGenerator.computeIntStackDepths(code);
+        int maxDepth = CodeGenerator.computeMaxStackDepth(code) + CodeGenerator.computeMaxIntStackDepth(code);
+        boolean[] isTarget = new boolean[n + 1];
+        for (Instruction ins : code) {
+            if (ins.op.isJump()) isTarget[ins.jumpTarget] = true;
+        }
+        offsetOf = new int[n + 1];
+        Arrays.fill(offsetOf, -1);
+
+        // Carrega as variáveis dos frames para as locais
+        for (int s = 0; s < frameSize; s++) {
+            out.u1(ALOAD_0);
+            pushInt(s);
+            out.u1(DALOAD);
+            local(DSTORE, s);
+            out.u1(ALOAD_1);
+            pushInt(s);
+            out.u1(LALOAD);
+            intLocal(LSTORE, s);
+        }
+
+        boolean afterGoto = false;
+        for (int pc = start; pc < end; pc++) {
+            offsetOf[pc] = out.size();
+            if (depthAt[pc] < 0) continue; // inalcançável
+            if (isTarget[pc] || afterGoto) {
+                if (depthAt[pc] != 0 || intDepthAt[pc] != 0) {
+                    throw new RuntimeException("Pilha não vazia no destino de salto " + pc + ".");
+                }
+                frame();
+            }
+            afterGoto = false;
+
+            Instruction ins = code.get(pc);
+            Instruction next = pc + 1 < end ? code.get(pc + 1) : null;
+
+            // Comparação seguida de JMP_IF_FALSE vira um único desvio
+            if (isCompare(ins.op) && next != null && !isTarget[pc + 1]
+                    && next.op == (isIntCompare(ins.op) ? OpCode.IJMP_IF_FALSE : OpCode.JMP_IF_FALSE)) {
+                compareAndBranch(ins.op, next.jumpTarget);
+                offsetOf[++pc] = out.size();
+                continue;
+            }
+
+            switch (ins.op) {
+                case PUSH_CONST:
+                    pushDouble(ins.numOperand);
+                    break;
+                case LOAD_VAR:
+                    local(DLOAD, ins.slot);
+                    break;
+                case STORE_VAR:
+                    local(DSTORE, ins.slot);
+                    break;
+                case ADD: out.u1(DADD); break;
+                case SUB: out.u1(DSUB); break;
+                case MUL: out.u1(DMUL); break;
+                case DIV: out.u1(DDIV); break;
+                case CMP_EQ:  invokeStatic(SELF, "cmpEq", "(DD)D"); break;
+                case CMP_NEQ: invokeStatic(SELF, "cmpNeq", "(DD)D"); break;
+                case CMP_GT:  invokeStatic(SELF, "cmpGt", "(DD)D"); break;
+                case CMP_GTE: invokeStatic(SELF, "cmpGte", "(DD)D"); break;
+                case CMP_LT:  invokeStatic(SELF, "cmpLt", "(DD)D"); break;
+                case CMP_LTE: invokeStatic(SELF, "cmpLte", "(DD)D"); break;
+                case PRINT:
+                    out.u1(ALOAD_2);
+                    invokeStatic(SELF, "print", "(DLVmIo;)V");
+                    break;
+                case INPUT:
+                    input(ins);
+                    local(DSTORE, ins.slot);
+                    break;
+                case JMP:
+                    jump(GOTO, ins.jumpTarget);
+                    afterGoto = true;
+                    break;
+                case JMP_IF_FALSE:
+                    // desvia quando cond == 0.0
+                    out.u1(DCONST_0);
+                    out.u1(DCMPL);
+                    jump(IFEQ, ins.jumpTarget);
+                    break;
+                case POP:
+                    out.u1(POP2);
+                    break;
+                case INC_VAR:
+                    local(DLOAD, ins.slot);
+                    pushDouble(ins.numOperand);
+                    out.u1(DADD);
+                    local(DSTORE, ins.slot);
+                    break;
+                case ADD_VV: loadPair(ins); out.u1(DADD); break;
+                case SUB_VV: loadPair(ins); out.u1(DSUB); break;
+                case MUL_VV: loadPair(ins); out.u1(DMUL); break;
+                case DIV_VV: loadPair(ins); out.u1(DDIV); break;
+                case JMP_IF_NOT_EQ:  compareAndBranch(OpCode.CMP_EQ, ins.jumpTarget); break;
+                case JMP_IF_NOT_NEQ: compareAndBranch(OpCode.CMP_NEQ, ins.jumpTarget); break;
+                case JMP_IF_NOT_GT:  compareAndBranch(OpCode.CMP_GT, ins.jumpTarget); break;
+                case JMP_IF_NOT_GTE: compareAndBranch(OpCode.CMP_GTE, ins.jumpTarget); break;
+                case JMP_IF_NOT_LT:  compareAndBranch(OpCode.CMP_LT, ins.jumpTarget); break;
+                case JMP_IF_NOT_LTE: compareAndBranch(OpCode.CMP_LTE, ins.jumpTarget); break;
+
+                case IPUSH_CONST:
+                    pushLong((long) ins.numOperand);
+                    break;
+                case ILOAD_VAR:
+                    intLocal(LLOAD, ins.slot);
+                    break;
+                case ISTORE_VAR:
+                    intLocal(LSTORE, ins.slot);
+                    break;
+                case IADD: out.u1(LADD); break;
+                case ISUB: out.u1(LSUB); break;
+                case IMUL: out.u1(LMUL); break;
+                case IDIV: intDivide(); break;
+                case ICMP_EQ:  invokeStatic(SELF, "icmpEq", "(JJ)J"); break;
+                case ICMP_NEQ: invokeStatic(SELF, "icmpNeq", "(JJ)J"); break;
+                case ICMP_GT:  invokeStatic(SELF, "icmpGt", "(JJ)J"); break;
+                case ICMP_GTE: invokeStatic(SELF, "icmpGte", "(JJ)J"); break;
+                case ICMP_LT:  invokeStatic(SELF, "icmpLt", "(JJ)J"); break;
+                case ICMP_LTE: invokeStatic(SELF, "icmpLte", "(JJ)J"); break;
+                case IINPUT:
+                    input(ins);
+                    out.u1(D2L);
+                    intLocal(LSTORE, ins.slot);
+                    break;
+                case IJMP_IF_FALSE:
+                    out.u1(LCONST_0);
+                    out.u1(LCMP);
+                    jump(IFEQ, ins.jumpTarget);
+                    break;
+                case IPOP: out.u1(POP2); break;
+                case I2D:  out.u1(L2D); break;
+                case D2I:  out.u1(D2L); break;
+                case IINC_VAR:
+                    intLocal(LLOAD, ins.slot);
+                    pushLong((long) ins.numOperand);
+                    out.u1(LADD);
+                    intLocal(LSTORE, ins.slot);
+                    break;
+                case IADD_VV: loadIntPair(ins); out.u1(LADD); break;
+                case ISUB_VV: loadIntPair(ins); out.u1(LSUB); break;
+                case IMUL_VV: loadIntPair(ins); out.u1(LMUL); break;
+                case IDIV_VV: loadIntPair(ins); intDivide(); break;
+                case IJMP_IF_NOT_EQ:  compareAndBranch(OpCode.ICMP_EQ, ins.jumpTarget); break;
+                case IJMP_IF_NOT_NEQ: compareAndBranch(OpCode.ICMP_NEQ, ins.jumpTarget); break;
+                case IJMP_IF_NOT_GT:  compareAndBranch(OpCode.ICMP_GT, ins.jumpTarget); break;
+                case IJMP_IF_NOT_GTE: compareAndBranch(OpCode.ICMP_GTE, ins.jumpTarget); break;
+                case IJMP_IF_NOT_LT:  compareAndBranch(OpCode.ICMP_LT, ins.jumpTarget); break;
+                case IJMP_IF_NOT_LTE: compareAndBranch(OpCode.ICMP_LTE, ins.jumpTarget); break;
+                default:
+                    throw new RuntimeException("Opcode não suportado pelo motor JVM: " + ins.op);
+            }
+        }
+
+        // Saídas: a do fim do trecho (o fim do programa, no caso do programa
+        // inteiro) e uma para cada destino fora do trecho. Cada uma devolve
+        // as variáveis aos frames e retorna o pc onde continuar.
+        offsetOf[end] = out.size();
+        exit(end, isTarget[end] || afterGoto);
+        for (int[] jump : pendingJumps) {
+            int target = jump[1];
+            if ((target < start || target > end) && offsetOf[target] < 0) {
+                offsetOf[target] = out.size();
+                exit(target, true);
+            }
+        }
+
+        for (int[] jump : pendingJumps) {
+            int delta = offsetOf[jump[1]] - jump[0];
+            if (delta != (short) delta) {
+                throw new RuntimeException("Salto longo demais para o motor JVM.");
+            }
+            out.patchU2(jump[0] + 1, delta);
+        }
+
+        int maxStack = maxDepth * 2 + 4;
+        int maxLocals = FIRST_VAR_LOCAL + frameSize * 4;
+        return cw.toBytes(CLASS_NAME, METHOD_NAME, DESCRIPTOR, maxStack, maxLocals, out, frames, frameCount);
+    }
+
+    private void exit(int pc, boolean needsFrame) {
+        if (needsFrame) frame();
+        for (int s = 0; s < frameSize; s++) {
+            out.u1(ALOAD_0);
+            pushInt(s);
+            local(DLOAD, s);
+            out.u1(DASTORE);
+            out.u1(ALOAD_1);
+            pushInt(s);
+            intLocal(LLOAD, s);
+            out.u1(LASTORE);
+        }
+        pushInt(pc);
+        out.u1(IRETURN);
+    }
+
+    private static boolean isCompare(OpCode op) {
+        switch (op) {
+            case CMP_EQ: case CMP_NEQ: case CMP_GT: case CMP_GTE: case CMP_LT: case CMP_LTE:
+                return true;
+            default:
+                return isIntCompare(op);
+        }
+    }
+
+    private static boolean isIntCompare(OpCode op) {
+        switch (op) {
+            case ICMP_EQ: case ICMP_NEQ: case ICMP_GT: case ICMP_GTE: case ICMP_LT: case ICMP_LTE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // Desvia para target quando a comparação é falsa. dcmpg/dcmpl são
+    // escolhidos para que NaN também desvie, como no Interpreter.
+    private void compareAndBranch(OpCode op, int target) {
+        switch (op) {
+            case CMP_EQ:  out.u1(DCMPL); jump(IFNE, target); break;
+            case CMP_NEQ: out.u1(DCMPL); jump(IFEQ, target); break;
+            case CMP_GT:  out.u1(DCMPL); jump(IFLE, target); break;
+            case CMP_GTE: out.u1(DCMPL); jump(IFLT, target); break;
+            case CMP_LT:  out.u1(DCMPG); jump(IFGE, target); break;
+            case CMP_LTE: out.u1(DCMPG); jump(IFGT, target); break;
+            case ICMP_EQ:  out.u1(LCMP); jump(IFNE, target); break;
+            case ICMP_NEQ: out.u1(LCMP); jump(IFEQ, target); break;
+            case ICMP_GT:  out.u1(LCMP); jump(IFLE, target); break;
+            case ICMP_GTE: out.u1(LCMP); jump(IFLT, target); break;
+            case ICMP_LT:  out.u1(LCMP); jump(IFGE, target); break;
+            case ICMP_LTE: out.u1(LCMP); jump(IFGT, target); break;
+            default: throw new IllegalArgumentException(op.toString());
+        }
+    }
+
+    private void loadPair(Instruction ins) {
+        local(DLOAD, ins.slot);
+        local(DLOAD, ins.slot2);
+    }
+
+    private void loadIntPair(Instruction ins) {
+        intLocal(LLOAD, ins.slot);
+        intLocal(LLOAD, ins.slot2);
+    }
+
+    // Mesma verificação de divisão por zero do Interpreter
+    private void intDivide() {
+        invokeStatic("Interpreter", "checkDivisor", "(J)J");
+        out.u1(LDIV);
+    }
+
+    private void input(Instruction ins) {
+        out.u1(ALOAD_2);
+        ldcString(ins.strOperand);
+        out.u1(INVOKEVIRTUAL).u2(cw.methodRef("VmIo", "input", "(Ljava/lang/String;)D"));
+    }
+
+    private void jump(int opcode, int targetPc) {
+        pendingJumps.add(new int[] { out.size(), targetPc });
+        out.u1(opcode).u2(0);
+    }
+
+    private void local(int opcode, int slot) {
+        localIndex(opcode, FIRST_VAR_LOCAL + slot * 4);
+    }
+
+    private void intLocal(int opcode, int slot) {
+        localIndex(opcode, FIRST_VAR_LOCAL + slot * 4 + 2);
+    }
+
+    private void localIndex(int opcode, int index) {
+        if (index <= 0xFF) {
+            out.u1(opcode).u1(index);
+        } else {
+            out.u1(WIDE).u1(opcode).u2(index);
+        }
+    }
+
+    private void pushInt(int v) {
+        if (v <= 5) {
+            out.u1(ICONST_0 + v);
+        } else if (v <= Byte.MAX_VALUE) {
+            out.u1(BIPUSH).u1(v);
+        } else if (v <= Short.MAX_VALUE) {
+            out.u1(SIPUSH).u2(v);
+        } else {
+            int index = cw.intConst(v);
+            if (index <= 0xFF) {
+                out.u1(LDC).u1(index);
+            } else {
+                out.u1(LDC_W).u2(index);
+            }
+        }
+    }
+
+    private void pushDouble(double d) {
+        long bits = Double.doubleToRawLongBits(d);
+        if (bits == 0L) {
+            out.u1(DCONST_0);
+        } else if (d == 1.0) {
+            out.u1(DCONST_1);
+        } else {
+            out.u1(LDC2_W).u2(cw.doubleConst(d));
+        }
+    }
+
+    private void pushLong(long v) {
+        if (v == 0) {
+            out.u1(LCONST_0);
+        } else if (v == 1) {
+            out.u1(LCONST_1);
+        } else {
+            out.u1(LDC2_W).u2(cw.longConst(v));
+        }
+    }
+
+    private void ldcString(String s) {
+        int index = cw.string(s);
+        if (index <= 0xFF) {
+            out.u1(LDC).u1(index);
+        } else {
+            out.u1(LDC_W).u2(index);
+        }
+    }
+
+    private void invokeStatic(String owner, String name, String descriptor) {
+        out.u1(INVOKESTATIC).u2(cw.methodRef(owner, name, descriptor));
+    }
+
+    // full_frame: frame, iframe, io e as variáveis double/long, pilha vazia
+    private void frame() {
+        int offset = out.size();
+        if (offset == lastFrameOffset) return;
+        int delta = lastFrameOffset < 0 ? offset : offset - lastFrameOffset - 1;
+        frames.u1(255).u2(delta).u2(FIRST_VAR_LOCAL + frameSize * 2);
+        frames.u1(7).u2(cw.classRef("[D"));
+        frames.u1(7).u2(cw.classRef("[J"));
+        frames.u1(7).u2(cw.classRef("VmIo"));
+        for (int s = 0; s < frameSize; s++) {
+            frames.u1(3); // double
+            frames.u1(4); // long
+        }
+        frames.u2(0);
+        frameCount++;
+        lastFrameOffset = offset;
+    }
+}
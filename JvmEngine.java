@@ -0,0 +1,49 @@
+import java.lang.invoke.MethodHandle;
+import java.util.List;
+
+// Motor de execução que roda o programa como código JVM gerado pelo
+// JvmCompiler, em vez de interpretar instrução por instrução. Programas
+// que a JVM não aceita (método acima de 64 KB, salto acima de 32 KB, como
+// nos programas muito grandes ou muito aninhados) rodam no Interpreter,
+// com a mesma saída.
+public class JvmEngine {
+
+    private final CompiledProgram compiled;
+    private final MethodHandle program; // null: roda no Interpreter
+    private final VmIo io;
+
+    public JvmEngine(List<Instruction> code, int frameSize, VmIo io) {
+        this(new CompiledProgram(code, CodeGenerator.computeMaxStackDepth(code),
+                CodeGenerator.computeMaxIntStackDepth(code), frameSize), io);
+    }
+
+    // Uma execução de um programa compartilhado: a classe gerada é a do
+    // programa (traduzida uma vez), os frames são criados em cada run
+    public JvmEngine(CompiledProgram compiled, VmIo io) {
+        this.compiled = compiled;
+        this.io = io;
+        this.program = compiled.jvmMethod();
+    }
+
+    // Falso quando o programa roda no Interpreter
+    public boolean isCompiled() {
+        return program != null;
+    }
+
+    public void run() {
+        if (program == null) {
+            new Interpreter(compiled, io).run();
+            return;
+        }
+        try {
+            // O programa inteiro só sai pelo fim; o pc devolvido é descartado
+            program.invoke(new double[compiled.frameSize], new long[compiled.frameSize], io);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new RuntimeException(t);
+        } finally {
+            io.flush();
+        }
+    }
+}
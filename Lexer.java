@@ -1,13 +1,83 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
-public class Lexer {
+// Analisador léxico. Pode trabalhar sobre uma String inteira ou ler a
+// entrada aos poucos de um Reader/canal, guardando só um buffer de
+// tamanho fixo: os tokens são entregues um a um por nextToken(), sem
+// precisar montar a lista completa.
+//
+// O reconhecimento em si (scan) não aloca nada: devolve o tipo e deixa o
+// início e o lexema nos campos do lexer. nextToken() só cria Token para
+// identificadores e números; os demais são instâncias compartilhadas.
+public class Lexer implements TokenSource {
 
-    private final String input;
-    private int pos = 0;
+    private static final int BUFFER_SIZE = 8192;
+
+    // Hash perfeito das palavras-chave: (primeira * 3 + última + tamanho) & 7
+    // leva as 7 palavras a posições distintas da tabela
+    private static final String[] KEYWORDS = new String[8];
+    private static final TokenType[] KEYWORD_TYPES = new TokenType[8];
+
+    static {
+        TokenType[] types = {
+            TokenType.INT, TokenType.REAL, TokenType.IF, TokenType.ELSE,
+            TokenType.WHILE, TokenType.PRINT, TokenType.INPUT
+        };
+        for (TokenType type : types) {
+            String word = Token.of(type).lexeme;
+            int h = keywordHash(word.charAt(0), word.charAt(word.length() - 1), word.length());
+            if (KEYWORDS[h] != null) {
+                throw new IllegalStateException("Colisão no hash de palavras-chave: " + word);
+            }
+            KEYWORDS[h] = word;
+            KEYWORD_TYPES[h] = type;
+        }
+    }
+
+    private final Reader reader; // null quando a entrada é uma String
+    private final char[] buf;
+    private int bufPos = 0;      // próximo caractere no buffer
+    private int bufLen;          // caracteres válidos no buffer
+    private int pos = 0;         // posição absoluta na entrada (para erros)
+
+    private final NameTable names = new NameTable();
+    private char[] lexeme = new char[64]; // caracteres do último identificador/número
+    private int lexemeLength;
+    private int tokenStart;               // posição absoluta do último token
 
     public Lexer(String input) {
-        this.input = input;
+        this(input.toCharArray());
+    }
+
+    // Lê direto do array, sem cópia (usado pelo TokenBuffer)
+    Lexer(char[] input) {
+        this(input, 0);
+    }
+
+    // Começa a reconhecer em `from`, que precisa ser o fim de um token (ou
+    // 0): o TokenBuffer relê assim só o trecho alterado de um texto
+    Lexer(char[] input, int from) {
+        this.reader = null;
+        this.buf = input;
+        this.bufLen = input.length;
+        this.bufPos = from;
+        this.pos = from;
+    }
+
+    public Lexer(Reader reader) {
+        this.reader = reader;
+        this.buf = new char[BUFFER_SIZE];
+        this.bufLen = 0;
+    }
+
+    public Lexer(ReadableByteChannel channel) {
+        this(Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder(), BUFFER_SIZE));
     }
 
     public List<Token> tokenize() {
@@ -20,148 +90,208 @@ public class Lexer {
         return tokens;
     }
 
-    private Token nextToken() {
-        skipWhitespace();
-
-        if (pos >= input.length()) {
-            return new Token(TokenType.EOF, "");
+    @Override
+    public Token nextToken() {
+        TokenType type = scan();
+        if (type == TokenType.IDENTIFIER || type == TokenType.NUMBER) {
+            return new Token(type, names.intern(lexeme, 0, lexemeLength), tokenStart);
         }
+        return Token.of(type);
+    }
 
-        char c = input.charAt(pos);
+    @Override
+    public int tokenOffset() {
+        return tokenStart;
+    }
 
-        // Identificadores ou palavras-chave
-        if (Character.isLetter(c) || c == '_') {
-            return identifier();
-        }
+    int tokenLength() {
+        return pos - tokenStart;
+    }
 
-        // Números (int ou real)
-        if (Character.isDigit(c)) {
-            return number();
-        }
+    // Reconhece o próximo token e devolve só o tipo
+    TokenType scan() {
+        while (true) {
+            skipWhitespace();
+            tokenStart = pos;
+
+            if (!available(1)) {
+                return TokenType.EOF;
+            }
 
-        // Símbolos e operadores
-        switch (c) {
-            case '+':
-                pos++;
-                return new Token(TokenType.PLUS, "+");
-            case '-':
-                pos++;
-                return new Token(TokenType.MINUS, "-");
-            case '*':
-                pos++;
-                return new Token(TokenType.STAR, "*");
-            case '/':
-                // Comentário de linha: // ...
-                if (peekNext() == '/') {
-                    pos += 2;
-                    while (pos < input.length() && input.charAt(pos) != '\n') pos++;
-                    return nextToken();
-                } else {
-                    pos++;
-                    return new Token(TokenType.SLASH, "/");
-                }
-            case '=':
-                if (peekNext() == '=') {
-                    pos += 2;
-                    return new Token(TokenType.EQUAL_EQUAL, "==");
-                } else {
-                    pos++;
-                    return new Token(TokenType.ASSIGN, "=");
-                }
-            case '!':
-                if (peekNext() == '=') {
-                    pos += 2;
-                    return new Token(TokenType.BANG_EQUAL, "!=");
-                }
-                throw error("Caractere '!' inesperado.");
-            case '>':
-                if (peekNext() == '=') {
-                    pos += 2;
-                    return new Token(TokenType.GREATER_EQUAL, ">=");
-                } else {
-                    pos++;
-                    return new Token(TokenType.GREATER, ">");
-                }
-            case '<':
-                if (peekNext() == '=') {
-                    pos += 2;
-                    return new Token(TokenType.LESS_EQUAL, "<=");
-                } else {
-                    pos++;
-                    return new Token(TokenType.LESS, "<");
-                }
-            case ';':
-                pos++;
-                return new Token(TokenType.SEMICOLON, ";");
-            case '(':
-                pos++;
-                return new Token(TokenType.LPAREN, "(");
-            case ')':
-                pos++;
-                return new Token(TokenType.RPAREN, ")");
-            case '{':
-                pos++;
-                return new Token(TokenType.LBRACE, "{");
-            case '}':
-                pos++;
-                return new Token(TokenType.RBRACE, "}");
-            default:
-                throw error("Caractere inválido: '" + c + "'");
+            char c = peek();
+
+            // Identificadores ou palavras-chave
+            if (Character.isLetter(c) || c == '_') {
+                return identifier();
+            }
+
+            // Números (int ou real)
+            if (Character.isDigit(c)) {
+                return number();
+            }
+
+            // Símbolos e operadores
+            switch (c) {
+                case '+':
+                    advance(1);
+                    return TokenType.PLUS;
+                case '-':
+                    advance(1);
+                    return TokenType.MINUS;
+                case '*':
+                    advance(1);
+                    return TokenType.STAR;
+                case '/':
+                    // Comentário de linha: // ...
+                    if (peekNext() == '/') {
+                        advance(2);
+                        while (available(1) && peek() != '\n') advance(1);
+                        continue;
+                    }
+                    advance(1);
+                    return TokenType.SLASH;
+                case '=':
+                    if (peekNext() == '=') {
+                        advance(2);
+                        return TokenType.EQUAL_EQUAL;
+                    }
+                    advance(1);
+                    return TokenType.ASSIGN;
+                case '!':
+                    if (peekNext() == '=') {
+                        advance(2);
+                        return TokenType.BANG_EQUAL;
+                    }
+                    throw error("Caractere '!' inesperado.");
+                case '>':
+                    if (peekNext() == '=') {
+                        advance(2);
+                        return TokenType.GREATER_EQUAL;
+                    }
+                    advance(1);
+                    return TokenType.GREATER;
+                case '<':
+                    if (peekNext() == '=') {
+                        advance(2);
+                        return TokenType.LESS_EQUAL;
+                    }
+                    advance(1);
+                    return TokenType.LESS;
+                case ';':
+                    advance(1);
+                    return TokenType.SEMICOLON;
+                case '(':
+                    advance(1);
+                    return TokenType.LPAREN;
+                case ')':
+                    advance(1);
+                    return TokenType.RPAREN;
+                case '{':
+                    advance(1);
+                    return TokenType.LBRACE;
+                case '}':
+                    advance(1);
+                    return TokenType.RBRACE;
+                default:
+                    throw error("Caractere inválido: '" + c + "'");
+            }
         }
     }
 
-    private Token identifier() {
-        int start = pos;
-        while (pos < input.length() &&
-               (Character.isLetterOrDigit(input.charAt(pos)) || input.charAt(pos) == '_')) {
-            pos++;
+    private TokenType identifier() {
+        lexemeLength = 0;
+        while (available(1) && (Character.isLetterOrDigit(peek()) || peek() == '_')) {
+            appendLexeme(peek());
+            advance(1);
         }
-        String text = input.substring(start, pos);
-
-        switch (text) {
-            case "int":   return new Token(TokenType.INT, text);
-            case "real":  return new Token(TokenType.REAL, text);
-            case "if":    return new Token(TokenType.IF, text);
-            case "else":  return new Token(TokenType.ELSE, text);
-            case "while": return new Token(TokenType.WHILE, text);
-            case "print": return new Token(TokenType.PRINT, text);
-            case "input": return new Token(TokenType.INPUT, text);
-            default:      return new Token(TokenType.IDENTIFIER, text);
+        return keyword(lexeme, 0, lexemeLength);
+    }
+
+    // Tipo da palavra-chave com esses caracteres, ou IDENTIFIER
+    static TokenType keyword(char[] chars, int start, int length) {
+        int h = keywordHash(chars[start], chars[start + length - 1], length);
+        String word = KEYWORDS[h];
+        if (word == null || word.length() != length) return TokenType.IDENTIFIER;
+        for (int i = 0; i < length; i++) {
+            if (word.charAt(i) != chars[start + i]) return TokenType.IDENTIFIER;
         }
+        return KEYWORD_TYPES[h];
+    }
+
+    private static int keywordHash(char first, char last, int length) {
+        return (first * 3 + last + length) & 7;
     }
 
-    private Token number() {
-        int start = pos;
+    private TokenType number() {
+        lexemeLength = 0;
         boolean hasDot = false;
-        while (pos < input.length()) {
-            char c = input.charAt(pos);
+        while (available(1)) {
+            char c = peek();
             if (Character.isDigit(c)) {
-                pos++;
+                appendLexeme(c);
+                advance(1);
             } else if (c == '.' && !hasDot) {
                 hasDot = true;
-                pos++;
+                appendLexeme(c);
+                advance(1);
             } else {
                 break;
             }
         }
-        String text = input.substring(start, pos);
-        return new Token(TokenType.NUMBER, text);
+        return TokenType.NUMBER;
+    }
+
+    private void appendLexeme(char c) {
+        if (lexemeLength == lexeme.length) {
+            lexeme = Arrays.copyOf(lexeme, lexeme.length * 2);
+        }
+        lexeme[lexemeLength++] = c;
     }
 
     private void skipWhitespace() {
-        while (pos < input.length()) {
-            char c = input.charAt(pos);
+        while (available(1)) {
+            char c = peek();
             if (Character.isWhitespace(c)) {
-                pos++;
+                advance(1);
             } else {
                 break;
             }
         }
     }
 
+    private char peek() {
+        return buf[bufPos];
+    }
+
     private char peekNext() {
-        if (pos + 1 >= input.length()) return '\0';
-        return input.charAt(pos + 1);
+        if (!available(2)) return '\0';
+        return buf[bufPos + 1];
+    }
+
+    private void advance(int n) {
+        bufPos += n;
+        pos += n;
+    }
+
+    // Garante n caracteres no buffer se a entrada ainda tiver; lê mais do
+    // reader quando preciso, movendo o que sobrou para o início
+    private boolean available(int n) {
+        if (bufLen - bufPos >= n) return true;
+        if (reader == null) return false;
+        int remaining = bufLen - bufPos;
+        System.arraycopy(buf, bufPos, buf, 0, remaining);
+        bufPos = 0;
+        bufLen = remaining;
+        try {
+            while (bufLen < n) {
+                int read = reader.read(buf, bufLen, buf.length - bufLen);
+                if (read < 0) return false;
+                bufLen += read;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Erro ao ler o código-fonte: " + e.getMessage(), e);
+        }
+        return true;
     }
 
     private RuntimeException error(String msg) {
@@ -0,0 +1,267 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Desenrolamento de laços contados, executado depois do AstOptimizer.
+//
+// A análise de variáveis de indução procura o formato canônico
+//
+//     while (i < n) { ...; i = i + c; }
+//
+// com i int, passo c constante (i - c para laços com > e >=), i sem
+// outras atribuições no corpo e limite n invariante (literal ou variável
+// int não atribuída no corpo). Um laço assim vira
+//
+//     if (n - k < n) { while (i < n - k) { corpo; corpo; ...; corpo; } }
+//     while (i < n) { corpo; }
+//
+// com k = (fator - 1) * c: o primeiro laço executa `fator` iterações por
+// teste e o segundo faz as que sobram. O if só existe para n variável e
+// descarta o laço desenrolado quando n - k daria a volta no long; com n
+// literal o limite é calculado aqui. Os testes pulados não têm efeito
+// (comparações entre variáveis e constantes), então a execução é a mesma.
+public class LoopUnroller {
+
+    // Corpos maiores que isso (em nós da árvore) não são copiados
+    private static final int MAX_BODY_SIZE = 64;
+
+    // Maior inteiro que um double representa sem perda (2^53)
+    private static final double MAX_EXACT = 9007199254740992.0;
+
+    private final int factor;
+    private int unrolledLoops = 0;
+
+    // Variável de indução de um laço: i OP limite, com i += passo no fim do corpo
+    private static final class Counter {
+        final Expr.Variable variable;
+        final TokenType op;  // já com a variável à esquerda
+        final Expr bound;
+        final long step;
+
+        Counter(Expr.Variable variable, TokenType op, Expr bound, long step) {
+            this.variable = variable;
+            this.op = op;
+            this.bound = bound;
+            this.step = step;
+        }
+    }
+
+    public LoopUnroller(int factor) {
+        this.factor = factor;
+    }
+
+    public List<Stmt> optimize(List<Stmt> program) {
+        if (factor <= 1) return program;
+        return unrollList(program);
+    }
+
+    public int getUnrolledLoops() {
+        return unrolledLoops;
+    }
+
+    private List<Stmt> unrollList(List<Stmt> statements) {
+        List<Stmt> result = new ArrayList<>();
+        for (Stmt stmt : statements) result.add(unrollStmt(stmt));
+        return result;
+    }
+
+    private Stmt unrollStmt(Stmt stmt) {
+        if (stmt instanceof Stmt.Block) {
+            return new Stmt.Block(unrollList(((Stmt.Block) stmt).statements));
+        } else if (stmt instanceof Stmt.If) {
+            Stmt.If s = (Stmt.If) stmt;
+            Stmt elseBranch = s.elseBranch == null ? null : unrollStmt(s.elseBranch);
+            return new Stmt.If(s.condition, unrollStmt(s.thenBranch), elseBranch);
+        } else if (stmt instanceof Stmt.While) {
+            // Laços internos primeiro; o externo só desenrola se ainda couber
+            Stmt.While s = (Stmt.While) stmt;
+            return unrollWhile(new Stmt.While(s.condition, unrollStmt(s.body)));
+        }
+        return stmt;
+    }
+
+    private Stmt unrollWhile(Stmt.While loop) {
+        Counter counter = analyze(loop);
+        if (counter == null || size(loop.body) > MAX_BODY_SIZE) return loop;
+
+        long span = (factor - 1) * counter.step;
+        boolean up = counter.step > 0;
+        TokenType shift = up ? TokenType.MINUS : TokenType.PLUS;
+        Expr limit;
+        Expr guard = null;
+        if (counter.bound instanceof Expr.Literal) {
+            long bound = (long) ((Expr.Literal) counter.bound).value;
+            long value = bound - span;
+            if ((up && value > bound) || (!up && value < bound) || Math.abs((double) value) > MAX_EXACT) {
+                return loop;
+            }
+            limit = literal(value);
+        } else {
+            limit = binary(counter.bound, shift, literal(Math.abs(span)));
+            // n - k < n (ou n + k > n): falso só se a conta deu a volta
+            guard = binary(limit, up ? TokenType.LESS : TokenType.GREATER, counter.bound);
+        }
+
+        List<Stmt> copies = new ArrayList<>(Collections.nCopies(factor, loop.body));
+        Stmt unrolled = new Stmt.While(binary(counter.variable, counter.op, limit), new Stmt.Block(copies));
+        if (guard != null) unrolled = new Stmt.If(guard, unrolled, null);
+
+        unrolledLoops++;
+        List<Stmt> result = new ArrayList<>();
+        result.add(unrolled);
+        result.add(loop);
+        return new Stmt.Block(result);
+    }
+
+    // ---------------- Análise de variáveis de indução ----------------
+
+    private static Counter analyze(Stmt.While loop) {
+        Expr cond = strip(loop.condition);
+        if (!(cond instanceof Expr.Binary)) return null;
+        Expr.Binary compare = (Expr.Binary) cond;
+        TokenType op = compare.operator.type;
+        if (op != TokenType.LESS && op != TokenType.LESS_EQUAL
+                && op != TokenType.GREATER && op != TokenType.GREATER_EQUAL) {
+            return null;
+        }
+        Expr left = strip(compare.left);
+        Expr right = strip(compare.right);
+        if (!left.isInt() || !right.isInt()) return null;
+
+        // Candidatos: a variável de cada lado, com o outro como limite
+        Counter counter = null;
+        if (left instanceof Expr.Variable) {
+            counter = counter(loop.body, (Expr.Variable) left, op, right);
+        }
+        if (counter == null && right instanceof Expr.Variable) {
+            counter = counter(loop.body, (Expr.Variable) right, mirror(op), left);
+        }
+        return counter;
+    }
+
+    private static Counter counter(Stmt body, Expr.Variable variable, TokenType op, Expr bound) {
+        List<Stmt> statements = body instanceof Stmt.Block
+                ? ((Stmt.Block) body).statements
+                : Collections.singletonList(body);
+        if (statements.isEmpty()) return null;
+        Stmt last = statements.get(statements.size() - 1);
+        if (!(last instanceof Stmt.Assign) || ((Stmt.Assign) last).slot != variable.slot) return null;
+
+        Long step = step(((Stmt.Assign) last).value, variable.slot);
+        if (step == null || step == 0 || Math.abs(step) > Integer.MAX_VALUE) return null;
+        boolean up = op == TokenType.LESS || op == TokenType.LESS_EQUAL;
+        if (up != (step > 0)) return null;
+
+        for (int i = 0; i < statements.size() - 1; i++) {
+            if (assigns(statements.get(i), variable.slot)) return null;
+        }
+        if (bound instanceof Expr.Variable) {
+            int slot = ((Expr.Variable) bound).slot;
+            if (slot == variable.slot || assigns(body, slot)) return null;
+        } else if (!(bound instanceof Expr.Literal)) {
+            return null;
+        }
+        return new Counter(variable, op, bound, step);
+    }
+
+    // Passo de i = i + c, i = c + i ou i = i - c; null em outro formato
+    private static Long step(Expr value, int slot) {
+        value = strip(value);
+        if (!(value instanceof Expr.Binary)) return null;
+        Expr.Binary b = (Expr.Binary) value;
+        Expr left = strip(b.left);
+        Expr right = strip(b.right);
+        if (b.operator.type == TokenType.PLUS) {
+            if (isVariable(left, slot) && isIntLiteral(right)) return (long) ((Expr.Literal) right).value;
+            if (isVariable(right, slot) && isIntLiteral(left)) return (long) ((Expr.Literal) left).value;
+        } else if (b.operator.type == TokenType.MINUS) {
+            if (isVariable(left, slot) && isIntLiteral(right)) return -(long) ((Expr.Literal) right).value;
+        }
+        return null;
+    }
+
+    private static boolean isVariable(Expr expr, int slot) {
+        return expr instanceof Expr.Variable && ((Expr.Variable) expr).slot == slot;
+    }
+
+    private static boolean isIntLiteral(Expr expr) {
+        return expr instanceof Expr.Literal && expr.isInt();
+    }
+
+    private static boolean assigns(Stmt stmt, int slot) {
+        if (stmt instanceof Stmt.Assign) {
+            return ((Stmt.Assign) stmt).slot == slot;
+        } else if (stmt instanceof Stmt.Input) {
+            return ((Stmt.Input) stmt).slot == slot;
+        } else if (stmt instanceof Stmt.Block) {
+            for (Stmt s : ((Stmt.Block) stmt).statements) {
+                if (assigns(s, slot)) return true;
+            }
+        } else if (stmt instanceof Stmt.If) {
+            Stmt.If s = (Stmt.If) stmt;
+            return assigns(s.thenBranch, slot) || (s.elseBranch != null && assigns(s.elseBranch, slot));
+        } else if (stmt instanceof Stmt.While) {
+            return assigns(((Stmt.While) stmt).body, slot);
+        }
+        return false;
+    }
+
+    private static TokenType mirror(TokenType op) {
+        switch (op) {
+            case LESS:          return TokenType.GREATER;
+            case LESS_EQUAL:    return TokenType.GREATER_EQUAL;
+            case GREATER:       return TokenType.LESS;
+            default:            return TokenType.LESS_EQUAL;
+        }
+    }
+
+    private static Expr strip(Expr expr) {
+        while (expr instanceof Expr.Grouping) expr = ((Expr.Grouping) expr).expression;
+        return expr;
+    }
+
+    // Nós da árvore, para limitar o crescimento do código
+    private static int size(Stmt stmt) {
+        if (stmt instanceof Stmt.Assign) {
+            return 1 + size(((Stmt.Assign) stmt).value);
+        } else if (stmt instanceof Stmt.Print) {
+            return 1 + size(((Stmt.Print) stmt).expression);
+        } else if (stmt instanceof Stmt.ExpressionStmt) {
+            return 1 + size(((Stmt.ExpressionStmt) stmt).expression);
+        } else if (stmt instanceof Stmt.Block) {
+            int total = 0;
+            for (Stmt s : ((Stmt.Block) stmt).statements) total += size(s);
+            return total;
+        } else if (stmt instanceof Stmt.If) {
+            Stmt.If s = (Stmt.If) stmt;
+            return 1 + size(s.condition) + size(s.thenBranch) + (s.elseBranch == null ? 0 : size(s.elseBranch));
+        } else if (stmt instanceof Stmt.While) {
+            Stmt.While s = (Stmt.While) stmt;
+            return 1 + size(s.condition) + size(s.body);
+        }
+        return 1;
+    }
+
+    private static int size(Expr expr) {
+        if (expr instanceof Expr.Binary) {
+            return 1 + size(((Expr.Binary) expr).left) + size(((Expr.Binary) expr).right);
+        } else if (expr instanceof Expr.Unary) {
+            return 1 + size(((Expr.Unary) expr).right);
+        } else if (expr instanceof Expr.Grouping) {
+            return size(((Expr.Grouping) expr).expression);
+        }
+        return 1;
+    }
+
+    private static Expr.Literal literal(long value) {
+        Expr.Literal literal = new Expr.Literal(value, true);
+        literal.type = "int";
+        return literal;
+    }
+
+    private static Expr.Binary binary(Expr left, TokenType op, Expr right) {
+        Expr.Binary binary = new Expr.Binary(left, Token.of(op), right);
+        binary.type = "int";
+        return binary;
+    }
+}
@@ -1,48 +1,432 @@
+import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
 
 public class Main {
 
+    // As otimizações na árvore, o SSA (nas expressões) e os motores reg e
+    // ast são recursivos; programas mais fundos que isso passam sem as
+    // otimizações e só rodam nos motores sobre o código de pilha
+    static final int MAX_OPTIMIZED_DEPTH = 1000;
+
+    // Uso:
+    //   java Main [programa.txt]                 compila e executa
+    //   java Main --compile saida.bc [programa]  só compila e grava o bytecode
+    //   java Main --run-bc programa.bc           executa um bytecode já compilado
+    //   --engine interp|tiered|jvm|reg|ast       escolhe o motor de execução
+    //   --no-peephole                            desliga as superinstruções
+    //   --no-ast-opt                             desliga as otimizações na árvore
+    //   --no-ssa                                 desliga a otimização global em SSA
+    //   --unroll N                               desenrola laços contados N vezes (1 desliga)
+    //   --cache diretório                        reaproveita compilações anteriores
+    //   --line-flush                             descarrega a saída a cada linha
+    //   --input arquivo                          lê o INPUT de um arquivo (mapeado)
+    //   --no-prompt                              não mostra "nome = " antes do INPUT
+    //   --stats                                  mostra quantas instruções foram executadas
+    //   --tier-threshold N                       passagens por um laço até compilá-lo (tiered)
+    //   --profile                                conta opcodes, pcs e saltos (interp e tiered);
+    //                                            publica no MBean Compilador:type=OpcodeProfiler,
+    //                                            em eventos JFR e num resumo no fim
+    //   --metrics arquivo.json|-                 grava tempo, bytes alocados e tamanhos de cada fase
+    //                                            em JSON (as fases também viram eventos JFR
+    //                                            compilador.Phase quando há gravação ativa)
+    //   --serve porta|caminho                    fica no ar compilando e executando para clientes
+    //                                            locais (TCP em 127.0.0.1 ou socket Unix; ver
+    //                                            CompileServer)
+    //   --timeout ms                             prazo de cada execução no servidor
+    //   --max-instructions N                     limite de instruções de cada execução no servidor
+    //   --watch                                  recompila e executa de novo a cada gravação do
+    //                                            programa, refazendo só o trecho alterado (ver
+    //                                            IncrementalCompiler)
     public static void main(String[] args) {
+        CompileMetrics metrics = null;
         try {
-            String source;
-           
-            source = new 
-                        String(Files.readAllBytes(Paths.get("C:\\Users\\elias\\Downloads\\a3 de teoria\\a3 de teoria\\programa.txt")),
-                         StandardCharsets.UTF_8);
+            String sourcePath = "programa.txt";
+            String compileTo = null;
+            String bytecodePath = null;
+            String engine = "interp";
+            boolean peephole = true;
+            boolean astOpt = true;
+            boolean ssa = true;
+            int unroll = 4;
+            String cacheDir = null;
+            boolean lineFlush = false;
+            String inputPath = null;
+            boolean prompt = true;
+            boolean stats = false;
+            int tierThreshold = 1000;
+            boolean profile = false;
+            String metricsPath = null;
+            String serveAddress = null;
+            long timeoutMillis = CompileServer.DEFAULT_TIMEOUT_MILLIS;
+            long maxInstructions = CompileServer.DEFAULT_MAX_INSTRUCTIONS;
+            boolean watch = false;
+
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--compile": compileTo = args[++i]; break;
+                    case "--run-bc":  bytecodePath = args[++i]; break;
+                    case "--engine":  engine = args[++i]; break;
+                    case "--no-peephole": peephole = false; break;
+                    case "--no-ast-opt":  astOpt = false; break;
+                    case "--no-ssa":      ssa = false; break;
+                    case "--unroll":      unroll = Integer.parseInt(args[++i]); break;
+                    case "--cache":   cacheDir = args[++i]; break;
+                    case "--line-flush": lineFlush = true; break;
+                    case "--input":   inputPath = args[++i]; break;
+                    case "--no-prompt": prompt = false; break;
+                    case "--stats":   stats = true; break;
+                    case "--tier-threshold": tierThreshold = Integer.parseInt(args[++i]); break;
+                    case "--profile": profile = true; break;
+                    case "--metrics": metricsPath = args[++i]; break;
+                    case "--serve":   serveAddress = args[++i]; break;
+                    case "--timeout": timeoutMillis = Long.parseLong(args[++i]); break;
+                    case "--max-instructions": maxInstructions = Long.parseLong(args[++i]); break;
+                    case "--watch":   watch = true; break;
+                    default:          sourcePath = args[i]; break;
+                }
+            }
+
+            CompileOptions options = new CompileOptions(astOpt, unroll, ssa, peephole);
+
+            if (serveAddress != null) {
+                new CompileServer(serveAddress, options, timeoutMillis, maxInstructions).serve();
+                return;
+            }
+
+            if (profile && !engine.equals("interp") && !engine.equals("tiered")) {
+                throw new RuntimeException("O perfil de opcodes só existe nos motores interp e tiered.");
+            }
+
+            metrics = new CompileMetrics(metricsPath);
+            metrics.describe(bytecodePath != null ? bytecodePath : sourcePath, engine);
+
+            if (watch) {
+                watch(Paths.get(sourcePath), engine, peephole, inputPath, lineFlush, prompt, tierThreshold,
+                        stats, profile, metrics);
+                return;
+            }
+
+            NumberReader in = inputPath != null
+                    ? NumberReader.map(Paths.get(inputPath))
+                    : new NumberReader(System.in);
+            VmIo io = new VmIo(new OutputSink(System.out, lineFlush), in, prompt);
+
+            if (bytecodePath != null) {
+                metrics.begin("load");
+                Bytecode bytecode = Bytecode.load(Paths.get(bytecodePath));
+                CompiledProgram program = CompiledProgram.fromBytecode(bytecode);
+                metrics.end("instructions", () -> program.code().size());
+                long executed = execute(engine, program, io, tierThreshold, stats, profile, metrics);
+                if (stats) printStats(executed);
+                return;
+            }
+
+            Path path = Paths.get(sourcePath);
+
+            // A máquina de registradores e a execução direta da árvore partem
+            // da árvore; não usam o cache nem o peephole do código de pilha
+            if ("reg".equals(engine) || "ast".equals(engine)) {
+                runFromTree(engine, path, options, stats, io, metrics);
+                return;
+            }
+
+            CompiledProgram program;
+            CompileOptions.Result result = null;
+
+            // 0) Cache: num acerto o front-end inteiro é pulado
+            CompileCache cache = null;
+            String cacheKey = null;
+            Bytecode cached = null;
+            byte[] source = null;
+            if (cacheDir != null) {
+                cache = new CompileCache(Paths.get(cacheDir), CompileCache.DEFAULT_MAX_BYTES);
+                source = Files.readAllBytes(path);
+                cacheKey = CompileCache.key(source, options.key());
+                metrics.begin("cache");
+                cached = cache.get(cacheKey);
+                if (cached == null) metrics.end("instructions", () -> -1);
+            }
 
-            // 1) Léxico
-            Lexer lexer = new Lexer(source);
-            List<Token> tokens = lexer.tokenize();
+            if (cached != null) {
+                CompiledProgram loaded = CompiledProgram.fromBytecode(cached);
+                metrics.end("instructions", () -> loaded.code().size());
+                program = loaded;
+            } else {
+                // 1) Léxico e 2) Sintático: o parser puxa os tokens do lexer,
+                // que lê o arquivo aos poucos (ou o texto já lido para o cache)
+                List<Stmt> parsed = parse(path, source, metrics);
 
-            // 2) Sintático
-            Parser parser = new Parser(tokens);
-            List<Stmt> program = parser.parse();
+                // 3) Semântico e otimizações na árvore, 4) geração de código,
+                // SSA e superinstruções (ver CompileOptions)
+                CompileOptions.Tree tree = options.frontEnd(parsed, metrics);
+                if (!tree.shallow) {
+                    System.out.println("Aviso: profundidade " + tree.maxDepth
+                            + " na árvore; otimizações na árvore e SSA desligadas");
+                }
+                result = options.generate(tree, metrics);
+                program = result.program;
 
-            // 3) Semântico
-            SemanticAnalyzer semantic = new SemanticAnalyzer();
-            semantic.analyze(program);
+                if (cache != null) {
+                    cache.put(cacheKey, Bytecode.encode(program.code(), program.maxStackDepth,
+                            program.maxIntStackDepth, program.frameSize));
+                }
+            }
+            List<Instruction> code = program.code();
 
-            // 4) Geração de código intermediário
-            CodeGenerator generator = new CodeGenerator();
-            List<Instruction> code = generator.generate(program);
+            if (compileTo != null) {
+                Bytecode.encode(code, program.maxStackDepth, program.maxIntStackDepth, program.frameSize)
+                        .write(Paths.get(compileTo));
+                System.out.println("Bytecode gravado em " + compileTo);
+                return;
+            }
 
             System.out.println("=== Código intermediário gerado ===");
             for (int i = 0; i < code.size(); i++) {
                 System.out.println(i + ": " + code.get(i));
             }
             System.out.println("===================================");
+            SsaOptimizer ssaOptimizer = result != null ? result.ssaOptimizer : null;
+            PeepholeOptimizer peepholeOptimizer = result != null ? result.peepholeOptimizer : null;
+            if (ssaOptimizer != null) {
+                System.out.println("SSA: " + ssaOptimizer.getFoldedValues() + " valor(es) dobrado(s), "
+                        + ssaOptimizer.getNumberedValues() + " reaproveitado(s), "
+                        + ssaOptimizer.getHoistedValues() + " movido(s) para fora de laços, "
+                        + ssaOptimizer.getReducedValues() + " multiplicação(ões) reduzida(s)");
+            }
+            if (peepholeOptimizer != null) {
+                System.out.println("Peephole: " + peepholeOptimizer.getSavedDispatches()
+                        + " despachos a menos por passada no código");
+            }
+            if (cache != null) {
+                System.out.println("Cache: " + cache.getHits() + " acerto(s), "
+                        + cache.getMisses() + " falta(s)");
+            }
 
             // 5) Execução
-            Interpreter interpreter = new Interpreter(code);
             System.out.println("\n=== Execução ===");
-            interpreter.run();
+            long executed = execute(engine, program, io, tierThreshold, stats, profile, metrics);
+            if (stats) printStats(executed);
 
         } catch (Exception e) {
             System.err.println("ERRO: " + e.getMessage());
             e.printStackTrace();
+        } finally {
+            if (metrics != null) metrics.finish();
+        }
+    }
+
+    // O tamanho, para CompileMetrics.end (só calculado com as métricas ligadas)
+    private static LongSupplier nodes(List<Stmt> program) {
+        return () -> CompileMetrics.countNodes(program);
+    }
+
+    private static List<Stmt> parse(Path path, byte[] source, CompileMetrics metrics) throws IOException {
+        if (metrics.isActive()) {
+            // Com métricas o léxico roda inteiro antes do parser, para que
+            // cada um tenha o seu tempo e as suas alocações
+            if (source == null) source = Files.readAllBytes(path);
+            metrics.begin("lex");
+            TokenBuffer tokens = new TokenBuffer(new String(source, StandardCharsets.UTF_8));
+            metrics.end("tokens", tokens::size);
+            metrics.begin("parse");
+            List<Stmt> program = new Parser(tokens.cursor()).parse();
+            metrics.end("nodes", nodes(program));
+            return program;
+        }
+        if (source != null) {
+            return new Parser(new Lexer(new String(source, StandardCharsets.UTF_8))).parse();
+        }
+        try (FileChannel channel = FileChannel.open(path)) {
+            Parser parser = new Parser(new Lexer(channel));
+            return parser.parse();
+        }
+    }
+
+    private static void runFromTree(String engine, Path path, CompileOptions options, boolean stats,
+                                    VmIo io, CompileMetrics metrics)
+            throws IOException {
+        CompileOptions.Tree tree = options.frontEnd(parse(path, null, metrics), metrics);
+        // Os dois motores percorrem a árvore recursivamente
+        if (!tree.shallow) {
+            throw new RuntimeException("Profundidade " + tree.maxDepth
+                    + " na árvore grande demais para o motor " + engine + "; use interp, tiered ou jvm");
+        }
+        List<Stmt> program = tree.program;
+
+        if ("ast".equals(engine)) {
+            AstEngine astEngine = new AstEngine(program, tree.slotCount, io);
+            System.out.println("\n=== Execução ===");
+            metrics.begin("run");
+            astEngine.run();
+            metrics.end("executed", () -> -1);
+            if (stats) printStats(-1);
+            return;
+        }
+
+        metrics.begin("codegen");
+        RegisterCodeGenerator generator = new RegisterCodeGenerator(tree.slotCount);
+        List<RegInstruction> code = generator.generate(program);
+        metrics.end("instructions", code::size);
+
+        System.out.println("=== Código de registradores gerado ===");
+        for (int i = 0; i < code.size(); i++) {
+            System.out.println(i + ": " + code.get(i));
+        }
+        System.out.println("======================================");
+
+        System.out.println("\n=== Execução ===");
+        RegisterInterpreter interpreter = new RegisterInterpreter(code,
+                generator.getRealRegisters(), generator.getIntRegisters(), io);
+        try {
+            metrics.begin("run");
+            interpreter.run();
+            metrics.end("executed", interpreter::getExecutedCount);
+        } finally {
+            if (stats) printStats(interpreter.getExecutedCount());
+        }
+    }
+
+    // Modo --watch: compila, executa e espera a próxima gravação do arquivo.
+    // Editores costumam gravar em mais de um passo (ou gravar outro arquivo
+    // e renomear), então os eventos que chegam juntos viram uma recompilação
+    // só, e nada é feito se o texto não mudou. Um erro de compilação ou de
+    // execução é mostrado e o modo continua; termina com Ctrl-C.
+    private static void watch(Path path, String engine, boolean peephole, String inputPath, boolean lineFlush,
+                              boolean prompt, int tierThreshold, boolean stats, boolean profile,
+                              CompileMetrics metrics)
+            throws IOException, InterruptedException {
+        if (!engine.equals("interp") && !engine.equals("tiered") && !engine.equals("jvm")) {
+            throw new RuntimeException("O modo --watch usa o código de pilha: motores interp, tiered ou jvm.");
+        }
+        Path file = path.toAbsolutePath();
+        IncrementalCompiler compiler = new IncrementalCompiler(peephole);
+        NumberReader stdin = inputPath == null ? new NumberReader(System.in) : null;
+        String last = null;
+        try (WatchService watcher = file.getFileSystem().newWatchService()) {
+            file.getParent().register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+            while (true) {
+                String source = Files.isRegularFile(file)
+                        ? new String(Files.readAllBytes(file), StandardCharsets.UTF_8)
+                        : null;
+                if (source != null && !source.equals(last)) {
+                    last = source;
+                    long start = System.nanoTime();
+                    CompiledProgram program = null;
+                    try {
+                        program = compiler.compile(source);
+                    } catch (RuntimeException e) {
+                        System.out.println("ERRO: " + e.getMessage());
+                    }
+                    if (program != null) {
+                        System.out.printf("=== Compilado em %.2f ms: %d token(s) relido(s), %d comando(s) "
+                                        + "relido(s), %d gerado(s), %d reaproveitado(s), %d instrução(ões) ===%n",
+                                (System.nanoTime() - start) / 1e6, compiler.getRelexedTokens(),
+                                compiler.getReparsedStatements(), compiler.getRegeneratedStatements(),
+                                compiler.getReusedStatements(), program.code().size());
+                        System.out.println("\n=== Execução ===");
+                        NumberReader in = stdin != null ? stdin : NumberReader.map(Paths.get(inputPath));
+                        VmIo io = new VmIo(new OutputSink(System.out, lineFlush), in, prompt);
+                        try {
+                            long executed = execute(engine, program, io, tierThreshold, stats, profile, metrics);
+                            if (stats) printStats(executed);
+                        } catch (RuntimeException e) {
+                            System.out.println("ERRO: " + e.getMessage());
+                        }
+                    }
+                    System.out.println("\n=== Esperando alterações em " + path + " ===");
+                }
+                waitForChange(watcher, file.getFileName());
+            }
+        }
+    }
+
+    private static void waitForChange(WatchService watcher, Path name) throws InterruptedException {
+        boolean changed = false;
+        WatchKey key = watcher.take();
+        while (key != null) {
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW || name.equals(event.context())) {
+                    changed = true;
+                }
+            }
+            if (!key.reset()) {
+                throw new RuntimeException("O diretório de " + name + " não pode mais ser observado.");
+            }
+            // Junta os eventos que chegam logo depois
+            key = changed ? watcher.poll(50, TimeUnit.MILLISECONDS) : watcher.take();
+        }
+    }
+
+    private static void printStats(long executed) {
+        if (executed >= 0) {
+            System.out.println("Instruções executadas: " + executed);
+        } else {
+            System.out.println("Instruções executadas: não disponível neste motor");
+        }
+    }
+
+    // Executa e devolve o número de instruções despachadas (-1 se o motor não conta)
+    private static long execute(String engine, CompiledProgram program, VmIo io, int tierThreshold,
+                                boolean stats, boolean profile, CompileMetrics metrics) {
+        switch (engine) {
+            case "interp":
+            case "tiered": {
+                // Com perfil o tiered fica só interpretado (ver Interpreter)
+                int threshold = engine.equals("tiered") ? tierThreshold : 0;
+                OpcodeProfiler profiler = null;
+                Interpreter interpreter;
+                if (profile) {
+                    profiler = new OpcodeProfiler(program.code());
+                    profiler.register();
+                    interpreter = new Interpreter(program.code(), program.maxStackDepth, program.maxIntStackDepth,
+                            program.frameSize, io, threshold, profiler);
+                } else {
+                    interpreter = new Interpreter(program, io, threshold);
+                }
+                try {
+                    metrics.begin("run");
+                    interpreter.run();
+                    metrics.end("executed", interpreter::getExecutedCount);
+                } finally {
+                    if (profiler != null) {
+                        profiler.commitEvents();
+                        profiler.print(10);
+                    }
+                }
+                if (stats && engine.equals("tiered")) {
+                    System.out.println("Laços compilados: " + interpreter.getCompiledLoopCount());
+                }
+                return interpreter.getExecutedCount();
+            }
+            case "jvm": {
+                // A fase inclui a geração e o carregamento da classe
+                metrics.begin("run");
+                JvmEngine jvm = new JvmEngine(program, io);
+                if (!jvm.isCompiled()) {
+                    // No stderr, para a saída do programa ser a mesma do interp
+                    System.err.println("Aviso: programa grande demais para a JVM; executando no interpretador");
+                }
+                jvm.run();
+                metrics.end("executed", () -> -1);
+                return -1;
+            }
+            case "reg":
+            case "ast":
+                throw new RuntimeException("O motor " + engine + " parte do código-fonte, não de um .bc.");
+            default:
+                throw new RuntimeException("Motor de execução desconhecido: " + engine);
         }
     }
 }
@@ -0,0 +1,63 @@
+// Tabela de nomes: devolve sempre a mesma String para a mesma sequência de
+// caracteres, de modo que cada identificador (ou número) distinto vira
+// String uma única vez, por mais que apareça no código-fonte.
+// Endereçamento aberto com sondagem linear; a busca compara direto com os
+// caracteres do buffer, sem criar String antes de saber se o nome é novo.
+public class NameTable {
+
+    private String[] names = new String[64];
+    private int[] hashes = new int[64];
+    private int size = 0;
+
+    public String intern(char[] chars, int start, int length) {
+        int hash = hash(chars, start, length);
+        int mask = names.length - 1;
+        int i = hash & mask;
+        while (names[i] != null) {
+            if (hashes[i] == hash && matches(names[i], chars, start, length)) {
+                return names[i];
+            }
+            i = (i + 1) & mask;
+        }
+        String name = new String(chars, start, length);
+        names[i] = name;
+        hashes[i] = hash;
+        if (++size * 2 > names.length) grow();
+        return name;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private static int hash(char[] chars, int start, int length) {
+        int h = 0;
+        for (int i = 0; i < length; i++) {
+            h = 31 * h + chars[start + i];
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean matches(String name, char[] chars, int start, int length) {
+        if (name.length() != length) return false;
+        for (int i = 0; i < length; i++) {
+            if (name.charAt(i) != chars[start + i]) return false;
+        }
+        return true;
+    }
+
+    private void grow() {
+        String[] oldNames = names;
+        int[] oldHashes = hashes;
+        names = new String[oldNames.length * 2];
+        hashes = new int[oldNames.length * 2];
+        int mask = names.length - 1;
+        for (int j = 0; j < oldNames.length; j++) {
+            if (oldNames[j] == null) continue;
+            int i = oldHashes[j] & mask;
+            while (names[i] != null) i = (i + 1) & mask;
+            names[i] = oldNames[j];
+            hashes[i] = oldHashes[j];
+        }
+    }
+}
@@ -0,0 +1,799 @@
+// Nós executáveis da camada de execução sobre a árvore (AstEngine).
+// Cada nó sabe se executar; variáveis já vêm com o slot resolvido.
+//
+// Alguns nós começam genéricos e se trocam no pai por uma versão
+// especializada na primeira vez que executam (replace): operações binárias
+// viram a classe da operação no tipo certo (int ou real, com variante para
+// constante à direita) e if/while com condição constante viram só o ramo
+// que executa. Assim código que nunca roda não paga a especialização, e o
+// que roda fica com nós pequenos e monomórficos, fáceis para o JIT.
+public abstract class Node {
+
+    Node parent;
+
+    // Registra este nó como pai do filho e devolve o filho
+    protected <T extends Node> T adopt(T child) {
+        if (child != null) child.parent = this;
+        return child;
+    }
+
+    // Põe `replacement` no lugar deste nó dentro do pai
+    protected <T extends Node> T replace(T replacement) {
+        parent.replaceChild(this, replacement);
+        replacement.parent = parent;
+        return replacement;
+    }
+
+    protected void replaceChild(Node oldChild, Node newChild) {
+        throw new IllegalStateException(getClass().getSimpleName() + " não tem filhos substituíveis.");
+    }
+
+    // Variáveis e E/S de uma execução
+    public static final class Frame {
+        final double[] real;
+        final long[] ints;
+        final VmIo io;
+
+        public Frame(int frameSize, VmIo io) {
+            this.real = new double[frameSize];
+            this.ints = new long[frameSize];
+            this.io = io;
+        }
+    }
+
+    // ---------------- Expressões ----------------
+
+    // executeDouble dá o valor como real e executeLong como int (truncando),
+    // que são exatamente as conversões I2D e D2I do código de pilha
+    public abstract static class ExprNode extends Node {
+        public abstract double executeDouble(Frame f);
+
+        public abstract long executeLong(Frame f);
+
+        // Verdadeiro quando o valor é diferente de zero (NaN é verdadeiro)
+        public boolean executeCondition(Frame f) {
+            return executeDouble(f) != 0.0;
+        }
+    }
+
+    public abstract static class IntNode extends ExprNode {
+        @Override
+        public double executeDouble(Frame f) {
+            return executeLong(f);
+        }
+
+        @Override
+        public boolean executeCondition(Frame f) {
+            return executeLong(f) != 0;
+        }
+    }
+
+    public abstract static class RealNode extends ExprNode {
+        @Override
+        public long executeLong(Frame f) {
+            return (long) executeDouble(f);
+        }
+    }
+
+    // Literal: como real vale o próprio valor, como int o valor truncado
+    public static final class Const extends ExprNode {
+        final double value;
+        final long longValue;
+
+        public Const(double value) {
+            this.value = value;
+            this.longValue = (long) value;
+        }
+
+        @Override
+        public double executeDouble(Frame f) {
+            return value;
+        }
+
+        @Override
+        public long executeLong(Frame f) {
+            return longValue;
+        }
+    }
+
+    public static final class IntVar extends IntNode {
+        final int slot;
+
+        public IntVar(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        public long executeLong(Frame f) {
+            return f.ints[slot];
+        }
+    }
+
+    public static final class RealVar extends RealNode {
+        final int slot;
+
+        public RealVar(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        public double executeDouble(Frame f) {
+            return f.real[slot];
+        }
+    }
+
+    // -x é calculado como 0 - x, igual ao código de pilha (0.0 - 0.0 dá 0.0)
+    public static final class IntNeg extends IntNode {
+        ExprNode operand;
+
+        public IntNeg(ExprNode operand) {
+            this.operand = adopt(operand);
+        }
+
+        @Override
+        public long executeLong(Frame f) {
+            return 0 - operand.executeLong(f);
+        }
+
+        @Override
+        protected void replaceChild(Node oldChild, Node newChild) {
+            if (operand == oldChild) operand = (ExprNode) newChild;
+        }
+    }
+
+    public static final class RealNeg extends RealNode {
+        ExprNode operand;
+
+        public RealNeg(ExprNode operand) {
+            this.operand = adopt(operand);
+        }
+
+        @Override
+        public double executeDouble(Frame f) {
+            return 0.0 - operand.executeDouble(f);
+        }
+
+        @Override
+        protected void replaceChild(Node oldChild, Node newChild) {
+            if (operand == oldChild) operand = (ExprNode) newChild;
+        }
+    }
+
+    // Base das operações binárias já especializadas
+    abstract static class BinaryInt extends IntNode {
+        ExprNode left;
+        ExprNode right;
+
+        BinaryInt(ExprNode left, ExprNode right) {
+            this.left = adopt(left);
+            this.right = adopt(right);
+        }
+
+        @Override
+        protected void replaceChild(Node oldChild, Node newChild) {
+            if (left == oldChild) left = (ExprNode) newChild;
+            if (right == oldChild) right = (ExprNode) newChild;
+        }
+    }
+
+    abstract static class BinaryReal extends RealNode {
+        ExprNode left;
+        ExprNode right;
+
+        BinaryReal(ExprNode left, ExprNode right) {
+            this.left = adopt(left);
+            this.right = adopt(right);
+        }
+
+        @Override
+        protected void replaceChild(Node oldChild, Node newChild) {
+            if (left == oldChild) left = (ExprNode) newChild;
+            if (right == oldChild) right = (ExprNode) newChild;
+        }
+    }
+
+    // Operação binária ainda não especializada: na primeira execução se
+    // troca pela classe da operação no tipo da expressão
+    public static final class UninitializedBinary extends ExprNode {
+        final TokenType operator;
+        final boolean isInt; // os dois operandos são int
+        ExprNode left;
+        ExprNode right;
+
+        public UninitializedBinary(TokenType operator, boolean isInt, ExprNode left, ExprNode right) {
+            this.operator = operator;
+            this.isInt = isInt;
+            this.left = adopt(left);
+            this.right = adopt(right);
+        }
+
+        @Override
+        public double executeDouble(Frame f) {
+            return specialize().executeDouble(f);
+        }
+
+        @Override
+        public long executeLong(Frame f) {
+            return specialize().executeLong(f);
+        }
+
+        @Override
+        public boolean executeCondition(Frame f) {
+            return specialize().executeCondition(f);
+        }
+
+        @Override
+        protected void replaceChild(Node oldChild, Node newChild) {
+            if (left == oldChild) left = (ExprNode) newChild;
+            if (right == oldChild) right = (ExprNode) newChild;
+        }
+
+        private ExprNode specialize() {
+            return replace(isInt ? specializeInt() : specializeReal());
+        }
+
+        private ExprNode specializeInt() {
+            if (right instanceof Const && (operator == TokenType.PLUS || operator == TokenType.MINUS)) {
+                long k = ((Const) right).longValue;
+                return new IntAddConst(left, operator == TokenType.PLUS ? k : 0 - k);
+            }
+            switch (operator) {
+                case PLUS:  return new IntAdd(left, right);
+                case MINUS: return new IntSub(left, right);
+                case STAR:  return new IntMul(left, right);
+                case SLASH: return new IntDiv(left, right);
+                case EQUAL_EQUAL: return new IntEq(left, right);
+                case BANG_EQUAL: return new IntNeq(left, right);
+                case GREATER: return new IntGt(left, right);
+                case GREATER_EQUAL: return new IntGte(left, right);
+                case LESS: return new IntLt(left, right);
+                case LESS_EQUAL: return new IntLte(left, right);
+                default:
+                    throw new RuntimeException("Operador não suportado: " + operator);
+            }
+        }
+
+        private ExprNode specializeReal() {
+            switch (operator) {
+                case PLUS:  return new RealAdd(left, right);
+                case MINUS: return new RealSub(left, right);
+                case STAR:  return new RealMul(left, right);
+                case SLASH: return new RealDiv(left, right);
+                case EQUAL_EQUAL: return new RealEq(left, right);
+                case BANG_EQUAL: return new RealNeq(left, right);
+                case GREATER: return new RealGt(left, right);
+                case GREATER_EQUAL: return new RealGte(left, right);
+                case LESS: return new RealLt(left, right);
+                case LESS_EQUAL: return new RealLte(left, right);
+                default:
+                    throw new RuntimeException("Operador não suportado: " + operator);
+            }
+        }
+    }
+
+    // x + k e x - k com constante int (k já com o sinal da operação;
+    // em long, a - k e a + (-k) dão sempre o mesmo resultado)
+    public static final class IntAddConst extends IntNode {
+        ExprNode left;
+        final long k;
+
+        IntAddConst(ExprNode left, long k) {
+            this.left = adopt(left);
+            this.k = k;
+        }
+
+        @Override
+        public long executeLong(Frame f) {
+            return left.executeLong(f) + k;
+        }
+
+        @Override
+        protected void replaceChild(Node oldChild, Node newChild) {
+            if (left == oldChild) left = (ExprNode) newChild;
+        }
+    }
+
+    public static final class IntAdd extends BinaryInt {
+        IntAdd(ExprNode left, ExprNode right) {
+            super(left, right);
+        }
+
+        @Override
+        public long executeLong(Frame f) {
+            return left.executeLong(f) + right.executeLong(f);
+        }
+    }
+
+    public static final class IntSub extends BinaryInt {
+        IntSub(ExprNode left, ExprNode right) {
+            super(left, right);
+        }
+
+        @Override
+        public long executeLong(Frame f) {
+            return left.executeLong(f) - right.executeLong(f);
+        }
+    }
+
+    public static final class IntMul extends BinaryInt {
+        IntMul(ExprNode left, ExprNode right) {
+            super(left, right);
+        }
+
+        @Override
+        public long executeLong(Frame f) {
+            return left.executeLong(f) * right.executeLong(f);
+        }
+    }
+
+    public static final class IntDiv extends BinaryInt {
+        IntDiv(ExprNode left, ExprNode right) {
+            super(left, right);
+        }
+
+        @Override
+        public long executeLong(Frame f) {
+            long a = left.executeLong(f);
+            return a / Interpreter.checkDivisor(right.executeLong(f));
+        }
+    }
+
+    public static final class IntEq extends BinaryInt {
+        IntEq(ExprNode left, ExprNode right) {
+            super(left, right);
+        }
+
+        @Override
+        public long executeLong(Frame f) {
+            return executeCondition(f) ? 1 : 0;
+        }
+
+        @Override
+        public boolean executeCondition(Frame f) {
+            return left.executeLong(f) == right.executeLong(f);
+        }
+    }
+
+    public static final class IntNeq extends BinaryInt {
+        IntNeq(ExprNode left, ExprNode right) {
+            super(left, right);
+        }
+
+        @Override
+        public long executeLong(Frame f) {
+            return executeCondition(f) ? 1 : 0;
+        }
+
+        @Override
+        public boolean executeCondition(Frame f) {
+            return left.executeLong(f) != right.executeLong(f);
+        }
+    }
+
+    public static final class IntGt extends BinaryInt {
+        IntGt(ExprNode left, ExprNode right) {
+            super(left, right);
+        }
+
+        @Override
+        public long executeLong(Frame f) {
+            return executeCondition(f) ? 1 : 0;
+        }
+
+        @Override
+        public boolean executeCondition(Frame f) {
+            return left.executeLong(f) > right.executeLong(f);
+        }
+    }
+
+    public static final class IntGte extends BinaryInt {
+        IntGte(ExprNode left, ExprNode right) {
+            super(left, right);
+        }
+
+        @Override
+        public long executeLong(Frame f) {
+            return executeCondition(f) ? 1 : 0;
+        }
+
+        @Override
+        public boolean executeCondition(Frame f) {
+            return left.executeLong(f) >= right.executeLong(f);
+        }
+    }
+
+    public static final class IntLt extends BinaryInt {
+        IntLt(ExprNode left, ExprNode right) {
+            super(left, right);
+        }
+
+        @Override
+        public long executeLong(Frame f) {
+            return executeCondition(f) ? 1 : 0;
+        }
+
+        @Override
+        public boolean executeCondition(Frame f) {
+            return left.executeLong(f) < right.executeLong(f);
+        }
+    }
+
+    public static final class IntLte extends BinaryInt {
+        IntLte(ExprNode left, ExprNode right) {
+            super(left, right);
+        }
+
+        @Override
+        public long executeLong(Frame f) {
+            return executeCondition(f) ? 1 : 0;
+        }
+
+        @Override
+        public boolean executeCondition(Frame f) {
+            return left.executeLong(f) <= right.executeLong(f);
+        }
+    }
+
+    public static final class RealAdd extends BinaryReal {
+        RealAdd(ExprNode left, ExprNode right) {
+            super(left, right);
+        }
+
+        @Override
+        public double executeDouble(Frame f) {
+            return left.executeDouble(f) + right.executeDouble(f);
+        }
+    }
+
+    public static final class RealSub extends BinaryReal {
+        RealSub(ExprNode left, ExprNode right) {
+            super(left, right);
+        }
+
+        @Override
+        public double executeDouble(Frame f) {
+            return left.executeDouble(f) - right.executeDouble(f);
+        }
+    }
+
+    public static final class RealMul extends BinaryReal {
+        RealMul(ExprNode left, ExprNode right) {
+            super(left, right);
+        }
+
+        @Override
+        public double executeDouble(Frame f) {
+            return left.executeDouble(f) * right.executeDouble(f);
+        }
+    }
+
+    public static final class RealDiv extends BinaryReal {
+        RealDiv(ExprNode left, ExprNode right) {
+            super(left, right);
+        }
+
+        @Override
+        public double executeDouble(Frame f) {
+            return left.executeDouble(f) / right.executeDouble(f);
+        }
+    }
+
+    public static final class RealEq extends BinaryReal {
+        RealEq(ExprNode left, ExprNode right) {
+            super(left, right);
+        }
+
+        @Override
+        public double executeDouble(Frame f) {
+            return executeCondition(f) ? 1.0 : 0.0;
+        }
+
+        @Override
+        public boolean executeCondition(Frame f) {
+            return left.executeDouble(f) == right.executeDouble(f);
+        }
+    }
+
+    public static final class RealNeq extends BinaryReal {
+        RealNeq(ExprNode left, ExprNode right) {
+            super(left, right);
+        }
+
+        @Override
+        public double executeDouble(Frame f) {
+            return executeCondition(f) ? 1.0 : 0.0;
+        }
+
+        @Override
+        public boolean executeCondition(Frame f) {
+            return left.executeDouble(f) != right.executeDouble(f);
+        }
+    }
+
+    public static final class RealGt extends BinaryReal {
+        RealGt(ExprNode left, ExprNode right) {
+            super(left, right);
+        }
+
+        @Override
+        public double executeDouble(Frame f) {
+            return executeCondition(f) ? 1.0 : 0.0;
+        }
+
+        @Override
+        public boolean executeCondition(Frame f) {
+            return left.executeDouble(f) > right.executeDouble(f);
+        }
+    }
+
+    public static final class RealGte extends BinaryReal {
+        RealGte(ExprNode left, ExprNode right) {
+            super(left, right);
+        }
+
+        @Override
+        public double executeDouble(Frame f) {
+            return executeCondition(f) ? 1.0 : 0.0;
+        }
+
+        @Override
+        public boolean executeCondition(Frame f) {
+            return left.executeDouble(f) >= right.executeDouble(f);
+        }
+    }
+
+    public static final class RealLt extends BinaryReal {
+        RealLt(ExprNode left, ExprNode right) {
+            super(left, right);
+        }
+
+        @Override
+        public double executeDouble(Frame f) {
+            return executeCondition(f) ? 1.0 : 0.0;
+        }
+
+        @Override
+        public boolean executeCondition(Frame f) {
+            return left.executeDouble(f) < right.executeDouble(f);
+        }
+    }
+
+    public static final class RealLte extends BinaryReal {
+        RealLte(ExprNode left, ExprNode right) {
+            super(left, right);
+        }
+
+        @Override
+        public double executeDouble(Frame f) {
+            return executeCondition(f) ? 1.0 : 0.0;
+        }
+
+        @Override
+        public boolean executeCondition(Frame f) {
+            return left.executeDouble(f) <= right.executeDouble(f);
+        }
+    }
+
+    // ---------------- Comandos ----------------
+
+    public abstract static class StmtNode extends Node {
+        public abstract void execute(Frame f);
+    }
+
+    public static final class Block extends StmtNode {
+        final StmtNode[] statements;
+
+        public Block(StmtNode[] statements) {
+            this.statements = statements;
+            for (StmtNode s : statements) adopt(s);
+        }
+
+        @Override
+        public void execute(Frame f) {
+            for (StmtNode s : statements) {
+                s.execute(f);
+            }
+        }
+
+        @Override
+        protected void replaceChild(Node oldChild, Node newChild) {
+            for (int i = 0; i < statements.length; i++) {
+                if (statements[i] == oldChild) statements[i] = (StmtNode) newChild;
+            }
+        }
+    }
+
+    public static final class Nop extends StmtNode {
+        @Override
+        public void execute(Frame f) {
+        }
+    }
+
+    public static final class IntAssign extends StmtNode {
+        final int slot;
+        ExprNode value;
+
+        public IntAssign(int slot, ExprNode value) {
+            this.slot = slot;
+            this.value = adopt(value);
+        }
+
+        @Override
+        public void execute(Frame f) {
+            f.ints[slot] = value.executeLong(f);
+        }
+
+        @Override
+        protected void replaceChild(Node oldChild, Node newChild) {
+            if (value == oldChild) value = (ExprNode) newChild;
+        }
+    }
+
+    public static final class RealAssign extends StmtNode {
+        final int slot;
+        ExprNode value;
+
+        public RealAssign(int slot, ExprNode value) {
+            this.slot = slot;
+            this.value = adopt(value);
+        }
+
+        @Override
+        public void execute(Frame f) {
+            f.real[slot] = value.executeDouble(f);
+        }
+
+        @Override
+        protected void replaceChild(Node oldChild, Node newChild) {
+            if (value == oldChild) value = (ExprNode) newChild;
+        }
+    }
+
+    public static final class Print extends StmtNode {
+        ExprNode value;
+
+        public Print(ExprNode value) {
+            this.value = adopt(value);
+        }
+
+        @Override
+        public void execute(Frame f) {
+            f.io.print(value.executeDouble(f));
+        }
+
+        @Override
+        protected void replaceChild(Node oldChild, Node newChild) {
+            if (value == oldChild) value = (ExprNode) newChild;
+        }
+    }
+
+    public static final class Input extends StmtNode {
+        final int slot;
+        final String name;
+        final boolean isInt;
+
+        public Input(int slot, String name, boolean isInt) {
+            this.slot = slot;
+            this.name = name;
+            this.isInt = isInt;
+        }
+
+        @Override
+        public void execute(Frame f) {
+            double value = f.io.input(name);
+            if (isInt) {
+                f.ints[slot] = (long) value;
+            } else {
+                f.real[slot] = value;
+            }
+        }
+    }
+
+    // Expressão avaliada só pelo efeito (divisão inteira por zero)
+    public static final class Discard extends StmtNode {
+        final boolean isInt;
+        ExprNode value;
+
+        public Discard(ExprNode value, boolean isInt) {
+            this.value = adopt(value);
+            this.isInt = isInt;
+        }
+
+        @Override
+        public void execute(Frame f) {
+            if (isInt) {
+                value.executeLong(f);
+            } else {
+                value.executeDouble(f);
+            }
+        }
+
+        @Override
+        protected void replaceChild(Node oldChild, Node newChild) {
+            if (value == oldChild) value = (ExprNode) newChild;
+        }
+    }
+
+    // if com condição constante se troca pelo ramo que executa
+    public static final class If extends StmtNode {
+        ExprNode condition;
+        StmtNode thenBranch;
+        StmtNode elseBranch; // pode ser null
+
+        public If(ExprNode condition, StmtNode thenBranch, StmtNode elseBranch) {
+            this.condition = adopt(condition);
+            this.thenBranch = adopt(thenBranch);
+            this.elseBranch = adopt(elseBranch);
+        }
+
+        @Override
+        public void execute(Frame f) {
+            if (condition instanceof Const) {
+                StmtNode taken = condition.executeCondition(f) ? thenBranch : elseBranch;
+                replace(taken != null ? taken : new Nop()).execute(f);
+                return;
+            }
+            if (condition.executeCondition(f)) {
+                thenBranch.execute(f);
+            } else if (elseBranch != null) {
+                elseBranch.execute(f);
+            }
+        }
+
+        @Override
+        protected void replaceChild(Node oldChild, Node newChild) {
+            if (condition == oldChild) condition = (ExprNode) newChild;
+            if (thenBranch == oldChild) thenBranch = (StmtNode) newChild;
+            if (elseBranch == oldChild) elseBranch = (StmtNode) newChild;
+        }
+    }
+
+    // while com condição constante vira laço sem teste (ou some, se falsa)
+    public static final class While extends StmtNode {
+        ExprNode condition;
+        StmtNode body;
+
+        public While(ExprNode condition, StmtNode body) {
+            this.condition = adopt(condition);
+            this.body = adopt(body);
+        }
+
+        @Override
+        public void execute(Frame f) {
+            if (condition instanceof Const) {
+                StmtNode loop = condition.executeCondition(f) ? new Forever(body) : new Nop();
+                replace(loop).execute(f);
+                return;
+            }
+            while (condition.executeCondition(f)) {
+                body.execute(f);
+            }
+        }
+
+        @Override
+        protected void replaceChild(Node oldChild, Node newChild) {
+            if (condition == oldChild) condition = (ExprNode) newChild;
+            if (body == oldChild) body = (StmtNode) newChild;
+        }
+    }
+
+    public static final class Forever extends StmtNode {
+        StmtNode body;
+
+        public Forever(StmtNode body) {
+            this.body = adopt(body);
+        }
+
+        @Override
+        public void execute(Frame f) {
+            while (true) {
+                body.execute(f);
+            }
+        }
+
+        @Override
+        protected void replaceChild(Node oldChild, Node newChild) {
+            if (body == oldChild) body = (StmtNode) newChild;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// Leitor de números para o INPUT, no lugar do Scanner: separa os tokens
+// por espaço em branco direto nos bytes e converte inteiros sem criar
+// String. Lê de um canal através de um buffer, ou de um arquivo inteiro
+// mapeado em memória (map), sem cópia.
+public class NumberReader {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Até 18 dígitos o valor cabe em um long sem estouro
+    private static final int MAX_FAST_DIGITS = 18;
+
+    private final ReadableByteChannel channel; // null quando o buffer já tem tudo
+    private final ByteBuffer buf;
+    private byte[] token = new byte[32];
+
+    public NumberReader(InputStream in) {
+        this(Channels.newChannel(in));
+    }
+
+    public NumberReader(ReadableByteChannel channel) {
+        this.channel = channel;
+        this.buf = ByteBuffer.allocate(BUFFER_SIZE);
+        this.buf.flip();
+    }
+
+    private NumberReader(ByteBuffer contents) {
+        this.channel = null;
+        this.buf = contents;
+    }
+
+    // Mapeia o arquivo em memória; os números são lidos direto do mapeamento
+    public static NumberReader map(Path path) throws IOException {
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new NumberReader(ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()));
+        }
+    }
+
+    public double nextDouble() {
+        int b = read();
+        while (b >= 0 && isWhitespace(b)) b = read();
+        if (b < 0) {
+            throw new RuntimeException("Erro de execução: fim da entrada ao ler um número.");
+        }
+
+        int length = 0;
+        while (b >= 0 && !isWhitespace(b)) {
+            if (length == token.length) token = Arrays.copyOf(token, length * 2);
+            token[length++] = (byte) b;
+            b = read();
+        }
+        return parse(token, length);
+    }
+
+    private static double parse(byte[] token, int length) {
+        // Caminho rápido: [+-]dígitos
+        int i = 0;
+        boolean negative = false;
+        if (token[0] == '-' || token[0] == '+') {
+            negative = token[0] == '-';
+            i = 1;
+        }
+        int digits = length - i;
+        if (digits > 0 && digits <= MAX_FAST_DIGITS) {
+            long n = 0;
+            for (; i < length; i++) {
+                int d = token[i] - '0';
+                if (d < 0 || d > 9) break;
+                n = n * 10 + d;
+            }
+            if (i == length) {
+                double value = n;
+                return negative ? -value : value;
+            }
+        }
+
+        // Decimais, expoente, NaN, Infinity...
+        String text = new String(token, 0, length, StandardCharsets.UTF_8);
+        try {
+            return Double.parseDouble(text);
+        } catch (NumberFormatException e) {
+            throw new RuntimeException("Erro de execução: entrada inválida '" + text + "', esperado um número.");
+        }
+    }
+
+    private int read() {
+        if (!buf.hasRemaining() && !fill()) return -1;
+        return buf.get() & 0xFF;
+    }
+
+    private boolean fill() {
+        if (channel == null) return false;
+        try {
+            buf.clear();
+            int n;
+            do {
+                n = channel.read(buf);
+            } while (n == 0);
+            buf.flip();
+            return n > 0;
+        } catch (IOException e) {
+            throw new RuntimeException("Erro ao ler a entrada: " + e.getMessage(), e);
+        }
+    }
+
+    private static boolean isWhitespace(int b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == '\f' || b == 0x0B;
+    }
+}
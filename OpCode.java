@@ -1,20 +1,109 @@
 public enum OpCode {
-    PUSH_CONST,
-    LOAD_VAR,
-    STORE_VAR,
-    ADD,
-    SUB,
-    MUL,
-    DIV,
-    CMP_EQ,
-    CMP_NEQ,
-    CMP_GT,
-    CMP_GTE,
-    CMP_LT,
-    CMP_LTE,
-    PRINT,
-    INPUT,
-    JMP,
-    JMP_IF_FALSE,
-    POP
+    // (valores double desempilhados, double empilhados,
+    //  valores int desempilhados, int empilhados)
+    PUSH_CONST(0, 1),
+    LOAD_VAR(0, 1),
+    STORE_VAR(1, 0),
+    ADD(2, 1),
+    SUB(2, 1),
+    MUL(2, 1),
+    DIV(2, 1),
+    CMP_EQ(2, 1),
+    CMP_NEQ(2, 1),
+    CMP_GT(2, 1),
+    CMP_GTE(2, 1),
+    CMP_LT(2, 1),
+    CMP_LTE(2, 1),
+    PRINT(1, 0),
+    INPUT(0, 0),
+    JMP(0, 0),
+    JMP_IF_FALSE(1, 0),
+    POP(1, 0),
+
+    // Superinstruções criadas pelo PeepholeOptimizer
+    INC_VAR(0, 0),       // var += constante
+    ADD_VV(0, 1),        // empilha var1 + var2
+    SUB_VV(0, 1),
+    MUL_VV(0, 1),
+    DIV_VV(0, 1),
+    JMP_IF_NOT_EQ(2, 0), // compara os dois do topo e salta se a comparação for falsa
+    JMP_IF_NOT_NEQ(2, 0),
+    JMP_IF_NOT_GT(2, 0),
+    JMP_IF_NOT_GTE(2, 0),
+    JMP_IF_NOT_LT(2, 0),
+    JMP_IF_NOT_LTE(2, 0),
+
+    // Versões para int: usam a pilha e o frame de long, com divisão truncada
+    IPUSH_CONST(0, 0, 0, 1),
+    ILOAD_VAR(0, 0, 0, 1),
+    ISTORE_VAR(0, 0, 1, 0),
+    IADD(0, 0, 2, 1),
+    ISUB(0, 0, 2, 1),
+    IMUL(0, 0, 2, 1),
+    IDIV(0, 0, 2, 1),
+    ICMP_EQ(0, 0, 2, 1),
+    ICMP_NEQ(0, 0, 2, 1),
+    ICMP_GT(0, 0, 2, 1),
+    ICMP_GTE(0, 0, 2, 1),
+    ICMP_LT(0, 0, 2, 1),
+    ICMP_LTE(0, 0, 2, 1),
+    IINPUT(0, 0, 0, 0),
+    IJMP_IF_FALSE(0, 0, 1, 0),
+    IPOP(0, 0, 1, 0),
+    I2D(0, 1, 1, 0),     // int -> real
+    D2I(1, 0, 0, 1),     // real -> int, truncando
+    IINC_VAR(0, 0, 0, 0),
+    IADD_VV(0, 0, 0, 1),
+    ISUB_VV(0, 0, 0, 1),
+    IMUL_VV(0, 0, 0, 1),
+    IDIV_VV(0, 0, 0, 1),
+    IJMP_IF_NOT_EQ(0, 0, 2, 0),
+    IJMP_IF_NOT_NEQ(0, 0, 2, 0),
+    IJMP_IF_NOT_GT(0, 0, 2, 0),
+    IJMP_IF_NOT_GTE(0, 0, 2, 0),
+    IJMP_IF_NOT_LT(0, 0, 2, 0),
+    IJMP_IF_NOT_LTE(0, 0, 2, 0),
+
+    // Contador do OpcodeProfiler (soma 1 no contador `slot`); só aparece
+    // no código instrumentado que ele entrega ao Interpreter
+    PROFILE(0, 0);
+
+    public final int pops;
+    public final int pushes;
+    public final int intPops;
+    public final int intPushes;
+
+    OpCode(int pops, int pushes) {
+        this(pops, pushes, 0, 0);
+    }
+
+    OpCode(int pops, int pushes, int intPops, int intPushes) {
+        this.pops = pops;
+        this.pushes = pushes;
+        this.intPops = intPops;
+        this.intPushes = intPushes;
+    }
+
+    public boolean isJump() {
+        switch (this) {
+            case JMP:
+            case JMP_IF_FALSE:
+            case JMP_IF_NOT_EQ:
+            case JMP_IF_NOT_NEQ:
+            case JMP_IF_NOT_GT:
+            case JMP_IF_NOT_GTE:
+            case JMP_IF_NOT_LT:
+            case JMP_IF_NOT_LTE:
+            case IJMP_IF_FALSE:
+            case IJMP_IF_NOT_EQ:
+            case IJMP_IF_NOT_NEQ:
+            case IJMP_IF_NOT_GT:
+            case IJMP_IF_NOT_GTE:
+            case IJMP_IF_NOT_LT:
+            case IJMP_IF_NOT_LTE:
+                return true;
+            default:
+                return false;
+        }
+    }
 }
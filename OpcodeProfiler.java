@@ -0,0 +1,263 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// Perfil de execução do Interpreter: quantas vezes cada pc e cada opcode
+// executou e quantas vezes cada salto condicional saltou ou seguiu em
+// frente. É o dado para decidir que superinstruções e otimizações valem
+// a pena.
+//
+// O laço do Interpreter não tem nenhum teste de perfil. Em vez disso o
+// programa é instrumentado: antes de cada instrução entra um PROFILE que
+// soma 1 no contador do pc, e depois de cada salto condicional outro que
+// conta a saída sem salto. Os destinos dos saltos são corrigidos para o
+// PROFILE da instrução de destino, então o contador de "não tomado" só
+// é alcançado seguindo em frente. Sem perfil o código executado é o
+// original e o custo é zero; com perfil cada instrução custa um despacho
+// a mais, mas as contagens são exatas.
+//
+// Os resultados ficam disponíveis durante a execução pelo MBean
+// (OpcodeProfilerMXBean) e no fim como eventos JFR (compilador.Opcode,
+// compilador.Pc e compilador.Branch), gravados quando há uma gravação
+// ativa, por exemplo com -XX:StartFlightRecording.
+public class OpcodeProfiler implements OpcodeProfilerMXBean {
+
+    public static final String OBJECT_NAME = "Compilador:type=OpcodeProfiler";
+
+    private final List<Instruction> code;
+    // [0, n): execuções do pc; [n, 2n): saídas sem salto do condicional em pc - n
+    private final long[] counters;
+
+    @Name("compilador.Opcode")
+    @Label("Execuções por opcode")
+    @Category({ "Compilador", "Perfil" })
+    static class OpcodeEvent extends Event {
+        @Label("Opcode")
+        String opcode;
+
+        @Label("Execuções")
+        long count;
+    }
+
+    @Name("compilador.Pc")
+    @Label("Execuções por pc")
+    @Category({ "Compilador", "Perfil" })
+    static class PcEvent extends Event {
+        @Label("pc")
+        int pc;
+
+        @Label("Instrução")
+        String instruction;
+
+        @Label("Execuções")
+        long count;
+    }
+
+    @Name("compilador.Branch")
+    @Label("Salto condicional")
+    @Category({ "Compilador", "Perfil" })
+    static class BranchEvent extends Event {
+        @Label("pc")
+        int pc;
+
+        @Label("Instrução")
+        String instruction;
+
+        @Label("Saltou")
+        long taken;
+
+        @Label("Seguiu em frente")
+        long notTaken;
+    }
+
+    public OpcodeProfiler(List<Instruction> code) {
+        this.code = code;
+        this.counters = new long[code.size() * 2];
+    }
+
+    // Contadores somados pelas instruções PROFILE (índice no slot)
+    long[] getCounters() {
+        return counters;
+    }
+
+    // Código com os contadores, para o Interpreter
+    public List<Instruction> instrument() {
+        int n = code.size();
+        // Posição no código instrumentado do PROFILE de cada instrução
+        int[] moved = new int[n + 1];
+        int size = 0;
+        for (int i = 0; i < n; i++) {
+            moved[i] = size;
+            size += isConditional(code.get(i).op) ? 3 : 2;
+        }
+        moved[n] = size;
+
+        List<Instruction> out = new ArrayList<>(size);
+        for (int i = 0; i < n; i++) {
+            Instruction ins = code.get(i);
+            out.add(new Instruction(OpCode.PROFILE, null, i));
+            if (ins.op.isJump()) {
+                out.add(ins.withJumpTarget(moved[ins.jumpTarget]));
+            } else {
+                out.add(ins);
+            }
+            if (isConditional(ins.op)) {
+                out.add(new Instruction(OpCode.PROFILE, null, n + i));
+            }
+        }
+        return out;
+    }
+
+    private static boolean isConditional(OpCode op) {
+        return op.isJump() && op != OpCode.JMP;
+    }
+
+    // ---------------- MBean ----------------
+
+    public void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) server.unregisterMBean(name);
+            server.registerMBean(this, name);
+        } catch (JMException e) {
+            throw new RuntimeException("Erro ao registrar o MBean do perfil: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public long getInstructionCount() {
+        long total = 0;
+        for (int i = 0; i < code.size(); i++) total += counters[i];
+        return total;
+    }
+
+    // Em ordem decrescente de execuções
+    @Override
+    public Map<String, Long> getOpcodeCounts() {
+        long[] byOpcode = new long[OpCode.values().length];
+        for (int i = 0; i < code.size(); i++) byOpcode[code.get(i).op.ordinal()] += counters[i];
+        List<OpCode> ops = new ArrayList<>(Arrays.asList(OpCode.values()));
+        ops.sort((a, b) -> Long.compare(byOpcode[b.ordinal()], byOpcode[a.ordinal()]));
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (OpCode op : ops) {
+            if (byOpcode[op.ordinal()] > 0) result.put(op.name(), byOpcode[op.ordinal()]);
+        }
+        return result;
+    }
+
+    @Override
+    public long[] getPcCounts() {
+        return Arrays.copyOf(counters, code.size());
+    }
+
+    @Override
+    public Map<Integer, Long> getBranchTakenCounts() {
+        Map<Integer, Long> result = new TreeMap<>();
+        for (int i = 0; i < code.size(); i++) {
+            if (isConditional(code.get(i).op)) result.put(i, taken(i));
+        }
+        return result;
+    }
+
+    @Override
+    public Map<Integer, Long> getBranchNotTakenCounts() {
+        Map<Integer, Long> result = new TreeMap<>();
+        for (int i = 0; i < code.size(); i++) {
+            if (isConditional(code.get(i).op)) result.put(i, counters[code.size() + i]);
+        }
+        return result;
+    }
+
+    @Override
+    public void reset() {
+        Arrays.fill(counters, 0);
+    }
+
+    // O condicional não gera erro: toda execução dele salta ou segue
+    private long taken(int pc) {
+        return counters[pc] - counters[code.size() + pc];
+    }
+
+    // ---------------- Resultados ----------------
+
+    // Um evento por opcode, por pc executado e por salto condicional
+    public void commitEvents() {
+        if (new OpcodeEvent().isEnabled()) {
+            for (Map.Entry<String, Long> e : getOpcodeCounts().entrySet()) {
+                OpcodeEvent event = new OpcodeEvent();
+                event.opcode = e.getKey();
+                event.count = e.getValue();
+                event.commit();
+            }
+        }
+        boolean pcs = new PcEvent().isEnabled();
+        boolean branches = new BranchEvent().isEnabled();
+        if (!pcs && !branches) return;
+        for (int i = 0; i < code.size(); i++) {
+            if (counters[i] == 0) continue;
+            if (pcs) {
+                PcEvent event = new PcEvent();
+                event.pc = i;
+                event.instruction = code.get(i).toString();
+                event.count = counters[i];
+                event.commit();
+            }
+            if (branches && isConditional(code.get(i).op)) {
+                BranchEvent event = new BranchEvent();
+                event.pc = i;
+                event.instruction = code.get(i).toString();
+                event.taken = taken(i);
+                event.notTaken = counters[code.size() + i];
+                event.commit();
+            }
+        }
+    }
+
+    // Resumo: opcodes, os pcs mais executados e os saltos condicionais
+    // mais executados, até `limit` linhas em cada parte
+    public void print(int limit) {
+        long total = getInstructionCount();
+        System.out.println("=== Perfil de opcodes ===");
+        System.out.println("Instruções executadas: " + total);
+        for (Map.Entry<String, Long> e : getOpcodeCounts().entrySet()) {
+            System.out.printf("  %-16s %14d %6.2f%%%n", e.getKey(), e.getValue(), percent(e.getValue(), total));
+        }
+
+        Integer[] pcs = new Integer[code.size()];
+        for (int i = 0; i < pcs.length; i++) pcs[i] = i;
+        Arrays.sort(pcs, (a, b) -> Long.compare(counters[b], counters[a]));
+        System.out.println("pcs mais executados:");
+        for (int k = 0; k < Math.min(limit, pcs.length) && counters[pcs[k]] > 0; k++) {
+            int pc = pcs[k];
+            System.out.printf("  %5d: %-36s %14d%n", pc, code.get(pc), counters[pc]);
+        }
+
+        System.out.println("Saltos condicionais (saltou / seguiu):");
+        int shown = 0;
+        for (int k = 0; k < pcs.length && shown < limit && counters[pcs[k]] > 0; k++) {
+            int pc = pcs[k];
+            if (!isConditional(code.get(pc).op)) continue;
+            long taken = taken(pc);
+            System.out.printf("  %5d: %-36s %14d / %-14d %6.2f%% saltou%n",
+                    pc, code.get(pc), taken, counters[code.size() + pc], percent(taken, counters[pc]));
+            shown++;
+        }
+        System.out.println("=========================");
+    }
+
+    private static double percent(long part, long total) {
+        return total == 0 ? 0.0 : 100.0 * part / total;
+    }
+}
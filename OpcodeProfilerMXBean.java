@@ -0,0 +1,24 @@
+import java.util.Map;
+
+// Interface de gerenciamento do OpcodeProfiler, publicada no servidor de
+// MBeans da plataforma (jconsole, VisualVM) como Compilador:type=OpcodeProfiler.
+// Os valores são lidos dos contadores durante a execução.
+public interface OpcodeProfilerMXBean {
+
+    // Instruções do programa executadas (sem os contadores)
+    long getInstructionCount();
+
+    // Execuções por opcode
+    Map<String, Long> getOpcodeCounts();
+
+    // Execuções por pc do código original
+    long[] getPcCounts();
+
+    // Vezes que cada salto condicional saltou / seguiu em frente, por pc
+    Map<Integer, Long> getBranchTakenCounts();
+
+    Map<Integer, Long> getBranchNotTakenCounts();
+
+    // Zera os contadores
+    void reset();
+}
@@ -0,0 +1,113 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+// Saída dos programas em um buffer de bytes grande. Números inteiros
+// (a maioria do que os programas imprimem) são convertidos para ASCII
+// direto no buffer, sem criar String; o texto produzido é exatamente o de
+// System.out.println(double). O buffer só é descarregado ao encher, ao
+// fim da execução ou, no modo interativo, a cada linha.
+//
+// Textos (o prompt do INPUT, que tem o nome da variável) são codificados
+// no charset da saída, o mesmo que System.out usaria: identificadores
+// podem ter letras fora do ASCII.
+public class OutputSink {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Espaço que sempre sobra no buffer: cabe qualquer número formatado
+    private static final int MAX_NUMBER_LENGTH = 32;
+    // Abaixo disso Double.toString escreve o valor sem expoente
+    private static final double MAX_PLAIN = 1e7;
+
+    private final OutputStream out;
+    private final boolean lineFlush;
+    private final Charset charset;
+    private final byte[] newline;
+    private final byte[] buf = new byte[BUFFER_SIZE];
+    private int count = 0;
+
+    public OutputSink(OutputStream out, boolean lineFlush) {
+        this(out, lineFlush, consoleCharset());
+    }
+
+    public OutputSink(OutputStream out, boolean lineFlush, Charset charset) {
+        this.out = out;
+        this.lineFlush = lineFlush;
+        this.charset = charset;
+        this.newline = System.lineSeparator().getBytes(charset);
+    }
+
+    // O charset de System.out: sun.stdout.encoding quando a JVM o define
+    // (console), senão o padrão da plataforma
+    private static Charset consoleCharset() {
+        String name = System.getProperty("sun.stdout.encoding");
+        if (name != null && Charset.isSupported(name)) return Charset.forName(name);
+        return Charset.defaultCharset();
+    }
+
+    // Mesmo texto de System.out.println(value)
+    public void println(double value) {
+        if (count > buf.length - MAX_NUMBER_LENGTH - newline.length) flush();
+        long n = (long) value;
+        if (n == value && Math.abs(value) < MAX_PLAIN) {
+            // O bit de sinal cobre o -0.0, que Double.toString mostra como "-0.0"
+            if (Double.doubleToRawLongBits(value) < 0) {
+                buf[count++] = '-';
+                n = -n;
+            }
+            writeDigits(n);
+            buf[count++] = '.';
+            buf[count++] = '0';
+        } else {
+            String s = Double.toString(value);
+            for (int i = 0; i < s.length(); i++) {
+                buf[count++] = (byte) s.charAt(i);
+            }
+        }
+        for (byte b : newline) buf[count++] = b;
+        if (lineFlush) flush();
+    }
+
+    // ASCII vai direto para o buffer; do primeiro caractere fora dele em
+    // diante o texto passa pelo charset
+    public void print(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 0x80) {
+                write(s.substring(i).getBytes(charset));
+                return;
+            }
+            if (count == buf.length) flush();
+            buf[count++] = (byte) c;
+        }
+    }
+
+    private void write(byte[] bytes) {
+        for (byte b : bytes) {
+            if (count == buf.length) flush();
+            buf[count++] = b;
+        }
+    }
+
+    public void flush() {
+        if (count == 0) return;
+        try {
+            out.write(buf, 0, count);
+            out.flush();
+        } catch (IOException e) {
+            throw new RuntimeException("Erro ao escrever a saída: " + e.getMessage(), e);
+        }
+        count = 0;
+    }
+
+    private void writeDigits(long n) {
+        int digits = 1;
+        for (long t = n; t >= 10; t /= 10) digits++;
+        int end = count + digits;
+        for (int i = end - 1; i >= count; i--) {
+            buf[i] = (byte) ('0' + n % 10);
+            n /= 10;
+        }
+        count = end;
+    }
+}
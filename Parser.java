@@ -1,41 +1,165 @@
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
 
+// Analisador sintático. Puxa os tokens da fonte conforme precisa e só
+// guarda uma janela pequena: o token anterior, o atual e, quando checkNext
+// pede, o seguinte. A posição de cada token da janela vem da fonte, já que
+// os tokens compartilhados não carregam posição.
+//
+// Comandos e expressões são montados com pilhas explícitas em vez de
+// descida recursiva, então programas muito aninhados não estouram a pilha
+// Java: o custo é linear no tamanho da entrada.
 public class Parser {
 
-    private final List<Token> tokens;
-    private int current = 0;
+    private final TokenSource source;
+    private Token previous;
+    private Token current;
+    private int currentOffset;
+    private Token next; // null enquanto ninguém olhou além do atual
+    private int nextOffset;
+
+    public Parser(TokenSource source) {
+        this.source = source;
+        this.current = source.nextToken();
+        this.currentOffset = source.tokenOffset();
+    }
 
     public Parser(List<Token> tokens) {
-        this.tokens = tokens;
+        this(listSource(tokens));
+    }
+
+    private static TokenSource listSource(List<Token> tokens) {
+        Iterator<Token> it = tokens.iterator();
+        Token[] last = { new Token(TokenType.EOF, "") };
+        return () -> {
+            if (it.hasNext()) last[0] = it.next();
+            return last[0];
+        };
+    }
+
+    // Comandos ainda abertos na pilha explícita do parser. O parser não é
+    // recursivo: um if/while/bloco empilha um quadro e o comando completo
+    // volta para o quadro de baixo, então o aninhamento só gasta heap.
+    private static final int BLOCK = 0;   // junta comandos até '}' (ou EOF no programa)
+    private static final int IF = 1;      // espera o ramo then
+    private static final int ELSE = 2;    // espera o ramo else
+    private static final int WHILE = 3;   // espera o corpo
+
+    private static final class Frame {
+        final int kind;
+        final List<Stmt> statements; // só em BLOCK
+        final Expr condition;        // só em IF, ELSE e WHILE
+        Stmt thenBranch;             // só em ELSE
+
+        Frame(int kind, List<Stmt> statements, Expr condition) {
+            this.kind = kind;
+            this.statements = statements;
+            this.condition = condition;
+        }
     }
 
+    // Níveis de precedência dos operadores binários (unário é o mais alto)
+    private static final int UNARY = 5;
+    private static final int GROUP = 0; // '(' aberto na pilha de operadores
+
     public List<Stmt> parse() {
-        List<Stmt> statements = new ArrayList<>();
-        while (!isAtEnd()) {
-            statements.add(declarationOrStatement());
+        return parse(new ArrayList<>(), false);
+    }
+
+    // Só o próximo comando do nível de cima, ou null no fim da entrada.
+    // Quem reanalisa um trecho do programa (IncrementalCompiler) lê um
+    // comando por vez e sabe onde cada um termina por currentOffset()
+    public Stmt parseStatement() {
+        if (isAtEnd()) return null;
+        return parse(new ArrayList<>(1), true).get(0);
+    }
+
+    // Posição na entrada do token atual: depois de parseStatement, o
+    // primeiro depois do comando (que o parser já olhou, por causa do else)
+    public int currentOffset() {
+        return currentOffset;
+    }
+
+    private List<Stmt> parse(List<Stmt> program, boolean single) {
+        Deque<Frame> frames = new ArrayDeque<>();
+        frames.push(new Frame(BLOCK, program, null));
+        while (true) {
+            Frame top = frames.peek();
+            if (top.kind == BLOCK) {
+                if (frames.size() == 1 && (isAtEnd() || single && !program.isEmpty())) return program;
+                if (frames.size() > 1 && (check(TokenType.RBRACE) || isAtEnd())) {
+                    consume(TokenType.RBRACE, "Esperado '}' após bloco.");
+                    frames.pop();
+                    complete(frames, new Stmt.Block(top.statements));
+                    continue;
+                }
+                // Declarações só aparecem direto num bloco
+                if (match(TokenType.INT, TokenType.REAL)) {
+                    Token type = previous();
+                    Token name = consume(TokenType.IDENTIFIER, "Esperado nome de variável.");
+                    consume(TokenType.SEMICOLON, "Esperado ';' após declaração.");
+                    top.statements.add(new Stmt.VarDecl(type, name));
+                    continue;
+                }
+            }
+
+            if (match(TokenType.IF)) {
+                frames.push(new Frame(IF, null, condition("if")));
+            } else if (match(TokenType.WHILE)) {
+                frames.push(new Frame(WHILE, null, condition("while")));
+            } else if (match(TokenType.LBRACE)) {
+                frames.push(new Frame(BLOCK, new ArrayList<>(), null));
+            } else {
+                complete(frames, simpleStatement());
+            }
         }
-        return statements;
     }
 
-    private Stmt declarationOrStatement() {
-        if (match(TokenType.INT, TokenType.REAL)) {
-            Token type = previous();
-            Token name = consume(TokenType.IDENTIFIER, "Esperado nome de variável.");
-            consume(TokenType.SEMICOLON, "Esperado ';' após declaração.");
-            return new Stmt.VarDecl(type, name);
+    // Entrega o comando pronto ao quadro do topo; if e while completos
+    // descem a pilha até chegar num bloco ou num if que espera o else
+    private void complete(Deque<Frame> frames, Stmt stmt) {
+        while (true) {
+            Frame top = frames.peek();
+            switch (top.kind) {
+                case BLOCK:
+                    top.statements.add(stmt);
+                    return;
+                case IF:
+                    frames.pop();
+                    if (match(TokenType.ELSE)) {
+                        Frame elseFrame = new Frame(ELSE, null, top.condition);
+                        elseFrame.thenBranch = stmt;
+                        frames.push(elseFrame);
+                        return;
+                    }
+                    stmt = new Stmt.If(top.condition, stmt, null);
+                    break;
+                case ELSE:
+                    frames.pop();
+                    stmt = new Stmt.If(top.condition, top.thenBranch, stmt);
+                    break;
+                default:
+                    frames.pop();
+                    stmt = new Stmt.While(top.condition, stmt);
+                    break;
+            }
         }
-        return statement();
     }
 
-    private Stmt statement() {
+    private Expr condition(String keyword) {
+        consume(TokenType.LPAREN, "Esperado '(' após '" + keyword + "'.");
+        Expr condition = expression();
+        consume(TokenType.RPAREN, "Esperado ')' após condição.");
+        return condition;
+    }
+
+    private Stmt simpleStatement() {
         if (match(TokenType.PRINT))  return printStatement();
         if (match(TokenType.INPUT))  return inputStatement();
-        if (match(TokenType.IF))     return ifStatement();
-        if (match(TokenType.WHILE))  return whileStatement();
-        if (match(TokenType.LBRACE)) return new Stmt.Block(block());
 
-        
         if (check(TokenType.IDENTIFIER) && checkNext(TokenType.ASSIGN)) {
             return assignmentStatement();
         }
@@ -62,122 +186,107 @@ public class Parser {
         return new Stmt.Input(name);
     }
 
-    private Stmt ifStatement() {
-        consume(TokenType.LPAREN, "Esperado '(' após 'if'.");
-        Expr condition = expression();
-        consume(TokenType.RPAREN, "Esperado ')' após condição.");
-        Stmt thenBranch = statement();
-        Stmt elseBranch = null;
-        if (match(TokenType.ELSE)) {
-            elseBranch = statement();
-        }
-        return new Stmt.If(condition, thenBranch, elseBranch);
-    }
-
-    private Stmt whileStatement() {
-        consume(TokenType.LPAREN, "Esperado '(' após 'while'.");
-        Expr condition = expression();
-        consume(TokenType.RPAREN, "Esperado ')' após condição.");
-        Stmt body = statement();
-        return new Stmt.While(condition, body);
-    }
-
     private Stmt expressionStatement() {
         Expr expr = expression();
         consume(TokenType.SEMICOLON, "Esperado ';' após expressão.");
         return new Stmt.ExpressionStmt(expr);
     }
 
-    private java.util.List<Stmt> block() {
-        List<Stmt> statements = new ArrayList<>();
-        while (!check(TokenType.RBRACE) && !isAtEnd()) {
-            statements.add(declarationOrStatement());
-        }
-        consume(TokenType.RBRACE, "Esperado '}' após bloco.");
-        return statements;
-    }
-
-
-
+    // Expressões por precedência de operadores, com uma pilha de operandos
+    // e outra de operadores ('-' unário e '(' abertos também entram nela).
+    // Gera a mesma árvore da gramática
+    //
+    //   equality   -> comparison (('==' | '!=') comparison)*
+    //   comparison -> term (('>' | '>=' | '<' | '<=') term)*
+    //   term       -> factor (('+' | '-') factor)*
+    //   factor     -> unary (('*' | '/') unary)*
+    //   unary      -> '-' unary | primary
+    //   primary    -> NUMBER | IDENTIFIER | '(' expression ')'
+    //
+    // sem recursão, qualquer que seja o aninhamento.
     private Expr expression() {
-        return equality();
-    }
-
-    private Expr equality() {
-        Expr expr = comparison();
-
-        while (match(TokenType.EQUAL_EQUAL, TokenType.BANG_EQUAL)) {
-            Token op = previous();
-            Expr right = comparison();
-            expr = new Expr.Binary(expr, op, right);
-        }
-        return expr;
-    }
-
-    private Expr comparison() {
-        Expr expr = term();
-
-        while (match(TokenType.GREATER, TokenType.GREATER_EQUAL,
-                     TokenType.LESS, TokenType.LESS_EQUAL)) {
-            Token op = previous();
-            Expr right = term();
-            expr = new Expr.Binary(expr, op, right);
-        }
-        return expr;
-    }
-
-    private Expr term() {
-        Expr expr = factor();
-
-        while (match(TokenType.PLUS, TokenType.MINUS)) {
-            Token op = previous();
-            Expr right = factor();
-            expr = new Expr.Binary(expr, op, right);
-        }
-        return expr;
-    }
-
-    private Expr factor() {
-        Expr expr = unary();
+        Deque<Expr> operands = new ArrayDeque<>();
+        Deque<Token> operators = new ArrayDeque<>();
+        Deque<Integer> levels = new ArrayDeque<>(); // precedência de cada operador
+        int openGroups = 0;
+        while (true) {
+            // Operando: '-' e '(' prefixados, depois um primário
+            if (match(TokenType.MINUS)) {
+                operators.push(previous());
+                levels.push(UNARY);
+                continue;
+            }
+            if (match(TokenType.LPAREN)) {
+                operators.push(previous());
+                levels.push(GROUP);
+                openGroups++;
+                continue;
+            }
+            if (match(TokenType.NUMBER)) {
+                String lexeme = previous().lexeme;
+                double value = Double.parseDouble(lexeme);
+                operands.push(new Expr.Literal(value, lexeme.indexOf('.') < 0));
+            } else if (match(TokenType.IDENTIFIER)) {
+                operands.push(new Expr.Variable(previous()));
+            } else {
+                throw error(peek(), "Expressão inválida.");
+            }
 
-        while (match(TokenType.STAR, TokenType.SLASH)) {
-            Token op = previous();
-            Expr right = unary();
-            expr = new Expr.Binary(expr, op, right);
+            // Depois do operando: ')' fecham grupos, um binário continua a
+            // expressão e qualquer outra coisa a termina
+            while (true) {
+                int level = binaryLevel(peek().type);
+                if (level > 0) {
+                    reduce(operands, operators, levels, level);
+                    operators.push(advance());
+                    levels.push(level);
+                    break;
+                }
+                if (openGroups == 0) {
+                    reduce(operands, operators, levels, 1);
+                    return operands.pop();
+                }
+                consume(TokenType.RPAREN, "Esperado ')' após expressão.");
+                reduce(operands, operators, levels, 1);
+                operators.pop();
+                levels.pop();
+                openGroups--;
+                operands.push(new Expr.Grouping(operands.pop()));
+            }
         }
-        return expr;
     }
 
-    private Expr unary() {
-        if (match(TokenType.MINUS)) {
-            Token op = previous();
-            Expr right = unary();
-            return new Expr.Unary(op, right);
+    // Monta os nós dos operadores do topo com precedência >= minLevel
+    // (todos são associativos à esquerda); para num '(' aberto
+    private static void reduce(Deque<Expr> operands, Deque<Token> operators, Deque<Integer> levels,
+                               int minLevel) {
+        while (!levels.isEmpty() && levels.peek() >= minLevel) {
+            Token op = operators.pop();
+            if (levels.pop() == UNARY) {
+                operands.push(new Expr.Unary(op, operands.pop()));
+            } else {
+                Expr right = operands.pop();
+                Expr left = operands.pop();
+                operands.push(new Expr.Binary(left, op, right));
+            }
         }
-        return primary();
     }
 
-    private Expr primary() {
-        if (match(TokenType.NUMBER)) {
-            double value = Double.parseDouble(previous().lexeme);
-            return new Expr.Literal(value);
-        }
-
-        if (match(TokenType.IDENTIFIER)) {
-            return new Expr.Variable(previous());
+    private static int binaryLevel(TokenType type) {
+        switch (type) {
+            case EQUAL_EQUAL: case BANG_EQUAL:
+                return 1;
+            case GREATER: case GREATER_EQUAL: case LESS: case LESS_EQUAL:
+                return 2;
+            case PLUS: case MINUS:
+                return 3;
+            case STAR: case SLASH:
+                return 4;
+            default:
+                return 0;
         }
-
-        if (match(TokenType.LPAREN)) {
-            Expr expr = expression();
-            consume(TokenType.RPAREN, "Esperado ')' após expressão.");
-            return new Expr.Grouping(expr);
-        }
-
-        throw error(peek(), "Expressão inválida.");
     }
 
-    
-
     private boolean match(TokenType... types) {
         for (TokenType type : types) {
             if (check(type)) {
@@ -199,12 +308,26 @@ public class Parser {
     }
 
     private boolean checkNext(TokenType type) {
-        if (current + 1 >= tokens.size()) return false;
-        return tokens.get(current + 1).type == type;
+        if (isAtEnd()) return false;
+        if (next == null) {
+            next = source.nextToken();
+            nextOffset = source.tokenOffset();
+        }
+        return next.type == type;
     }
 
     private Token advance() {
-        if (!isAtEnd()) current++;
+        if (!isAtEnd()) {
+            previous = current;
+            if (next != null) {
+                current = next;
+                currentOffset = nextOffset;
+                next = null;
+            } else {
+                current = source.nextToken();
+                currentOffset = source.tokenOffset();
+            }
+        }
         return previous();
     }
 
@@ -213,14 +336,16 @@ public class Parser {
     }
 
     private Token peek() {
-        return tokens.get(current);
+        return current;
     }
 
     private Token previous() {
-        return tokens.get(current - 1);
+        return previous;
     }
 
     private RuntimeException error(Token token, String message) {
-        return new RuntimeException("Erro sintático em '" + token.lexeme + "': " + message);
+        int offset = token.offset >= 0 ? token.offset : token == current ? currentOffset : -1;
+        String where = offset >= 0 ? " (posição " + offset + ")" : "";
+        return new RuntimeException("Erro sintático em '" + token.lexeme + "'" + where + ": " + message);
     }
 }
@@ -0,0 +1,173 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// Passo de otimização entre o CodeGenerator e o Interpreter. Troca
+// sequências comuns por superinstruções, para que cada operação do
+// programa custe menos despachos no laço do interpretador:
+//
+//   LOAD_VAR x; PUSH_CONST c; ADD|SUB; STORE_VAR x  ->  INC_VAR x (+c|-c)
+//   LOAD_VAR a; LOAD_VAR b; ADD|SUB|MUL|DIV         ->  ADD_VV a b ...
+//   CMP_xx; JMP_IF_FALSE t                          ->  JMP_IF_NOT_xx t
+//
+// e as mesmas regras para as instruções int (IINC_VAR, IADD_VV, ...,
+// IJMP_IF_NOT_xx).
+//
+// Também encurta cadeias de saltos (salto para um JMP vai direto ao
+// destino final) e remove JMPs para a instrução seguinte. Nenhuma
+// sequência é fundida se alguma instrução do meio for destino de salto.
+public class PeepholeOptimizer {
+
+    private int savedDispatches = 0;
+
+    public List<Instruction> optimize(List<Instruction> code) {
+        int n = code.size();
+        boolean[] isTarget = new boolean[n + 1];
+        int[] target = new int[n];
+        for (int i = 0; i < n; i++) {
+            Instruction ins = code.get(i);
+            if (ins.op.isJump()) {
+                target[i] = finalTarget(code, ins.jumpTarget);
+                isTarget[target[i]] = true;
+            }
+        }
+
+        List<Instruction> out = new ArrayList<>();
+        int[] newIndex = new int[n + 1];    // posição nova de cada instrução antiga
+        List<Integer> jumpsToFix = new ArrayList<>();
+        List<Integer> oldTargets = new ArrayList<>();
+
+        int i = 0;
+        while (i < n) {
+            newIndex[i] = out.size();
+            Instruction ins = code.get(i);
+
+            // JMP para a instrução seguinte não faz nada
+            if (ins.op == OpCode.JMP && target[i] == i + 1) {
+                i++;
+                continue;
+            }
+
+            int fused = fuse(code, isTarget, i, out);
+            if (fused > 0) {
+                for (int k = 1; k < fused; k++) newIndex[i + k] = newIndex[i];
+                Instruction last = out.get(out.size() - 1);
+                if (last.op.isJump()) {
+                    jumpsToFix.add(out.size() - 1);
+                    oldTargets.add(target[i + fused - 1]);
+                }
+                i += fused;
+                continue;
+            }
+
+            if (ins.op.isJump()) {
+                jumpsToFix.add(out.size());
+                oldTargets.add(target[i]);
+            }
+            out.add(ins);
+            i++;
+        }
+        newIndex[n] = out.size();
+
+        for (int k = 0; k < jumpsToFix.size(); k++) {
+            int at = jumpsToFix.get(k);
+            Instruction ins = out.get(at);
+            out.set(at, new Instruction(ins.op, ins.strOperand, ins.numOperand, ins.slot,
+                    ins.strOperand2, ins.slot2, newIndex[oldTargets.get(k)]));
+        }
+
+        savedDispatches = n - out.size();
+        return out;
+    }
+
+    // Quantas instruções a menos o código otimizado tem, ou seja, quantos
+    // despachos são economizados a cada vez que todo o código é percorrido
+    public int getSavedDispatches() {
+        return savedDispatches;
+    }
+
+    // Segue uma cadeia de JMPs até o primeiro destino que não é JMP
+    private static int finalTarget(List<Instruction> code, int target) {
+        int steps = 0;
+        while (target < code.size() && code.get(target).op == OpCode.JMP && steps++ < code.size()) {
+            target = code.get(target).jumpTarget;
+        }
+        return target;
+    }
+
+    // Tenta fundir a sequência que começa em i; devolve quantas instruções
+    // antigas foram consumidas (0 se nenhuma regra se aplica)
+    private static int fuse(List<Instruction> code, boolean[] isTarget, int i, List<Instruction> out) {
+        Instruction a = code.get(i);
+        Instruction b = at(code, isTarget, i + 1);
+        Instruction c = at(code, isTarget, i + 2);
+        Instruction d = at(code, isTarget, i + 3);
+
+        boolean intLoad = a.op == OpCode.ILOAD_VAR;
+        if ((a.op == OpCode.LOAD_VAR || intLoad) && b != null && c != null && d != null
+                && b.op == (intLoad ? OpCode.IPUSH_CONST : OpCode.PUSH_CONST)
+                && (c.op == (intLoad ? OpCode.IADD : OpCode.ADD) || c.op == (intLoad ? OpCode.ISUB : OpCode.SUB))
+                && d.op == (intLoad ? OpCode.ISTORE_VAR : OpCode.STORE_VAR) && d.slot == a.slot) {
+            boolean add = c.op == OpCode.ADD || c.op == OpCode.IADD;
+            double step = add ? b.numOperand : -b.numOperand;
+            out.add(new Instruction(intLoad ? OpCode.IINC_VAR : OpCode.INC_VAR, a.strOperand, step, a.slot, -1));
+            return 4;
+        }
+
+        if (b != null && c != null && b.op == a.op && (a.op == OpCode.LOAD_VAR || intLoad)) {
+            OpCode fused = null;
+            switch (c.op) {
+                case ADD:  fused = OpCode.ADD_VV; break;
+                case SUB:  fused = OpCode.SUB_VV; break;
+                case MUL:  fused = OpCode.MUL_VV; break;
+                case DIV:  fused = OpCode.DIV_VV; break;
+                case IADD: fused = OpCode.IADD_VV; break;
+                case ISUB: fused = OpCode.ISUB_VV; break;
+                case IMUL: fused = OpCode.IMUL_VV; break;
+                case IDIV: fused = OpCode.IDIV_VV; break;
+                default: break;
+            }
+            // LOAD_VAR só com operação double, ILOAD_VAR só com operação int
+            if (fused != null && (fused.intPushes == 1) == intLoad) {
+                out.add(new Instruction(fused, a.strOperand, a.slot, b.strOperand, b.slot));
+                return 3;
+            }
+        }
+
+        if (b != null && (b.op == OpCode.JMP_IF_FALSE || b.op == OpCode.IJMP_IF_FALSE)) {
+            OpCode fused = null;
+            if (b.op == OpCode.JMP_IF_FALSE) {
+                switch (a.op) {
+                    case CMP_EQ:  fused = OpCode.JMP_IF_NOT_EQ; break;
+                    case CMP_NEQ: fused = OpCode.JMP_IF_NOT_NEQ; break;
+                    case CMP_GT:  fused = OpCode.JMP_IF_NOT_GT; break;
+                    case CMP_GTE: fused = OpCode.JMP_IF_NOT_GTE; break;
+                    case CMP_LT:  fused = OpCode.JMP_IF_NOT_LT; break;
+                    case CMP_LTE: fused = OpCode.JMP_IF_NOT_LTE; break;
+                    default: break;
+                }
+            } else {
+                switch (a.op) {
+                    case ICMP_EQ:  fused = OpCode.IJMP_IF_NOT_EQ; break;
+                    case ICMP_NEQ: fused = OpCode.IJMP_IF_NOT_NEQ; break;
+                    case ICMP_GT:  fused = OpCode.IJMP_IF_NOT_GT; break;
+                    case ICMP_GTE: fused = OpCode.IJMP_IF_NOT_GTE; break;
+                    case ICMP_LT:  fused = OpCode.IJMP_IF_NOT_LT; break;
+                    case ICMP_LTE: fused = OpCode.IJMP_IF_NOT_LTE; break;
+                    default: break;
+                }
+            }
+            if (fused != null) {
+                out.add(new Instruction(fused, b.jumpTarget));
+                return 2;
+            }
+        }
+
+        return 0;
+    }
+
+    // Instrução em i, ou null se i não existe ou é destino de salto
+    private static Instruction at(List<Instruction> code, boolean[] isTarget, int i) {
+        if (i >= code.size() || isTarget[i]) return null;
+        return code.get(i);
+    }
+}
@@ -0,0 +1,235 @@
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.BooleanSupplier;
+import java.util.function.DoubleSupplier;
+
+// Escalonador cooperativo de muitos programas sobre poucas threads. Cada
+// programa é um Interpreter executado em fatias (step): roda um quantum de
+// instruções e volta para o fim da fila, ou para num INPUT sem entrada e
+// só volta quando alguém entrega um número (Task.input). Da mesma forma,
+// com uma saída limitada (ver submit com `writable`) o programa para num
+// PRINT sem espaço e só volta com Task.outputReady; nenhuma fatia espera
+// entrada ou saída parada numa thread. Um programa que não termina nunca
+// ocupa uma thread por mais de um quantum, então os curtos não esperam
+// atrás dele, e o número de programas não depende do número de threads.
+//
+// As fatias rodam num ForkJoinPool em modo FIFO: a fatia seguinte de um
+// programa entra na fila da própria thread, e threads ociosas roubam das
+// outras. Uma thread só procura as submissões de fora com a própria fila
+// vazia, o que nunca acontece enquanto ela tem um programa longo; por isso
+// cada fatia, ao terminar, traz uma submissão pendente para a fila local,
+// na frente da próxima fatia. Cada programa pode ter um limite de
+// instruções; passar dele é um erro de execução, como no servidor.
+public class ProgramScheduler implements AutoCloseable {
+
+    public static final long DEFAULT_QUANTUM = 100_000;
+
+    private final Pool pool;
+    private final long quantum;
+
+    private static final class Pool extends ForkJoinPool {
+        Pool(int workers) {
+            super(workers, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+        }
+
+        // Numa thread do pool: passa uma submissão de fora para a fila local
+        void adoptSubmission() {
+            ForkJoinTask<?> task = pollSubmission();
+            if (task != null) task.fork();
+        }
+    }
+
+    public ProgramScheduler(int workers, long quantum) {
+        this.pool = new Pool(workers);
+        this.quantum = quantum;
+    }
+
+    public ProgramScheduler() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_QUANTUM);
+    }
+
+    // Começa a executar o programa; a saída vai para `out` (sem prompt) e
+    // a entrada é entregue depois, com Task.input e Task.closeInput
+    public Task submit(CompiledProgram program, OutputStream out, long maxInstructions) {
+        return submit(program, out, null, maxInstructions);
+    }
+
+    // Com toda a entrada já disponível em `input` (ex.: um NumberReader)
+    public Task submit(CompiledProgram program, OutputStream out, DoubleSupplier input, long maxInstructions) {
+        return submit(program, out, () -> true, input, maxInstructions);
+    }
+
+    // Com uma saída limitada: antes de cada PRINT o programa consulta
+    // `writable` e, sem espaço, para até o dono da saída chamar
+    // Task.outputReady. `writable` é chamado com o monitor da Task; o dono
+    // não pode chamar outputReady segurando a trava que `writable` usa.
+    public Task submit(CompiledProgram program, OutputStream out, BooleanSupplier writable, DoubleSupplier input,
+                       long maxInstructions) {
+        Task task = new Task(program, out, writable, input, maxInstructions);
+        pool.execute(task::slice);
+        return task;
+    }
+
+    // Não aceita mais programas; os que estão rodando continuam
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    // Um programa no escalonador
+    public final class Task {
+        private final Interpreter interpreter;
+        private final CompletableFuture<Long> done = new CompletableFuture<>();
+
+        // Entrada pronta desde o início, ou null para a entregue aos poucos
+        private final DoubleSupplier source;
+        private final BooleanSupplier writable;
+
+        // Entrada entregue e ainda não lida e o estado da espera, guardados
+        // pelo monitor da Task. waitingOutput diz se a última fatia parou
+        // num PRINT (só a fatia o escreve, antes de estacionar)
+        private final ArrayDeque<Double> input = new ArrayDeque<>();
+        private boolean inputClosed = false;
+        private boolean parked = false;
+        private boolean waitingOutput = false;
+        private boolean cancelled = false;
+        private Runnable cancelHook;
+
+        Task(CompiledProgram program, OutputStream out, BooleanSupplier writable, DoubleSupplier source,
+             long maxInstructions) {
+            this.source = source;
+            this.writable = writable;
+            VmIo io = new VmIo(new OutputSink(out, false), this::read, this::ready, this::writable, false);
+            this.interpreter = new Interpreter(program, io);
+            interpreter.limitInstructions(maxInstructions);
+        }
+
+        // Completa com as instruções executadas, ou com o erro do programa
+        public CompletableFuture<Long> completion() {
+            return done;
+        }
+
+        // Entrega um número para o próximo INPUT
+        public void input(double value) {
+            synchronized (this) {
+                input.add(value);
+                if (!parked || waitingOutput) return;
+                parked = false;
+            }
+            pool.execute(this::slice);
+        }
+
+        // Sem mais entrada: um INPUT depois disso é erro de fim da entrada
+        public void closeInput() {
+            synchronized (this) {
+                inputClosed = true;
+                if (!parked || waitingOutput) return;
+                parked = false;
+            }
+            pool.execute(this::slice);
+        }
+
+        // A saída voltou a ter espaço: um programa parado num PRINT continua
+        public void outputReady() {
+            synchronized (this) {
+                if (!parked || !waitingOutput) return;
+                parked = false;
+            }
+            pool.execute(this::slice);
+        }
+
+        // Roda uma vez, no cancelamento e na thread de quem cancela: o dono
+        // da entrada ou da saída solta o que estiver preso nelas (ex.: fecha
+        // uma conexão que não lê). Registrado depois do cancelamento, roda já.
+        public void onCancel(Runnable hook) {
+            synchronized (this) {
+                if (!cancelled) {
+                    cancelHook = hook;
+                    return;
+                }
+            }
+            hook.run();
+        }
+
+        // Para o programa no próximo laço (ou já, se está esperando entrada
+        // ou saída)
+        public void cancel() {
+            interpreter.cancel();
+            Runnable hook;
+            boolean wasParked;
+            synchronized (this) {
+                if (cancelled) return;
+                cancelled = true;
+                hook = cancelHook;
+                cancelHook = null;
+                wasParked = parked;
+                parked = false;
+            }
+            if (hook != null) hook.run();
+            if (wasParked) {
+                done.completeExceptionally(new RuntimeException("Erro de execução: execução cancelada."));
+            }
+        }
+
+        private synchronized boolean ready() {
+            return source != null || !input.isEmpty() || inputClosed;
+        }
+
+        // Na fatia, antes de cada PRINT
+        private boolean writable() {
+            waitingOutput = !writable.getAsBoolean();
+            return !waitingOutput;
+        }
+
+        private synchronized double read() {
+            if (source != null) return source.getAsDouble();
+            Double value = input.poll();
+            if (value == null) {
+                throw new RuntimeException("Erro de execução: fim da entrada ao ler um número.");
+            }
+            return value;
+        }
+
+        private void slice() {
+            if (done.isDone()) return;
+            Interpreter.Slice slice;
+            try {
+                slice = interpreter.step(quantum);
+            } catch (Throwable e) {
+                // Qualquer erro termina a tarefa, senão quem espera completion() fica preso
+                done.completeExceptionally(e);
+                return;
+            } finally {
+                pool.adoptSubmission();
+            }
+            switch (slice) {
+                case YIELDED:
+                    pool.execute(this::slice);
+                    break;
+                case BLOCKED:
+                    // A entrada, o espaço na saída ou um cancelamento podem
+                    // ter chegado entre o step e aqui
+                    boolean stop;
+                    synchronized (this) {
+                        stop = cancelled;
+                        if (!stop && !(waitingOutput ? writable.getAsBoolean() : ready())) {
+                            parked = true;
+                            return;
+                        }
+                    }
+                    if (stop) {
+                        done.completeExceptionally(new RuntimeException("Erro de execução: execução cancelada."));
+                    } else {
+                        pool.execute(this::slice);
+                    }
+                    break;
+                case FINISHED:
+                    done.complete(interpreter.getExecutedCount());
+                    break;
+            }
+        }
+    }
+}
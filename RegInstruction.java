@@ -0,0 +1,51 @@
+// Instrução de três endereços da máquina de registradores. Os operandos
+// são índices no banco double ou no banco long conforme a operação
+// (os I* usam o banco long; I2D e D2I misturam os dois).
+public class RegInstruction {
+    public final RegOp op;
+    public final int a;          // destino, ou primeiro operando em PRINT e saltos
+    public final int b;
+    public final int c;
+    public final String name;    // nome da variável (INPUT)
+    public int jumpTarget;       // para saltos (corrigido na geração)
+
+    public RegInstruction(RegOp op, int a, int b, int c) {
+        this(op, a, b, c, null, -1);
+    }
+
+    // Leitura de variável
+    public RegInstruction(RegOp op, int a, String name) {
+        this(op, a, 0, 0, name, -1);
+    }
+
+    public RegInstruction(RegOp op, int a, int b, int c, String name, int jumpTarget) {
+        this.op = op;
+        this.a = a;
+        this.b = b;
+        this.c = c;
+        this.name = name;
+        this.jumpTarget = jumpTarget;
+    }
+
+    @Override
+    public String toString() {
+        switch (op) {
+            case MOV:       return op + " r" + a + ", r" + b;
+            case IMOV:      return op + " i" + a + ", i" + b;
+            case I2D:       return op + " r" + a + ", i" + b;
+            case D2I:       return op + " i" + a + ", r" + b;
+            case PRINT:     return op + " r" + a;
+            case IPRINT:    return op + " i" + a;
+            case INPUT:     return op + " r" + a + " (" + name + ")";
+            case IINPUT:    return op + " i" + a + " (" + name + ")";
+            case JMP:       return op + " -> " + jumpTarget;
+            case JMP_IF_FALSE:  return op + " r" + a + " -> " + jumpTarget;
+            case IJMP_IF_FALSE: return op + " i" + a + " -> " + jumpTarget;
+            default: {
+                String r = op.name().startsWith("I") ? " i" : " r";
+                if (op.isJump()) return op + r + a + "," + r + b + " -> " + jumpTarget;
+                return op + r + a + "," + r + b + "," + r + c;
+            }
+        }
+    }
+}
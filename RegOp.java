@@ -0,0 +1,73 @@
+public enum RegOp {
+    // Registradores double (real). a = destino, b e c = operandos
+    MOV,
+    ADD,
+    SUB,
+    MUL,
+    DIV,
+    CMP_EQ,
+    CMP_NEQ,
+    CMP_GT,
+    CMP_GTE,
+    CMP_LT,
+    CMP_LTE,
+    PRINT,          // imprime a
+    INPUT,          // lê para a
+    JMP,
+    JMP_IF_FALSE,   // salta se a == 0
+    JMP_IF_NOT_EQ,  // salta se a comparação entre a e b for falsa
+    JMP_IF_NOT_NEQ,
+    JMP_IF_NOT_GT,
+    JMP_IF_NOT_GTE,
+    JMP_IF_NOT_LT,
+    JMP_IF_NOT_LTE,
+
+    // Registradores long (int), com divisão truncada
+    IMOV,
+    IADD,
+    ISUB,
+    IMUL,
+    IDIV,
+    ICMP_EQ,
+    ICMP_NEQ,
+    ICMP_GT,
+    ICMP_GTE,
+    ICMP_LT,
+    ICMP_LTE,
+    IPRINT,         // imprime a no formato dos real
+    IINPUT,
+    IJMP_IF_FALSE,
+    IJMP_IF_NOT_EQ,
+    IJMP_IF_NOT_NEQ,
+    IJMP_IF_NOT_GT,
+    IJMP_IF_NOT_GTE,
+    IJMP_IF_NOT_LT,
+    IJMP_IF_NOT_LTE,
+
+    // Conversões entre os dois bancos
+    I2D,            // double a <- long b
+    D2I;            // long a <- double b, truncando
+
+    public boolean isJump() {
+        switch (this) {
+            case JMP:
+            case JMP_IF_FALSE:
+            case JMP_IF_NOT_EQ:
+            case JMP_IF_NOT_NEQ:
+            case JMP_IF_NOT_GT:
+            case JMP_IF_NOT_GTE:
+            case JMP_IF_NOT_LT:
+            case JMP_IF_NOT_LTE:
+            case IJMP_IF_FALSE:
+            case IJMP_IF_NOT_EQ:
+            case IJMP_IF_NOT_NEQ:
+            case IJMP_IF_NOT_GT:
+            case IJMP_IF_NOT_GTE:
+            case IJMP_IF_NOT_LT:
+            case IJMP_IF_NOT_LTE:
+                return true;
+            default:
+                return false;
+        }
+    }
+}
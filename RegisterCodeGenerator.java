@@ -0,0 +1,314 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Gera código de três endereços para a RegisterInterpreter direto da
+// árvore. Cada banco (double e long) é dividido em três faixas:
+//
+//   [0, frameSize)          variáveis, no slot do SemanticAnalyzer
+//   [frameSize, +temps)     temporários das expressões de um comando
+//   [..., +constantes)      constantes, carregadas uma vez antes da execução
+//
+// Variáveis e constantes entram nas operações como operandos diretos, sem
+// instrução de carga: `x = a + 1` vira um único ADD.
+public class RegisterCodeGenerator {
+
+    private final List<RegInstruction> code = new ArrayList<>();
+    private final int frameSize;
+
+    // Temporários em uso no comando atual e o máximo usado, por banco
+    private int realTemps = 0;
+    private int intTemps = 0;
+    private int maxRealTemps = 0;
+    private int maxIntTemps = 0;
+
+    // Durante a geração a constante k é o registrador -1 - k; o índice
+    // definitivo só é conhecido no fim, depois dos temporários
+    private final List<Double> realConstants = new ArrayList<>();
+    private final Map<Long, Integer> realConstantIndex = new HashMap<>();
+    private final List<Long> intConstants = new ArrayList<>();
+    private final Map<Long, Integer> intConstantIndex = new HashMap<>();
+
+    private double[] realRegisters;
+    private long[] intRegisters;
+
+    public RegisterCodeGenerator(int frameSize) {
+        this.frameSize = frameSize;
+    }
+
+    public List<RegInstruction> generate(List<Stmt> program) {
+        for (Stmt stmt : program) {
+            genStmt(stmt);
+        }
+        relocateConstants();
+        return code;
+    }
+
+    // Conteúdo inicial dos bancos (zeros e as constantes), válido após generate
+    public double[] getRealRegisters() {
+        return realRegisters;
+    }
+
+    public long[] getIntRegisters() {
+        return intRegisters;
+    }
+
+    private void relocateConstants() {
+        int realBase = frameSize + maxRealTemps;
+        int intBase = frameSize + maxIntTemps;
+        realRegisters = new double[realBase + realConstants.size()];
+        for (int k = 0; k < realConstants.size(); k++) realRegisters[realBase + k] = realConstants.get(k);
+        intRegisters = new long[intBase + intConstants.size()];
+        for (int k = 0; k < intConstants.size(); k++) intRegisters[intBase + k] = intConstants.get(k);
+
+        for (int i = 0; i < code.size(); i++) {
+            RegInstruction ins = code.get(i);
+            if (ins.a >= 0 && ins.b >= 0 && ins.c >= 0) continue;
+            code.set(i, new RegInstruction(ins.op,
+                    relocate(ins.a, aIsInt(ins.op), realBase, intBase),
+                    relocate(ins.b, bIsInt(ins.op), realBase, intBase),
+                    relocate(ins.c, bIsInt(ins.op), realBase, intBase),
+                    ins.name, ins.jumpTarget));
+        }
+    }
+
+    private static int relocate(int reg, boolean isInt, int realBase, int intBase) {
+        if (reg >= 0) return reg;
+        return (isInt ? intBase : realBase) + (-1 - reg);
+    }
+
+    // Banco do operando a e dos operandos b/c de cada operação
+    private static boolean aIsInt(RegOp op) {
+        return op == RegOp.D2I || (op != RegOp.I2D && op.name().startsWith("I") && op != RegOp.INPUT);
+    }
+
+    private static boolean bIsInt(RegOp op) {
+        return op == RegOp.I2D || (op != RegOp.D2I && op.name().startsWith("I") && op != RegOp.INPUT);
+    }
+
+    private void genStmt(Stmt stmt) {
+        realTemps = 0;
+        intTemps = 0;
+        if (stmt instanceof Stmt.VarDecl) {
+            // Toda declaração zera o registrador: os de um bloco são
+            // reaproveitados depois dele, por outro bloco ou por uma
+            // declaração do nível de cima
+            Stmt.VarDecl v = (Stmt.VarDecl) stmt;
+            if (v.type.type == TokenType.INT) {
+                code.add(new RegInstruction(RegOp.IMOV, v.slot, intConstant(0), 0));
+            } else {
+                code.add(new RegInstruction(RegOp.MOV, v.slot, realConstant(0.0), 0));
+            }
+        } else if (stmt instanceof Stmt.Assign) {
+            Stmt.Assign a = (Stmt.Assign) stmt;
+            boolean intVar = "int".equals(a.varType);
+            int value = genExpr(a.value, intVar, a.slot);
+            if (value != a.slot) {
+                code.add(new RegInstruction(intVar ? RegOp.IMOV : RegOp.MOV, a.slot, value, 0));
+            }
+        } else if (stmt instanceof Stmt.Print) {
+            // Valores int são impressos no mesmo formato dos real
+            Expr e = ((Stmt.Print) stmt).expression;
+            boolean intExpr = e.isInt() && !(e instanceof Expr.Literal);
+            int value = genExpr(e, intExpr, -1);
+            code.add(new RegInstruction(intExpr ? RegOp.IPRINT : RegOp.PRINT, value, 0, 0));
+        } else if (stmt instanceof Stmt.Input) {
+            Stmt.Input i = (Stmt.Input) stmt;
+            RegOp op = "int".equals(i.varType) ? RegOp.IINPUT : RegOp.INPUT;
+            code.add(new RegInstruction(op, i.slot, i.name.lexeme));
+        } else if (stmt instanceof Stmt.ExpressionStmt) {
+            // Só as operações têm efeito (divisão inteira por zero); variáveis
+            // e constantes soltas não geram nada
+            Expr e = ((Stmt.ExpressionStmt) stmt).expression;
+            genExpr(e, e.isInt(), -1);
+        } else if (stmt instanceof Stmt.Block) {
+            for (Stmt s : ((Stmt.Block) stmt).statements) {
+                genStmt(s);
+            }
+        } else if (stmt instanceof Stmt.If) {
+            genIf((Stmt.If) stmt);
+        } else if (stmt instanceof Stmt.While) {
+            genWhile((Stmt.While) stmt);
+        }
+    }
+
+    private void genIf(Stmt.If stmt) {
+        int jmpIfFalseIndex = genCondition(stmt.condition);
+        genStmt(stmt.thenBranch);
+        if (stmt.elseBranch != null) {
+            int jmpEndIndex = code.size();
+            code.add(jump(RegOp.JMP, 0, 0));
+            code.get(jmpIfFalseIndex).jumpTarget = code.size();
+            genStmt(stmt.elseBranch);
+            code.get(jmpEndIndex).jumpTarget = code.size();
+        } else {
+            code.get(jmpIfFalseIndex).jumpTarget = code.size();
+        }
+    }
+
+    private void genWhile(Stmt.While stmt) {
+        int loopStart = code.size();
+
+        // Condição constante verdadeira (deixada pelo AstOptimizer): não testa
+        if (stmt.condition instanceof Expr.Literal && ((Expr.Literal) stmt.condition).value != 0.0) {
+            genStmt(stmt.body);
+            RegInstruction back = jump(RegOp.JMP, 0, 0);
+            back.jumpTarget = loopStart;
+            code.add(back);
+            return;
+        }
+
+        int jmpIfFalseIndex = genCondition(stmt.condition);
+        genStmt(stmt.body);
+        RegInstruction back = jump(RegOp.JMP, 0, 0);
+        back.jumpTarget = loopStart;
+        code.add(back);
+        code.get(jmpIfFalseIndex).jumpTarget = code.size();
+    }
+
+    // Gera o salto para quando a condição é falsa (destino a corrigir).
+    // Uma comparação vira um único salto condicional sobre os operandos.
+    private int genCondition(Expr condition) {
+        realTemps = 0;
+        intTemps = 0;
+        Expr c = condition;
+        while (c instanceof Expr.Grouping) c = ((Expr.Grouping) c).expression;
+
+        RegInstruction jump;
+        if (c instanceof Expr.Binary && branchOp((Expr.Binary) c) != null) {
+            Expr.Binary b = (Expr.Binary) c;
+            boolean intExpr = b.isInt();
+            int left = genExpr(b.left, intExpr, -1);
+            int right = genExpr(b.right, intExpr, -1);
+            jump = jump(branchOp(b), left, right);
+        } else {
+            boolean intExpr = c.isInt();
+            int value = genExpr(c, intExpr, -1);
+            jump = jump(intExpr ? RegOp.IJMP_IF_FALSE : RegOp.JMP_IF_FALSE, value, 0);
+        }
+        code.add(jump);
+        return code.size() - 1;
+    }
+
+    private static RegOp branchOp(Expr.Binary b) {
+        boolean i = b.isInt();
+        switch (b.operator.type) {
+            case EQUAL_EQUAL:   return i ? RegOp.IJMP_IF_NOT_EQ : RegOp.JMP_IF_NOT_EQ;
+            case BANG_EQUAL:    return i ? RegOp.IJMP_IF_NOT_NEQ : RegOp.JMP_IF_NOT_NEQ;
+            case GREATER:       return i ? RegOp.IJMP_IF_NOT_GT : RegOp.JMP_IF_NOT_GT;
+            case GREATER_EQUAL: return i ? RegOp.IJMP_IF_NOT_GTE : RegOp.JMP_IF_NOT_GTE;
+            case LESS:          return i ? RegOp.IJMP_IF_NOT_LT : RegOp.JMP_IF_NOT_LT;
+            case LESS_EQUAL:    return i ? RegOp.IJMP_IF_NOT_LTE : RegOp.JMP_IF_NOT_LTE;
+            default:            return null;
+        }
+    }
+
+    private static RegInstruction jump(RegOp op, int a, int b) {
+        return new RegInstruction(op, a, b, 0, null, -1);
+    }
+
+    // Devolve o registrador com o valor da expressão no banco pedido.
+    // `into` (ou -1) é onde a operação mais externa deve escrever; quem
+    // chama confere se o resultado ficou mesmo lá (variáveis e constantes
+    // são devolvidas no próprio registrador).
+    private int genExpr(Expr expr, boolean asInt, int into) {
+        if (expr instanceof Expr.Grouping) {
+            return genExpr(((Expr.Grouping) expr).expression, asInt, into);
+        }
+        // Constantes já saem no tipo pedido, sem instrução de conversão
+        if (expr instanceof Expr.Literal) {
+            double value = ((Expr.Literal) expr).value;
+            return asInt ? intConstant((long) value) : realConstant(value);
+        }
+        if (expr.isInt() != asInt) {
+            int value = genExpr(expr, !asInt, -1);
+            int dst = into >= 0 ? into : temp(asInt);
+            code.add(new RegInstruction(asInt ? RegOp.D2I : RegOp.I2D, dst, value, 0));
+            return dst;
+        }
+        if (expr instanceof Expr.Variable) {
+            return ((Expr.Variable) expr).slot;
+        }
+        if (expr instanceof Expr.Unary) {
+            Expr.Unary u = (Expr.Unary) expr;
+            if (u.operator.type != TokenType.MINUS) {
+                return genExpr(u.right, asInt, into);
+            }
+            int savedReal = realTemps;
+            int savedInt = intTemps;
+            int value = genExpr(u.right, asInt, -1);
+            realTemps = savedReal;
+            intTemps = savedInt;
+            int dst = into >= 0 ? into : temp(asInt);
+            int zero = asInt ? intConstant(0) : realConstant(0.0);
+            code.add(new RegInstruction(asInt ? RegOp.ISUB : RegOp.SUB, dst, zero, value));
+            return dst;
+        }
+        if (expr instanceof Expr.Binary) {
+            Expr.Binary b = (Expr.Binary) expr;
+            // Os temporários dos operandos ficam livres assim que a
+            // operação os lê, e o destino pode reaproveitá-los
+            int savedReal = realTemps;
+            int savedInt = intTemps;
+            int left = genExpr(b.left, asInt, -1);
+            int right = genExpr(b.right, asInt, -1);
+            realTemps = savedReal;
+            intTemps = savedInt;
+            int dst = into >= 0 ? into : temp(asInt);
+            code.add(new RegInstruction(binaryOp(b, asInt), dst, left, right));
+            return dst;
+        }
+        throw new RuntimeException("Tipo de expressão desconhecido.");
+    }
+
+    private static RegOp binaryOp(Expr.Binary b, boolean i) {
+        switch (b.operator.type) {
+            case PLUS:          return i ? RegOp.IADD : RegOp.ADD;
+            case MINUS:         return i ? RegOp.ISUB : RegOp.SUB;
+            case STAR:          return i ? RegOp.IMUL : RegOp.MUL;
+            case SLASH:         return i ? RegOp.IDIV : RegOp.DIV;
+            case EQUAL_EQUAL:   return i ? RegOp.ICMP_EQ : RegOp.CMP_EQ;
+            case BANG_EQUAL:    return i ? RegOp.ICMP_NEQ : RegOp.CMP_NEQ;
+            case GREATER:       return i ? RegOp.ICMP_GT : RegOp.CMP_GT;
+            case GREATER_EQUAL: return i ? RegOp.ICMP_GTE : RegOp.CMP_GTE;
+            case LESS:          return i ? RegOp.ICMP_LT : RegOp.CMP_LT;
+            case LESS_EQUAL:    return i ? RegOp.ICMP_LTE : RegOp.CMP_LTE;
+            default:
+                throw new RuntimeException("Operador não suportado: " + b.operator.lexeme);
+        }
+    }
+
+    private int temp(boolean isInt) {
+        if (isInt) {
+            int reg = frameSize + intTemps++;
+            if (intTemps > maxIntTemps) maxIntTemps = intTemps;
+            return reg;
+        }
+        int reg = frameSize + realTemps++;
+        if (realTemps > maxRealTemps) maxRealTemps = realTemps;
+        return reg;
+    }
+
+    // Chave pelos bits para diferenciar 0.0 de -0.0
+    private int realConstant(double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        Integer index = realConstantIndex.get(bits);
+        if (index == null) {
+            index = realConstants.size();
+            realConstants.add(value);
+            realConstantIndex.put(bits, index);
+        }
+        return -1 - index;
+    }
+
+    private int intConstant(long value) {
+        Integer index = intConstantIndex.get(value);
+        if (index == null) {
+            index = intConstants.size();
+            intConstants.add(value);
+            intConstantIndex.put(value, index);
+        }
+        return -1 - index;
+    }
+}
@@ -0,0 +1,217 @@
+import java.util.List;
+
+// Interpretador do código de registradores gerado pelo
+// RegisterCodeGenerator. Os dois bancos começam com o conteúdo inicial
+// dado pelo gerador (zeros nas variáveis, constantes no fim).
+public class RegisterInterpreter {
+
+    private final RegInstruction[] code;
+    private final double[] r;
+    private final long[] l;
+    private final VmIo io;
+    private long executed = 0;
+
+    public RegisterInterpreter(List<RegInstruction> code, double[] realRegisters, long[] intRegisters) {
+        this(code, realRegisters, intRegisters, new VmIo());
+    }
+
+    public RegisterInterpreter(List<RegInstruction> code, double[] realRegisters, long[] intRegisters,
+                               VmIo io) {
+        this.code = code.toArray(new RegInstruction[0]);
+        this.r = realRegisters.clone();
+        this.l = intRegisters.clone();
+        this.io = io;
+    }
+
+    // Instruções despachadas pela última execução
+    public long getExecutedCount() {
+        return executed;
+    }
+
+    public void run() {
+        try {
+            loop();
+        } finally {
+            io.flush();
+        }
+    }
+
+    private void loop() {
+        final RegInstruction[] code = this.code;
+        final double[] r = this.r;
+        final long[] l = this.l;
+        long executed = 0;
+        int pc = 0;
+
+        try {
+            while (pc < code.length) {
+                RegInstruction ins = code[pc];
+                executed++;
+
+                switch (ins.op) {
+                    case MOV:
+                        r[ins.a] = r[ins.b];
+                        pc++;
+                        break;
+                    case ADD:
+                        r[ins.a] = r[ins.b] + r[ins.c];
+                        pc++;
+                        break;
+                    case SUB:
+                        r[ins.a] = r[ins.b] - r[ins.c];
+                        pc++;
+                        break;
+                    case MUL:
+                        r[ins.a] = r[ins.b] * r[ins.c];
+                        pc++;
+                        break;
+                    case DIV:
+                        r[ins.a] = r[ins.b] / r[ins.c];
+                        pc++;
+                        break;
+                    case CMP_EQ:
+                        r[ins.a] = r[ins.b] == r[ins.c] ? 1.0 : 0.0;
+                        pc++;
+                        break;
+                    case CMP_NEQ:
+                        r[ins.a] = r[ins.b] != r[ins.c] ? 1.0 : 0.0;
+                        pc++;
+                        break;
+                    case CMP_GT:
+                        r[ins.a] = r[ins.b] > r[ins.c] ? 1.0 : 0.0;
+                        pc++;
+                        break;
+                    case CMP_GTE:
+                        r[ins.a] = r[ins.b] >= r[ins.c] ? 1.0 : 0.0;
+                        pc++;
+                        break;
+                    case CMP_LT:
+                        r[ins.a] = r[ins.b] < r[ins.c] ? 1.0 : 0.0;
+                        pc++;
+                        break;
+                    case CMP_LTE:
+                        r[ins.a] = r[ins.b] <= r[ins.c] ? 1.0 : 0.0;
+                        pc++;
+                        break;
+                    case PRINT:
+                        io.print(r[ins.a]);
+                        pc++;
+                        break;
+                    case INPUT:
+                        r[ins.a] = io.input(ins.name);
+                        pc++;
+                        break;
+                    case JMP:
+                        pc = ins.jumpTarget;
+                        break;
+                    case JMP_IF_FALSE:
+                        pc = r[ins.a] == 0.0 ? ins.jumpTarget : pc + 1;
+                        break;
+                    case JMP_IF_NOT_EQ:
+                        pc = r[ins.a] == r[ins.b] ? pc + 1 : ins.jumpTarget;
+                        break;
+                    case JMP_IF_NOT_NEQ:
+                        pc = r[ins.a] != r[ins.b] ? pc + 1 : ins.jumpTarget;
+                        break;
+                    case JMP_IF_NOT_GT:
+                        pc = r[ins.a] > r[ins.b] ? pc + 1 : ins.jumpTarget;
+                        break;
+                    case JMP_IF_NOT_GTE:
+                        pc = r[ins.a] >= r[ins.b] ? pc + 1 : ins.jumpTarget;
+                        break;
+                    case JMP_IF_NOT_LT:
+                        pc = r[ins.a] < r[ins.b] ? pc + 1 : ins.jumpTarget;
+                        break;
+                    case JMP_IF_NOT_LTE:
+                        pc = r[ins.a] <= r[ins.b] ? pc + 1 : ins.jumpTarget;
+                        break;
+                    case IMOV:
+                        l[ins.a] = l[ins.b];
+                        pc++;
+                        break;
+                    case IADD:
+                        l[ins.a] = l[ins.b] + l[ins.c];
+                        pc++;
+                        break;
+                    case ISUB:
+                        l[ins.a] = l[ins.b] - l[ins.c];
+                        pc++;
+                        break;
+                    case IMUL:
+                        l[ins.a] = l[ins.b] * l[ins.c];
+                        pc++;
+                        break;
+                    case IDIV:
+                        l[ins.a] = l[ins.b] / Interpreter.checkDivisor(l[ins.c]);
+                        pc++;
+                        break;
+                    case ICMP_EQ:
+                        l[ins.a] = l[ins.b] == l[ins.c] ? 1 : 0;
+                        pc++;
+                        break;
+                    case ICMP_NEQ:
+                        l[ins.a] = l[ins.b] != l[ins.c] ? 1 : 0;
+                        pc++;
+                        break;
+                    case ICMP_GT:
+                        l[ins.a] = l[ins.b] > l[ins.c] ? 1 : 0;
+                        pc++;
+                        break;
+                    case ICMP_GTE:
+                        l[ins.a] = l[ins.b] >= l[ins.c] ? 1 : 0;
+                        pc++;
+                        break;
+                    case ICMP_LT:
+                        l[ins.a] = l[ins.b] < l[ins.c] ? 1 : 0;
+                        pc++;
+                        break;
+                    case ICMP_LTE:
+                        l[ins.a] = l[ins.b] <= l[ins.c] ? 1 : 0;
+                        pc++;
+                        break;
+                    case IPRINT:
+                        io.print((double) l[ins.a]);
+                        pc++;
+                        break;
+                    case IINPUT:
+                        l[ins.a] = (long) io.input(ins.name);
+                        pc++;
+                        break;
+                    case IJMP_IF_FALSE:
+                        pc = l[ins.a] == 0 ? ins.jumpTarget : pc + 1;
+                        break;
+                    case IJMP_IF_NOT_EQ:
+                        pc = l[ins.a] == l[ins.b] ? pc + 1 : ins.jumpTarget;
+                        break;
+                    case IJMP_IF_NOT_NEQ:
+                        pc = l[ins.a] != l[ins.b] ? pc + 1 : ins.jumpTarget;
+                        break;
+                    case IJMP_IF_NOT_GT:
+                        pc = l[ins.a] > l[ins.b] ? pc + 1 : ins.jumpTarget;
+                        break;
+                    case IJMP_IF_NOT_GTE:
+                        pc = l[ins.a] >= l[ins.b] ? pc + 1 : ins.jumpTarget;
+                        break;
+                    case IJMP_IF_NOT_LT:
+                        pc = l[ins.a] < l[ins.b] ? pc + 1 : ins.jumpTarget;
+                        break;
+                    case IJMP_IF_NOT_LTE:
+                        pc = l[ins.a] <= l[ins.b] ? pc + 1 : ins.jumpTarget;
+                        break;
+                    case I2D:
+                        r[ins.a] = (double) l[ins.b];
+                        pc++;
+                        break;
+                    case D2I:
+                        l[ins.a] = (long) r[ins.b];
+                        pc++;
+                        break;
+                    default:
+                        throw new RuntimeException("Opcode desconhecido: " + ins.op);
+                }
+            }
+        } finally {
+            this.executed = executed;
+        }
+    }
+}
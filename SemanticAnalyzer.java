@@ -1,72 +1,207 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 public class SemanticAnalyzer {
 
-    private final Map<String, String> symbolTable = new HashMap<>();
+    private static class Symbol {
+        final String type;
+        final int slot;
+        final int scope; // profundidade do escopo da declaração
 
+        Symbol(String type, int slot, int scope) {
+            this.type = type;
+            this.slot = slot;
+            this.scope = scope;
+        }
+    }
+
+    // Para cada nome, as declarações visíveis com a mais interna no topo:
+    // resolver um nome não depende de quantos escopos estão abertos
+    private final Map<String, Deque<Symbol>> symbols = new HashMap<>();
+    // Pilha de escopos com os nomes declarados em cada um, para desfazer
+    // as declarações ao sair do bloco; o primeiro é o do bloco mais interno
+    private final Deque<List<String>> scopes = new ArrayDeque<>();
+    private int nextSlot = 0;  // próximo slot livre no frame
+    private int slotCount = 0; // maior número de slots usados ao mesmo tempo
+
+    // Maior profundidade da árvore: comandos aninhados mais a altura da
+    // expressão mais funda. Passos recursivos usam isso para se proteger
+    private int maxDepth = 0;
+
+    // Pilhas de analyzeExpr, reaproveitadas entre as expressões
+    private final Deque<Expr> pending = new ArrayDeque<>();
+    private final Deque<Expr> order = new ArrayDeque<>();
+    private int[] heights = new int[16]; // altura de cada subárvore já tratada
+
+    // Lista de comandos em andamento na pilha explícita: um bloco, os
+    // ramos de um if ou o corpo de um while
+    private static final class Frame {
+        final List<Stmt> statements;
+        final int depth;
+        final boolean block;   // fecha um escopo ao terminar
+        final int firstSlot;   // slots do bloco são liberados ao sair dele
+        int next = 0;
+
+        Frame(List<Stmt> statements, int depth, boolean block, int firstSlot) {
+            this.statements = statements;
+            this.depth = depth;
+            this.block = block;
+            this.firstSlot = firstSlot;
+        }
+    }
+
+    // A árvore é percorrida com uma pilha explícita, sem recursão, então o
+    // aninhamento do programa não é limitado pela pilha Java.
+    //
+    // Chamadas seguintes continuam o mesmo programa: os comandos entram no
+    // escopo global das anteriores (o IncrementalCompiler analisa por partes)
     public void analyze(List<Stmt> program) {
-        for (Stmt stmt : program) {
-            analyzeStmt(stmt);
+        if (scopes.isEmpty()) scopes.push(new ArrayList<>());
+        Deque<Frame> frames = new ArrayDeque<>();
+        frames.push(new Frame(program, 1, false, 0));
+        while (!frames.isEmpty()) {
+            Frame frame = frames.peek();
+            if (frame.next == frame.statements.size()) {
+                frames.pop();
+                if (frame.block) {
+                    for (String name : scopes.pop()) symbols.get(name).pop();
+                    nextSlot = frame.firstSlot;
+                }
+                continue;
+            }
+            Stmt stmt = frame.statements.get(frame.next++);
+            int depth = frame.depth;
+            if (depth > maxDepth) maxDepth = depth;
+            if (stmt instanceof Stmt.VarDecl) {
+                Stmt.VarDecl v = (Stmt.VarDecl) stmt;
+                String name = v.name.lexeme;
+                Deque<Symbol> visible = symbols.computeIfAbsent(name, k -> new ArrayDeque<>());
+                if (!visible.isEmpty() && visible.peek().scope == scopes.size()) {
+                    throw new RuntimeException("Erro semântico: variável '" + name + "' já declarada.");
+                }
+                String typeName = v.type.type == TokenType.INT ? "int" : "real";
+                v.slot = nextSlot++;
+                if (nextSlot > slotCount) slotCount = nextSlot;
+                visible.push(new Symbol(typeName, v.slot, scopes.size()));
+                scopes.peek().add(name);
+            } else if (stmt instanceof Stmt.Assign) {
+                Stmt.Assign a = (Stmt.Assign) stmt;
+                Symbol symbol = resolve(a.name);
+                a.slot = symbol.slot;
+                a.varType = symbol.type;
+                analyzeExpr(a.value, depth);
+            } else if (stmt instanceof Stmt.Print) {
+                analyzeExpr(((Stmt.Print) stmt).expression, depth);
+            } else if (stmt instanceof Stmt.Input) {
+                Stmt.Input i = (Stmt.Input) stmt;
+                Symbol symbol = resolve(i.name);
+                i.slot = symbol.slot;
+                i.varType = symbol.type;
+            } else if (stmt instanceof Stmt.Block) {
+                scopes.push(new ArrayList<>());
+                frames.push(new Frame(((Stmt.Block) stmt).statements, depth + 1, true, nextSlot));
+            } else if (stmt instanceof Stmt.If) {
+                Stmt.If i = (Stmt.If) stmt;
+                analyzeExpr(i.condition, depth);
+                List<Stmt> branches = i.elseBranch == null
+                        ? Collections.singletonList(i.thenBranch)
+                        : Arrays.asList(i.thenBranch, i.elseBranch);
+                frames.push(new Frame(branches, depth + 1, false, 0));
+            } else if (stmt instanceof Stmt.While) {
+                Stmt.While w = (Stmt.While) stmt;
+                analyzeExpr(w.condition, depth);
+                frames.push(new Frame(Collections.singletonList(w.body), depth + 1, false, 0));
+            } else if (stmt instanceof Stmt.ExpressionStmt) {
+                analyzeExpr(((Stmt.ExpressionStmt) stmt).expression, depth);
+            }
         }
     }
 
-    private void analyzeStmt(Stmt stmt) {
-        if (stmt instanceof Stmt.VarDecl) {
-            Stmt.VarDecl v = (Stmt.VarDecl) stmt;
-            String name = v.name.lexeme;
-            if (symbolTable.containsKey(name)) {
-                throw new RuntimeException("Erro semântico: variável '" + name + "' já declarada.");
+    // Tamanho do frame necessário para executar o programa analisado
+    public int getSlotCount() {
+        return slotCount;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    // Resolve as variáveis e infere o tipo de cada expressão: uma operação
+    // é int só quando os dois operandos são int, senão é real. Comparações
+    // têm o tipo dos operandos (1 ou 0 como int, 1.0 ou 0.0 como real).
+    //
+    // Os nós são visitados em pós-ordem (filhos da esquerda para a direita
+    // antes do pai) com duas pilhas: a primeira desce a árvore e a segunda
+    // guarda os nós na ordem inversa em que devem ser tratados.
+    private void analyzeExpr(Expr root, int depth) {
+        // Folha (o caso mais comum) não precisa das pilhas
+        if (root instanceof Expr.Variable || root instanceof Expr.Literal) {
+            analyzeLeaf(root);
+            if (depth + 1 > maxDepth) maxDepth = depth + 1;
+            return;
+        }
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Expr expr = pending.pop();
+            order.push(expr);
+            if (expr instanceof Expr.Binary) {
+                pending.push(((Expr.Binary) expr).left);
+                pending.push(((Expr.Binary) expr).right);
+            } else if (expr instanceof Expr.Unary) {
+                pending.push(((Expr.Unary) expr).right);
+            } else if (expr instanceof Expr.Grouping) {
+                pending.push(((Expr.Grouping) expr).expression);
             }
-            String typeName = v.type.type == TokenType.INT ? "int" : "real";
-            symbolTable.put(name, typeName);
-        } else if (stmt instanceof Stmt.Assign) {
-            Stmt.Assign a = (Stmt.Assign) stmt;
-            checkVarDeclared(a.name);
-            analyzeExpr(a.value);
-        } else if (stmt instanceof Stmt.Print) {
-            analyzeExpr(((Stmt.Print) stmt).expression);
-        } else if (stmt instanceof Stmt.Input) {
-            Stmt.Input i = (Stmt.Input) stmt;
-            checkVarDeclared(i.name);
-        } else if (stmt instanceof Stmt.Block) {
-            for (Stmt s : ((Stmt.Block) stmt).statements) {
-                analyzeStmt(s);
+        }
+
+        int top = 0;
+        while (!order.isEmpty()) {
+            Expr expr = order.pop();
+            if (top + 1 > heights.length) heights = Arrays.copyOf(heights, heights.length * 2);
+            if (expr instanceof Expr.Binary) {
+                Expr.Binary b = (Expr.Binary) expr;
+                b.type = b.left.isInt() && b.right.isInt() ? "int" : "real";
+                top--;
+                heights[top - 1] = Math.max(heights[top - 1], heights[top]) + 1;
+            } else if (expr instanceof Expr.Unary) {
+                Expr.Unary u = (Expr.Unary) expr;
+                u.type = u.right.type;
+                heights[top - 1]++;
+            } else if (expr instanceof Expr.Grouping) {
+                Expr.Grouping g = (Expr.Grouping) expr;
+                g.type = g.expression.type;
+                heights[top - 1]++;
+            } else {
+                analyzeLeaf(expr);
+                heights[top++] = 1;
             }
-        } else if (stmt instanceof Stmt.If) {
-            Stmt.If i = (Stmt.If) stmt;
-            analyzeExpr(i.condition);
-            analyzeStmt(i.thenBranch);
-            if (i.elseBranch != null) analyzeStmt(i.elseBranch);
-        } else if (stmt instanceof Stmt.While) {
-            Stmt.While w = (Stmt.While) stmt;
-            analyzeExpr(w.condition);
-            analyzeStmt(w.body);
-        } else if (stmt instanceof Stmt.ExpressionStmt) {
-            analyzeExpr(((Stmt.ExpressionStmt) stmt).expression);
         }
+        if (depth + heights[0] > maxDepth) maxDepth = depth + heights[0];
     }
 
-    private void analyzeExpr(Expr expr) {
-        if (expr instanceof Expr.Binary) {
-            Expr.Binary b = (Expr.Binary) expr;
-            analyzeExpr(b.left);
-            analyzeExpr(b.right);
-        } else if (expr instanceof Expr.Unary) {
-            analyzeExpr(((Expr.Unary) expr).right);
-        } else if (expr instanceof Expr.Grouping) {
-            analyzeExpr(((Expr.Grouping) expr).expression);
-        } else if (expr instanceof Expr.Variable) {
-            checkVarDeclared(((Expr.Variable) expr).name);
+    private void analyzeLeaf(Expr expr) {
+        if (expr instanceof Expr.Variable) {
+            Expr.Variable v = (Expr.Variable) expr;
+            Symbol symbol = resolve(v.name);
+            v.slot = symbol.slot;
+            v.type = symbol.type;
         } else if (expr instanceof Expr.Literal) {
-            // ok
+            Expr.Literal l = (Expr.Literal) expr;
+            l.type = l.integral ? "int" : "real";
         }
     }
 
-    private void checkVarDeclared(Token name) {
-        if (!symbolTable.containsKey(name.lexeme)) {
+    private Symbol resolve(Token name) {
+        Deque<Symbol> visible = symbols.get(name.lexeme);
+        if (visible == null || visible.isEmpty()) {
             throw new RuntimeException("Erro semântico: variável '" + name.lexeme + "' não declarada.");
         }
+        return visible.peek();
     }
 }
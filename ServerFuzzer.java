@@ -0,0 +1,213 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Teste do CompileServer com clientes que nunca leem: sobe um servidor
+// nesta JVM e abre mais conexões do que há threads no escalonador, cada
+// uma com um programa que imprime sem parar, sem ler nada do que volta.
+// Com elas penduradas, clientes normais mandam programas aleatórios (laços
+// com PRINT e INPUT), até três quartos do prazo (os buffers dos sockets
+// levam um tempo para encher), e cada resposta precisa
+//   - ser a saída do CompiledProgram.run com a mesma entrada, seguida de
+//     uma linha #OK;
+//   - chegar antes do prazo do servidor: um programa preso esperando um
+//     cliente que não lê não pode segurar as threads dos outros.
+// Por fim cada conexão que nunca leu precisa ser fechada pelo servidor
+// (fim do fluxo ou conexão reiniciada) em até duas vezes o prazo.
+//
+// Uso:
+//   java ServerFuzzer [--seed N] [--clients N] [--stalled N] [--timeout ms]
+//   --seed N      semente dos programas (padrão 1)
+//   --clients N   mínimo de clientes normais (padrão 200)
+//   --stalled N   clientes que não leem (padrão 2 por processador + 2)
+//   --timeout ms  prazo do servidor (padrão 3000)
+//
+// Na primeira falha mostra o programa (ou a conexão) e termina com código 1.
+public class ServerFuzzer {
+
+    // Imprime para sempre: só para pelo prazo ou com a conexão fechada
+    private static final String FLOOD = "int i; i = 0; while (i >= 0) { print i; i = i + 1; }\n";
+
+    public static void main(String[] args) throws Exception {
+        long seed = 1;
+        int clients = 200;
+        int stalled = 2 * Runtime.getRuntime().availableProcessors() + 2;
+        long timeout = 3000;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--seed":    seed = Long.parseLong(args[++i]); break;
+                case "--clients": clients = Integer.parseInt(args[++i]); break;
+                case "--stalled": stalled = Integer.parseInt(args[++i]); break;
+                case "--timeout": timeout = Long.parseLong(args[++i]); break;
+                default:
+                    throw new RuntimeException("Opção desconhecida: " + args[i]);
+            }
+        }
+
+        int port;
+        try (ServerSocket probe = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            port = probe.getLocalPort();
+        }
+        CompileServer server = new CompileServer(Integer.toString(port), CompileOptions.DEFAULT, timeout,
+                CompileServer.DEFAULT_MAX_INSTRUCTIONS);
+        Thread serving = new Thread(() -> {
+            try {
+                server.serve();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }, "servidor");
+        serving.setDaemon(true);
+        serving.start();
+        waitForServer(port);
+
+        // Clientes que mandam o programa e não leem; o buffer de recepção
+        // pequeno faz a saída encher o servidor mais cedo
+        List<Socket> floods = new ArrayList<>();
+        long stalledAt = System.nanoTime();
+        for (int i = 0; i < stalled; i++) {
+            Socket socket = new Socket();
+            socket.setReceiveBufferSize(4096);
+            socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+            socket.getOutputStream().write(request(FLOOD, ""));
+            socket.shutdownOutput();
+            floods.add(socket);
+        }
+        // Tempo para as saídas passarem do limite e os programas pararem
+        Thread.sleep(Math.min(500, timeout / 4));
+
+        Random random = new Random(seed);
+        long slowest = 0;
+        long normalUntil = stalledAt + timeout * 3 / 4 * 1_000_000L;
+        int answered = 0;
+        for (int i = 0; i < clients || System.nanoTime() < normalUntil; i++) {
+            String source = program(random);
+            int n = random.nextInt(2000);
+            String input = n + " " + (random.nextInt(19) - 9);
+            String expected = CompiledProgram.compile(source).run(n, Double.parseDouble(input.split(" ")[1]));
+            long start = System.nanoTime();
+            String answer;
+            try {
+                answer = exchange(port, source, input, timeout);
+            } catch (SocketTimeoutException e) {
+                fail("Sem resposta em " + timeout + " ms no cliente " + i + " (" + stalled
+                        + " conexão(ões) sem leitura abertas)", source, input);
+                return;
+            }
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            slowest = Math.max(slowest, millis);
+            int status = answer.lastIndexOf('#');
+            if (status < 0 || !answer.startsWith("#OK ", status) || !answer.substring(0, status).equals(expected)) {
+                fail("Resposta errada no cliente " + i + ":\n" + answer, source, input);
+                return;
+            }
+            answered++;
+        }
+        long answeredIn = (System.nanoTime() - stalledAt) / 1_000_000;
+
+        // As conexões sem leitura precisam estar fechadas pelo servidor
+        // depois de duas vezes o prazo. Só então o que ficou nelas é lido:
+        // ler antes deixaria o programa continuar.
+        long left = 2 * timeout - (System.nanoTime() - stalledAt) / 1_000_000;
+        if (left > 0) Thread.sleep(left);
+        for (int i = 0; i < floods.size(); i++) {
+            Socket socket = floods.get(i);
+            if (!closedBy(socket, 1000)) {
+                fail("Conexão sem leitura " + i + " continua aberta depois de " + 2 * timeout + " ms", FLOOD, "");
+                return;
+            }
+            socket.close();
+        }
+        System.out.println(answered + " cliente(s) respondido(s) em " + answeredIn + " ms (o mais lento em "
+                + slowest + " ms) com " + stalled + " conexão(ões) sem leitura, todas fechadas pelo servidor");
+        System.exit(0);
+    }
+
+    private static void waitForServer(int port) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            try {
+                new Socket(InetAddress.getLoopbackAddress(), port).close();
+                return;
+            } catch (IOException e) {
+                Thread.sleep(50);
+            }
+        }
+        throw new RuntimeException("O servidor não abriu a porta " + port);
+    }
+
+    // Laço com PRINT e INPUT: n vem da entrada, m também
+    private static String program(Random random) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("int n; int m; int i; real x;\n");
+        sb.append("input n; input m; i = 0; x = ").append(random.nextInt(5)).append(".5;\n");
+        sb.append("while (i < n) {\n");
+        int k = 2 + random.nextInt(50);
+        sb.append("    if (i - i / ").append(k).append(" * ").append(k).append(" == 0) { print i * m + x; }\n");
+        sb.append("    x = x + ").append(random.nextInt(3)).append(";\n");
+        sb.append("    i = i + ").append(1 + random.nextInt(3)).append(";\n");
+        sb.append("}\n");
+        sb.append("print x; print m;\n");
+        return sb.toString();
+    }
+
+    private static byte[] request(String source, String input) {
+        byte[] src = source.getBytes(StandardCharsets.UTF_8);
+        byte[] in = input.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(("RUN " + src.length + " " + in.length + "\n").getBytes(StandardCharsets.US_ASCII));
+        out.writeBytes(src);
+        out.writeBytes(in);
+        return out.toByteArray();
+    }
+
+    // A resposta inteira, até o servidor fechar; sem nada por `timeout` ms lança SocketTimeoutException
+    private static String exchange(int port, String source, String input, long timeout) throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            socket.setSoTimeout((int) timeout);
+            socket.getOutputStream().write(request(source, input));
+            socket.shutdownOutput();
+            return new String(socket.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    // Lê (e descarta) o que restou até o fim do fluxo ou um reinício da
+    // conexão; false se nada disso acontece em `millis` ou se chega mais
+    // do que o servidor guarda (o programa ainda estaria imprimindo)
+    private static boolean closedBy(Socket socket, long millis) throws IOException {
+        long deadline = System.nanoTime() + millis * 1_000_000L;
+        byte[] buffer = new byte[65536];
+        long received = 0;
+        InputStream in = socket.getInputStream();
+        while (true) {
+            long left = (deadline - System.nanoTime()) / 1_000_000;
+            if (left <= 0) return false;
+            socket.setSoTimeout((int) left);
+            try {
+                int n = in.read(buffer);
+                if (n < 0) return true;
+                received += n;
+                if (received > 8 * 1024 * 1024) return false;
+            } catch (SocketTimeoutException e) {
+                return false;
+            } catch (IOException e) {
+                return true;
+            }
+        }
+    }
+
+    private static void fail(String message, String source, String input) {
+        System.out.println(message);
+        System.out.println("--- programa:\n" + source);
+        System.out.println("--- entrada: " + input);
+        System.exit(1);
+    }
+}
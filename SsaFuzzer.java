@@ -0,0 +1,244 @@
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.DoubleSupplier;
+
+// Teste diferencial das otimizações e dos motores: gera programas
+// aleatórios e compara a saída de cada um compilado sem nenhuma otimização
+// e executado no interp com a saída de cada motor (interp, tiered com
+// limite 1, jvm, reg e ast) em cada combinação abaixo (sem otimizações,
+// SSA sozinho, SSA com o desenrolamento e as otimizações na árvore, e o
+// padrão do Main com e sem SSA). Os programas têm laços contados (os que o LoopUnroller e a redução
+// de força reconhecem, incluindo os com limite vindo do INPUT), if/else,
+// blocos com declarações e expressões int e real misturadas; todos
+// terminam. Uma divisão int por zero para a execução; a saída até ali e a
+// mensagem de erro também precisam ser as mesmas.
+//
+// Uso:
+//   java SsaFuzzer [--seed N] [--count N] [--print]
+//   --seed N     primeira semente (padrão 1); o programa i usa a semente N + i
+//   --count N    quantos programas (padrão 1000)
+//   --print      só mostra o programa da semente dada e termina
+//
+// Na primeira diferença mostra a semente, o programa, a configuração e as
+// duas saídas, e termina com código 1.
+public class SsaFuzzer {
+
+    private static final CompileOptions REFERENCE = new CompileOptions(false, 1, false, false);
+    private static final CompileOptions[] CONFIGS = {
+        REFERENCE,
+        new CompileOptions(false, 1, true, false),
+        new CompileOptions(false, 4, true, true),
+        new CompileOptions(true, 4, false, true),
+        CompileOptions.DEFAULT,
+    };
+    private static final String[] ENGINES = { "interp", "tiered", "jvm", "reg", "ast" };
+
+    public static void main(String[] args) {
+        long seed = 1;
+        int count = 1000;
+        boolean print = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--seed":  seed = Long.parseLong(args[++i]); break;
+                case "--count": count = Integer.parseInt(args[++i]); break;
+                case "--print": print = true; break;
+                default:
+                    throw new RuntimeException("Opção desconhecida: " + args[i]);
+            }
+        }
+        if (print) {
+            System.out.print(new SsaFuzzer(seed).program());
+            return;
+        }
+
+        for (int i = 0; i < count; i++) {
+            SsaFuzzer generator = new SsaFuzzer(seed + i);
+            String source = generator.program();
+            double[] input = { generator.random.nextInt(7) - 1, generator.random.nextInt(9) * 0.5 };
+            String expected = output(source, REFERENCE, "interp", input);
+            for (CompileOptions options : CONFIGS) {
+                for (String engine : ENGINES) {
+                    String actual = output(source, options, engine, input);
+                    if (!actual.equals(expected)) {
+                        System.out.println("Diferença na semente " + (seed + i) + " com " + options.key()
+                                + " no motor " + engine + ", entrada " + input[0] + " " + input[1]);
+                        System.out.println("--- programa:\n" + source);
+                        System.out.println("--- sem otimizações, interp:\n" + expected);
+                        System.out.println("--- " + engine + ":\n" + actual);
+                        System.exit(1);
+                    }
+                }
+            }
+        }
+        System.out.println(count + " programa(s) com a mesma saída em " + CONFIGS.length + " configuração(ões) e "
+                + ENGINES.length + " motor(es)");
+    }
+
+    // O texto impresso e, se a execução parou num erro, a mensagem depois
+    // dele (o que foi impresso antes do erro também é comparado)
+    private static String output(String source, CompileOptions options, String engine, double[] input) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int[] next = { 0 };
+        DoubleSupplier numbers = () -> input[next[0]++];
+        String error = "";
+        try {
+            CompileOptions.Result c = options.compile(new Parser(new Lexer(source)).parse(), new CompileMetrics(null));
+            VmIo io = new VmIo(new OutputSink(out, false, StandardCharsets.UTF_8), numbers, false);
+            switch (engine) {
+                case "interp":
+                    new Interpreter(c.program, io).run();
+                    break;
+                case "tiered":
+                    // Limite 1: todo laço é compilado na primeira volta
+                    new Interpreter(c.program, io, 1).run();
+                    break;
+                case "jvm":
+                    new JvmEngine(c.program, io).run();
+                    break;
+                case "reg": {
+                    RegisterCodeGenerator generator = new RegisterCodeGenerator(c.tree.slotCount);
+                    List<RegInstruction> code = generator.generate(c.tree.program);
+                    new RegisterInterpreter(code, generator.getRealRegisters(), generator.getIntRegisters(), io).run();
+                    break;
+                }
+                default:
+                    new AstEngine(c.tree.program, c.tree.slotCount, io).run();
+                    break;
+            }
+        } catch (RuntimeException e) {
+            error = "ERRO: " + e.getMessage();
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8) + error;
+    }
+
+    // ---------------- Gerador ----------------
+
+    private static final String[] INTS = { "a", "b", "c" };
+    private static final String[] REALS = { "x", "y" };
+    private static final String[] OPERATORS = { "+", "-", "*", "/", "+", "-", "*", "<", "<=", ">", ">=", "==", "!=" };
+    private static final int MAX_LOOP_DEPTH = 4;
+
+    private final Random random;
+    private final StringBuilder out = new StringBuilder();
+    private int locals = 0;
+
+    private SsaFuzzer(long seed) {
+        this.random = new Random(seed);
+    }
+
+    private String program() {
+        List<String> scope = new ArrayList<>();
+        for (String v : INTS) line(0, "int " + v + ";");
+        for (String v : REALS) line(0, "real " + v + ";");
+        // k0..k3 são os contadores dos laços, um por nível
+        line(0, "int k0; int k1; int k2; int k3;");
+        line(0, "input a; input x; int m; m = a * 2 - 1;");
+        for (String v : INTS) scope.add(v);
+        for (String v : REALS) scope.add(v);
+        scope.add("m");
+        int statements = 3 + random.nextInt(6);
+        for (int i = 0; i < statements; i++) statement(3, scope, 0, 0);
+        line(0, "print a; print b; print c; print x; print y;");
+        return out.toString();
+    }
+
+    private void statement(int depth, List<String> scope, int indent, int loopDepth) {
+        double kind = random.nextDouble();
+        if (depth <= 0 || kind < 0.35) {
+            line(indent, assignable(scope) + " = " + expression(3, scope) + ";");
+        } else if (kind < 0.55) {
+            line(indent, "print " + expression(3, scope) + ";");
+        } else if (kind < 0.7) {
+            line(indent, "if (" + expression(2, scope) + ") {");
+            body(depth, scope, indent, loopDepth);
+            if (random.nextBoolean()) {
+                line(indent, "} else {");
+                body(depth, scope, indent, loopDepth);
+            }
+            line(indent, "}");
+        } else if (kind < 0.85 && loopDepth < MAX_LOOP_DEPTH) {
+            loop(depth, scope, indent, loopDepth);
+        } else {
+            // Bloco com uma declaração local, lida no fim (o slot é reaproveitado)
+            String name = "l" + (++locals);
+            line(indent, "{");
+            line(indent + 1, (random.nextBoolean() ? "int " : "real ") + name + ";");
+            List<String> inner = new ArrayList<>(scope);
+            inner.add(name);
+            body(depth, inner, indent, loopDepth);
+            line(indent + 1, "print " + name + ";");
+            line(indent, "}");
+        }
+    }
+
+    // Laço contado: o contador só muda no passo do fim do corpo
+    private void loop(int depth, List<String> scope, int indent, int loopDepth) {
+        String k = "k" + loopDepth;
+        int n = random.nextInt(13);
+        int step = new int[] { 1, 1, 2, 3 }[random.nextInt(4)];
+        String less = random.nextBoolean() ? "<" : "<=";
+        String update;
+        switch (random.nextInt(4)) {
+            case 0:
+                line(indent, k + " = " + random.nextInt(3) + ";");
+                line(indent, "while (" + k + " " + less + " " + n + ") {");
+                update = k + " = " + k + " + " + step + ";";
+                break;
+            case 1:
+                line(indent, k + " = " + random.nextInt(3) + ";");
+                line(indent, "while (" + k + " " + less + " m + " + (n % 5) + ") {");
+                update = k + " = " + k + " + " + step + ";";
+                break;
+            case 2:
+                line(indent, k + " = " + n + ";");
+                line(indent, "while (" + k + " " + less.replace('<', '>') + " " + (random.nextInt(5) - 2) + ") {");
+                update = k + " = " + k + " - " + step + ";";
+                break;
+            default:
+                line(indent, k + " = " + random.nextInt(3) + ";");
+                line(indent, "while (" + k + " * 1.5 " + less + " " + n + ") {");
+                update = k + " = " + k + " + " + step + ";";
+                break;
+        }
+        List<String> inner = new ArrayList<>(scope);
+        inner.add(k);
+        body(depth, inner, indent, loopDepth + 1);
+        line(indent + 1, update);
+        line(indent, "}");
+    }
+
+    private void body(int depth, List<String> scope, int indent, int loopDepth) {
+        int statements = 1 + random.nextInt(3);
+        for (int i = 0; i < statements; i++) statement(depth - 1, scope, indent + 1, loopDepth);
+    }
+
+    private String expression(int depth, List<String> scope) {
+        if (depth <= 0 || random.nextDouble() < 0.3) {
+            if (random.nextBoolean()) return scope.get(random.nextInt(scope.size()));
+            int digit = random.nextInt(10);
+            if (random.nextDouble() < 0.6) return Integer.toString(digit);
+            return digit + "." + new String[] { "0", "5", "25" }[random.nextInt(3)];
+        }
+        double kind = random.nextDouble();
+        if (kind < 0.1) return "-" + expression(depth - 1, scope);
+        if (kind < 0.25) return "(" + expression(depth - 1, scope) + ")";
+        String operator = OPERATORS[random.nextInt(OPERATORS.length)];
+        return expression(depth - 1, scope) + " " + operator + " " + expression(depth - 1, scope);
+    }
+
+    // Contadores e m não recebem atribuições no corpo
+    private String assignable(List<String> scope) {
+        while (true) {
+            String v = scope.get(random.nextInt(scope.size()));
+            if (!v.startsWith("k") && !v.equals("m")) return v;
+        }
+    }
+
+    private void line(int indent, String text) {
+        for (int i = 0; i < indent; i++) out.append("    ");
+        out.append(text).append('\n');
+    }
+}
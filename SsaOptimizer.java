@@ -0,0 +1,1511 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Otimização global entre o CodeGenerator e o PeepholeOptimizer. O código
+// de pilha é dividido em blocos básicos (nos destinos de salto e depois de
+// cada salto), montado como grafo de fluxo e convertido para SSA pelo
+// algoritmo de Braun et al. (variáveis lidas e escritas por bloco, phis
+// criados sob demanda e removidos quando triviais). Sobre o SSA:
+//
+//   - propagação de cópias: vem de graça, ler uma variável devolve o
+//     próprio valor guardado nela
+//   - propagação e dobra de constantes, inclusive através de phis, e
+//     saltos condicionais com condição constante viram incondicionais
+//     (os blocos que ficam inalcançáveis são descartados)
+//   - numeração global de valores: uma operação já calculada num bloco
+//     dominante é reaproveitada em vez de recalculada
+//   - movimentação de código invariante: operações de um laço que só
+//     dependem de valores de fora dele sobem para antes do laço
+//   - eliminação de código morto: valores não usados (como atribuições a
+//     variáveis nunca lidas) não são gerados
+//
+// Depois o SSA volta a ser código de pilha. Um valor puro usado uma única
+// vez no mesmo bloco é recalculado na pilha no ponto de uso, como o
+// CodeGenerator faria; os demais valores e os phis ganham um slot. Os
+// phis são resolvidos com cópias paralelas no fim dos predecessores
+// (todos os valores empilhados antes de qualquer STORE), com as arestas
+// críticas divididas antes. Por fim os slots são recoloridos pela
+// vivacidade, para que o frame não cresça.
+//
+// PRINT, INPUT e divisão int por valor que pode ser zero ficam no lugar e
+// na ordem originais, então a saída e os erros de execução não mudam.
+// Código com outras instruções (já otimizado pelo peephole) ou com pilha
+// não vazia numa fronteira de bloco é devolvido sem alteração.
+public class SsaOptimizer {
+
+    // Maior inteiro que PUSH_CONST guarda sem perda (2^53)
+    private static final double MAX_EXACT = 9007199254740992.0;
+
+    // ---------------- IR ----------------
+
+    static final class Value {
+        final int id;
+        final OpCode op;         // null nos phis
+        final boolean isInt;     // banco long (int) ou double (real)
+        final List<Value> args = new ArrayList<>();
+        final double constant;   // PUSH_CONST/IPUSH_CONST
+        final String name;       // variável de origem (INPUT e phis)
+        Block block;
+        Value replacement;       // valor que substituiu este (phi trivial, GVN, dobra)
+        final List<Value> phiUsers = new ArrayList<>();
+        boolean live;
+        int uses;
+        Block useBlock;
+        int slot = -1;
+        int var = -1;            // variável de origem dos phis
+
+        Value(int id, OpCode op, boolean isInt, double constant, String name) {
+            this.id = id;
+            this.op = op;
+            this.isInt = isInt;
+            this.constant = constant;
+            this.name = name;
+        }
+
+        boolean isPhi() {
+            return op == null;
+        }
+
+        boolean isConst() {
+            return op == OpCode.PUSH_CONST || op == OpCode.IPUSH_CONST;
+        }
+
+        // Efeito visível ou possível erro: não pode mudar de lugar nem sumir
+        boolean isPinned() {
+            if (op == OpCode.PRINT || op == OpCode.INPUT || op == OpCode.IINPUT) return true;
+            if (op == OpCode.IDIV) {
+                Value divisor = resolve(args.get(1));
+                return !(divisor.isConst() && (long) divisor.constant != 0);
+            }
+            return false;
+        }
+
+        boolean isPure() {
+            return !isPhi() && !isConst() && !isPinned();
+        }
+
+        @Override
+        public String toString() {
+            return "v" + id;
+        }
+    }
+
+    static final class Block {
+        final int id;
+        final List<Block> preds = new ArrayList<>();
+        final List<Value> phis = new ArrayList<>();
+        final List<Value> items = new ArrayList<>();
+        // Fim do bloco: com `condition`, salta para `branchTarget` quando
+        // ela é falsa e segue para `next` quando verdadeira; sem ela segue
+        // para `next` (null só no bloco de saída)
+        Value condition;
+        Block branchTarget;
+        Block next;
+        boolean sealed;
+        boolean filled;
+        final Map<Integer, Value> currentDef = new HashMap<>();
+        final Map<Integer, Value> incompletePhis = new HashMap<>();
+        Block idom;
+        int rpo = -1;
+        final List<Block> domChildren = new ArrayList<>();
+        int domEnter = -1; // intervalo do bloco num percurso da árvore de dominadores
+        int domExit = -1;
+
+        Block(int id) {
+            this.id = id;
+        }
+
+        List<Block> succs() {
+            List<Block> s = new ArrayList<>(2);
+            if (next != null) s.add(next);
+            if (condition != null) s.add(branchTarget);
+            return s;
+        }
+
+        void replaceSucc(Block from, Block to) {
+            if (next == from) next = to;
+            if (branchTarget == from) branchTarget = to;
+        }
+
+        @Override
+        public String toString() {
+            return "B" + id;
+        }
+    }
+
+    private int nextValueId = 0;
+    private int nextBlockId = 0;
+    private final List<Block> layout = new ArrayList<>();
+    private Block entry;
+    private Block exit;
+    private final Map<Long, Value> realConstants = new HashMap<>();
+    private final Map<Long, Value> intConstants = new HashMap<>();
+    private final Map<Integer, String> varNames = new HashMap<>();
+    private final Deque<Value> pendingPhis = new ArrayDeque<>();
+
+    // Estatísticas da última execução
+    private int foldedValues = 0;
+    private int numberedValues = 0;
+    private int hoistedValues = 0;
+    private int reducedValues = 0;
+
+    public List<Instruction> optimize(List<Instruction> code) {
+        if (!build(code)) return code;
+        simplifyConstants();
+        reassociate();
+        computeDominators();
+        numberValues();
+        hoistInvariants();
+        reduceStrength();
+        numberValues();
+        eliminateDeadCode();
+        List<Instruction> lowered = lower();
+        return compactSlots(lowered);
+    }
+
+    public int getFoldedValues() {
+        return foldedValues;
+    }
+
+    public int getNumberedValues() {
+        return numberedValues;
+    }
+
+    public int getHoistedValues() {
+        return hoistedValues;
+    }
+
+    public int getReducedValues() {
+        return reducedValues;
+    }
+
+    static Value resolve(Value v) {
+        while (v.replacement != null) v = v.replacement;
+        return v;
+    }
+
+    private Value newValue(OpCode op, boolean isInt, double constant, String name, Block block) {
+        Value v = new Value(nextValueId++, op, isInt, constant, name);
+        v.block = block;
+        return v;
+    }
+
+    private Value constant(double value, boolean isInt) {
+        Map<Long, Value> pool = isInt ? intConstants : realConstants;
+        long key = isInt ? (long) value : Double.doubleToRawLongBits(value);
+        Value c = pool.get(key);
+        if (c == null) {
+            c = newValue(isInt ? OpCode.IPUSH_CONST : OpCode.PUSH_CONST, isInt, value, null, null);
+            pool.put(key, c);
+        }
+        return c;
+    }
+
+    // ---------------- Construção: blocos, grafo e SSA ----------------
+
+    private static boolean supported(OpCode op) {
+        switch (op) {
+            case PUSH_CONST: case LOAD_VAR: case STORE_VAR:
+            case ADD: case SUB: case MUL: case DIV:
+            case CMP_EQ: case CMP_NEQ: case CMP_GT: case CMP_GTE: case CMP_LT: case CMP_LTE:
+            case PRINT: case INPUT: case JMP: case JMP_IF_FALSE: case POP:
+            case IPUSH_CONST: case ILOAD_VAR: case ISTORE_VAR:
+            case IADD: case ISUB: case IMUL: case IDIV:
+            case ICMP_EQ: case ICMP_NEQ: case ICMP_GT: case ICMP_GTE: case ICMP_LT: case ICMP_LTE:
+            case IINPUT: case IJMP_IF_FALSE: case IPOP: case I2D: case D2I:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private boolean build(List<Instruction> code) {
+        int n = code.size();
+        for (Instruction ins : code) {
+            if (!supported(ins.op)) return false;
+        }
+        int[] depth = CodeGenerator.computeStackDepths(code);
+        int[] intDepth = CodeGenerator.computeIntStackDepths(code);
+
+        boolean[] leader = new boolean[n + 1];
+        leader[0] = true;
+        leader[n] = true;
+        for (int i = 0; i < n; i++) {
+            Instruction ins = code.get(i);
+            if (ins.op.isJump()) {
+                leader[ins.jumpTarget] = true;
+                leader[i + 1] = true;
+            }
+        }
+
+        Block[] blockAt = new Block[n + 1];
+        for (int i = 0; i <= n; i++) {
+            if (!leader[i] || (i < n && depth[i] < 0)) continue;
+            if (i < n && (depth[i] != 0 || intDepth[i] != 0)) return false;
+            blockAt[i] = new Block(nextBlockId++);
+            layout.add(blockAt[i]);
+        }
+        entry = blockAt[0];
+        exit = blockAt[n];
+
+        // Arestas
+        for (int i = 0; i < n; i++) {
+            Block b = blockAt[i];
+            if (b == null) continue;
+            int end = i;
+            while (!leader[end + 1]) end++;
+            Instruction last = code.get(end);
+            if (last.op == OpCode.JMP) {
+                b.next = blockAt[last.jumpTarget];
+            } else if (last.op == OpCode.JMP_IF_FALSE || last.op == OpCode.IJMP_IF_FALSE) {
+                b.branchTarget = blockAt[last.jumpTarget];
+                b.next = blockAt[end + 1];
+            } else {
+                b.next = blockAt[end + 1];
+            }
+        }
+        for (Block b : layout) {
+            // A condição é criada ao preencher o bloco; até lá a presença
+            // de branchTarget indica o salto condicional
+            if (b.next != null) b.next.preds.add(b);
+            if (b.branchTarget != null) b.branchTarget.preds.add(b);
+        }
+
+        // Com um laço começando na instrução 0, a entrada ganha um bloco
+        // vazio antes, para não ter predecessores
+        if (!entry.preds.isEmpty()) {
+            Block start = new Block(nextBlockId++);
+            start.next = entry;
+            entry.preds.add(start);
+            layout.add(0, start);
+            entry = start;
+            start.filled = true;
+        }
+
+        entry.sealed = true;
+        for (int i = 0; i < n; i++) {
+            Block b = blockAt[i];
+            if (b == null) continue;
+            fill(b, code, i, leader);
+            // Só os sucessores podem ter ficado com todos os predecessores prontos
+            for (Block s : b.succs()) {
+                if (!s.sealed && allFilled(s.preds)) seal(s);
+            }
+        }
+        for (Block s : entry.succs()) {
+            if (!s.sealed && allFilled(s.preds)) seal(s);
+        }
+        exit.filled = true;
+        for (Block s : layout) {
+            if (!s.sealed) seal(s);
+        }
+        resolveAll();
+        return true;
+    }
+
+    private static boolean allFilled(List<Block> blocks) {
+        for (Block b : blocks) {
+            if (!b.filled) return false;
+        }
+        return true;
+    }
+
+    // Executa simbolicamente a pilha do bloco, criando os valores
+    private void fill(Block b, List<Instruction> code, int start, boolean[] leader) {
+        Deque<Value> stack = new ArrayDeque<>();
+        int i = start;
+        do {
+            Instruction ins = code.get(i);
+            switch (ins.op) {
+                case PUSH_CONST:
+                    stack.push(constant(ins.numOperand, false));
+                    break;
+                case IPUSH_CONST:
+                    stack.push(constant((long) ins.numOperand, true));
+                    break;
+                case LOAD_VAR:
+                case ILOAD_VAR: {
+                    boolean isInt = ins.op == OpCode.ILOAD_VAR;
+                    varNames.put(varKey(ins.slot, isInt), ins.strOperand);
+                    stack.push(readVariable(varKey(ins.slot, isInt), b));
+                    break;
+                }
+                case STORE_VAR:
+                case ISTORE_VAR: {
+                    boolean isInt = ins.op == OpCode.ISTORE_VAR;
+                    varNames.put(varKey(ins.slot, isInt), ins.strOperand);
+                    writeVariable(varKey(ins.slot, isInt), b, stack.pop());
+                    break;
+                }
+                case INPUT:
+                case IINPUT: {
+                    boolean isInt = ins.op == OpCode.IINPUT;
+                    Value v = newValue(ins.op, isInt, 0, ins.strOperand, b);
+                    b.items.add(v);
+                    varNames.put(varKey(ins.slot, isInt), ins.strOperand);
+                    writeVariable(varKey(ins.slot, isInt), b, v);
+                    break;
+                }
+                case PRINT: {
+                    Value v = newValue(OpCode.PRINT, false, 0, null, b);
+                    v.args.add(stack.pop());
+                    b.items.add(v);
+                    break;
+                }
+                case POP:
+                case IPOP:
+                    stack.pop();
+                    break;
+                case I2D:
+                case D2I:
+                    stack.push(unary(ins.op, stack.pop(), b));
+                    break;
+                case JMP:
+                    break;
+                case JMP_IF_FALSE:
+                case IJMP_IF_FALSE:
+                    b.condition = stack.pop();
+                    break;
+                default: {
+                    Value right = stack.pop();
+                    Value left = stack.pop();
+                    stack.push(binary(ins.op, left, right, b));
+                    break;
+                }
+            }
+            i++;
+        } while (!leader[i]);
+        b.filled = true;
+
+        // Condicional com os dois caminhos iguais vira salto simples
+        if (b.condition != null && b.branchTarget == b.next) {
+            b.condition = null;
+            b.branchTarget = null;
+            b.next.preds.remove(b);
+            removePhiOperand(b.next, b.next.preds.size());
+        }
+    }
+
+    private static int varKey(int slot, boolean isInt) {
+        return slot * 2 + (isInt ? 1 : 0);
+    }
+
+    private Value unary(OpCode op, Value arg, Block b) {
+        arg = resolve(arg);
+        if (arg.isConst()) {
+            foldedValues++;
+            return op == OpCode.I2D ? constant((double) (long) arg.constant, false)
+                                    : constant((long) arg.constant, true);
+        }
+        Value v = newValue(op, op == OpCode.D2I, 0, null, b);
+        v.args.add(arg);
+        b.items.add(v);
+        return v;
+    }
+
+    private Value binary(OpCode op, Value left, Value right, Block b) {
+        left = resolve(left);
+        right = resolve(right);
+        Value folded = fold(op, left, right);
+        if (folded != null) {
+            foldedValues++;
+            return folded;
+        }
+        Value v = newValue(op, op.intPushes == 1, 0, null, b);
+        v.args.add(left);
+        v.args.add(right);
+        b.items.add(v);
+        return v;
+    }
+
+    // Mesmas operações do Interpreter; int com divisão por zero ou
+    // resultado que PUSH_CONST não guarda exatamente fica para a execução
+    private Value fold(OpCode op, Value left, Value right) {
+        if (!left.isConst() || !right.isConst()) return null;
+        if (op.intPushes == 1) {
+            long a = (long) left.constant;
+            long b = (long) right.constant;
+            long r;
+            switch (op) {
+                case IADD: r = a + b; break;
+                case ISUB: r = a - b; break;
+                case IMUL: r = a * b; break;
+                case IDIV:
+                    if (b == 0) return null;
+                    r = a / b;
+                    break;
+                case ICMP_EQ:  r = a == b ? 1 : 0; break;
+                case ICMP_NEQ: r = a != b ? 1 : 0; break;
+                case ICMP_GT:  r = a > b ? 1 : 0; break;
+                case ICMP_GTE: r = a >= b ? 1 : 0; break;
+                case ICMP_LT:  r = a < b ? 1 : 0; break;
+                case ICMP_LTE: r = a <= b ? 1 : 0; break;
+                default: return null;
+            }
+            if (Math.abs((double) r) > MAX_EXACT) return null;
+            return constant(r, true);
+        }
+        double a = left.constant;
+        double b = right.constant;
+        double r;
+        switch (op) {
+            case ADD: r = a + b; break;
+            case SUB: r = a - b; break;
+            case MUL: r = a * b; break;
+            case DIV: r = a / b; break;
+            case CMP_EQ:  r = a == b ? 1.0 : 0.0; break;
+            case CMP_NEQ: r = a != b ? 1.0 : 0.0; break;
+            case CMP_GT:  r = a > b ? 1.0 : 0.0; break;
+            case CMP_GTE: r = a >= b ? 1.0 : 0.0; break;
+            case CMP_LT:  r = a < b ? 1.0 : 0.0; break;
+            case CMP_LTE: r = a <= b ? 1.0 : 0.0; break;
+            default: return null;
+        }
+        return constant(r, false);
+    }
+
+    private void writeVariable(int var, Block b, Value v) {
+        b.currentDef.put(var, v);
+    }
+
+    private Value readVariable(int var, Block b) {
+        Value v = lookupVariable(var, b);
+        completePhis();
+        return resolve(v);
+    }
+
+    // Sobe pelos predecessores únicos sem recursão. Um phi criado numa
+    // junção selada vai para pendingPhis e recebe os operandos depois, em
+    // completePhis; por isso programas longos não estouram a pilha Java
+    private Value lookupVariable(int var, Block b) {
+        List<Block> path = new ArrayList<>();
+        Value v;
+        while (true) {
+            v = b.currentDef.get(var);
+            if (v != null) {
+                v = resolve(v);
+                break;
+            }
+            path.add(b);
+            if (!b.sealed) {
+                v = newPhi(var, b);
+                b.incompletePhis.put(var, v);
+                break;
+            } else if (b.preds.isEmpty()) {
+                // Início do programa: os frames começam zerados
+                v = constant(0, (var & 1) == 1);
+                break;
+            } else if (b.preds.size() == 1) {
+                b = b.preds.get(0);
+            } else {
+                v = newPhi(var, b);
+                pendingPhis.add(v);
+                break;
+            }
+        }
+        for (Block visited : path) writeVariable(var, visited, v);
+        return v;
+    }
+
+    private Value newPhi(int var, Block b) {
+        Value phi = newValue(null, (var & 1) == 1, 0, varNames.get(var), b);
+        phi.var = var;
+        b.phis.add(phi);
+        return phi;
+    }
+
+    // Dá operandos aos phis pendentes (que podem criar outros) e só então
+    // tenta remover os triviais, quando nenhum está incompleto
+    private void completePhis() {
+        if (pendingPhis.isEmpty()) return;
+        List<Value> completed = new ArrayList<>();
+        while (!pendingPhis.isEmpty()) {
+            Value phi = pendingPhis.poll();
+            addPhiOperands(phi);
+            completed.add(phi);
+        }
+        for (Value phi : completed) tryRemoveTrivialPhi(phi);
+    }
+
+    private void addPhiOperands(Value phi) {
+        for (Block pred : phi.block.preds) {
+            Value arg = lookupVariable(phi.var, pred);
+            phi.args.add(arg);
+            if (arg.isPhi()) arg.phiUsers.add(phi);
+        }
+    }
+
+    // Remove o phi se ele só junta um valor (além de si mesmo); os phis que
+    // o usavam podem ficar triviais também e entram na fila
+    private Value tryRemoveTrivialPhi(Value phi) {
+        Deque<Value> work = new ArrayDeque<>();
+        work.push(phi);
+        while (!work.isEmpty()) {
+            Value p = work.pop();
+            if (p.replacement != null) continue;
+            Value same = null;
+            boolean trivial = true;
+            for (Value arg : p.args) {
+                arg = resolve(arg);
+                if (arg == same || arg == p) continue;
+                if (same != null) {
+                    trivial = false; // junta valores diferentes
+                    break;
+                }
+                same = arg;
+            }
+            if (!trivial) continue;
+            if (same == null) {
+                // Só alcançável por ele mesmo: nunca foi escrita
+                same = constant(0, p.isInt);
+            }
+            p.replacement = same;
+            p.block.phis.remove(p);
+            for (Value user : p.phiUsers) {
+                if (user != p && user.replacement == null) work.push(user);
+            }
+        }
+        return resolve(phi);
+    }
+
+    private void seal(Block b) {
+        for (Value phi : b.incompletePhis.values()) {
+            pendingPhis.add(phi);
+        }
+        b.incompletePhis.clear();
+        b.sealed = true;
+        completePhis();
+    }
+
+    // Troca de vez as referências a valores substituídos
+    private void resolveAll() {
+        for (Block b : layout) {
+            for (Value phi : b.phis) resolveArgs(phi);
+            for (Value v : b.items) resolveArgs(v);
+            if (b.condition != null) b.condition = resolve(b.condition);
+        }
+    }
+
+    private static void resolveArgs(Value v) {
+        for (int i = 0; i < v.args.size(); i++) {
+            v.args.set(i, resolve(v.args.get(i)));
+        }
+    }
+
+    // ---------------- Constantes e blocos inalcançáveis ----------------
+
+    // Dobra de novo valores cujos operandos viraram constantes (via phis)
+    // e troca condições constantes por saltos simples, até estabilizar
+    private void simplifyConstants() {
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Block b : layout) {
+                for (int i = 0; i < b.items.size(); i++) {
+                    Value v = b.items.get(i);
+                    resolveArgs(v);
+                    Value folded = null;
+                    if (v.args.size() == 2) {
+                        folded = fold(v.op, v.args.get(0), v.args.get(1));
+                    } else if ((v.op == OpCode.I2D || v.op == OpCode.D2I) && v.args.get(0).isConst()) {
+                        double c = v.args.get(0).constant;
+                        folded = v.op == OpCode.I2D ? constant((double) (long) c, false) : constant((long) c, true);
+                    }
+                    if (folded != null && v.op != OpCode.PRINT) {
+                        v.replacement = folded;
+                        b.items.remove(i--);
+                        foldedValues++;
+                        changed = true;
+                    }
+                }
+                for (Value phi : new ArrayList<>(b.phis)) {
+                    resolveArgs(phi);
+                    if (tryRemoveTrivialPhi(phi) != phi) changed = true;
+                }
+                if (b.condition != null) {
+                    b.condition = resolve(b.condition);
+                    if (b.condition.isConst()) {
+                        boolean taken = b.condition.constant != 0.0;
+                        Block dropped = taken ? b.branchTarget : b.next;
+                        if (!taken) b.next = b.branchTarget;
+                        b.condition = null;
+                        b.branchTarget = null;
+                        removeEdge(b, dropped);
+                        changed = true;
+                    }
+                }
+            }
+            if (removeUnreachable()) changed = true;
+        }
+        resolveAll();
+    }
+
+    // Remove a aresta; um bloco que fica sem predecessores morre na hora,
+    // levando as arestas dele, para que os phis adiante já simplifiquem
+    private void removeEdge(Block from, Block to) {
+        Deque<Block[]> work = new ArrayDeque<>();
+        work.push(new Block[] { from, to });
+        while (!work.isEmpty()) {
+            Block[] edge = work.pop();
+            Block target = edge[1];
+            int index = target.preds.indexOf(edge[0]);
+            if (index < 0) continue; // já saiu junto com um ciclo morto
+            target.preds.remove(index);
+            removePhiOperand(target, index);
+            if (target.preds.isEmpty() && target != entry && target != exit) {
+                for (Block s : target.succs()) work.push(new Block[] { target, s });
+                target.condition = null;
+                target.branchTarget = null;
+                target.next = null;
+            }
+        }
+    }
+
+    private void removePhiOperand(Block b, int index) {
+        for (Value phi : new ArrayList<>(b.phis)) {
+            phi.args.remove(index);
+            tryRemoveTrivialPhi(phi);
+        }
+    }
+
+    private boolean removeUnreachable() {
+        Set<Block> reached = new HashSet<>();
+        Deque<Block> work = new ArrayDeque<>();
+        work.push(entry);
+        reached.add(entry);
+        while (!work.isEmpty()) {
+            for (Block s : work.pop().succs()) {
+                if (reached.add(s)) work.push(s);
+            }
+        }
+        boolean removed = false;
+        for (Block b : layout) {
+            if (reached.contains(b) || b == exit) continue;
+            for (Block s : b.succs()) {
+                while (s.preds.contains(b)) removeEdge(b, s);
+            }
+            removed = true;
+        }
+        layout.removeIf(b -> !reached.contains(b) && b != exit);
+        if (!reached.contains(exit)) {
+            for (Block p : new ArrayList<>(exit.preds)) {
+                if (!reached.contains(p)) removeEdge(p, exit);
+            }
+        }
+        return removed;
+    }
+
+    // ---------------- Dominadores ----------------
+
+    // Cooper, Harvey e Kennedy: iteração sobre a ordem pós-ordem reversa
+    private void computeDominators() {
+        List<Block> order = reversePostOrder();
+        for (Block b : layout) {
+            b.idom = null;
+            b.rpo = -1;
+            b.domChildren.clear();
+        }
+        for (int i = 0; i < order.size(); i++) order.get(i).rpo = i;
+        entry.idom = entry;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Block b : order) {
+                if (b == entry) continue;
+                Block newIdom = null;
+                for (Block p : b.preds) {
+                    if (p.idom == null) continue;
+                    newIdom = newIdom == null ? p : intersect(p, newIdom);
+                }
+                if (newIdom != b.idom) {
+                    b.idom = newIdom;
+                    changed = true;
+                }
+            }
+        }
+        for (Block b : order) {
+            if (b != entry) b.idom.domChildren.add(b);
+        }
+
+        // Numeração de entrada e saída: a domina b se o intervalo de a contém o de b
+        for (Block b : layout) {
+            b.domEnter = -1;
+            b.domExit = -1;
+        }
+        int clock = 0;
+        Deque<Block> stack = new ArrayDeque<>();
+        stack.push(entry);
+        while (!stack.isEmpty()) {
+            Block b = stack.peek();
+            if (b.domEnter < 0) {
+                b.domEnter = clock++;
+                for (Block child : b.domChildren) stack.push(child);
+            } else {
+                b.domExit = clock++;
+                stack.pop();
+            }
+        }
+    }
+
+    private static Block intersect(Block a, Block b) {
+        while (a != b) {
+            while (a.rpo > b.rpo) a = a.idom;
+            while (b.rpo > a.rpo) b = b.idom;
+        }
+        return a;
+    }
+
+    private List<Block> reversePostOrder() {
+        List<Block> post = new ArrayList<>();
+        Set<Block> visited = new HashSet<>();
+        Deque<Object[]> stack = new ArrayDeque<>();
+        stack.push(new Object[] { entry, 0 });
+        visited.add(entry);
+        while (!stack.isEmpty()) {
+            Object[] top = stack.peek();
+            Block b = (Block) top[0];
+            List<Block> succs = b.succs();
+            int i = (Integer) top[1];
+            if (i < succs.size()) {
+                top[1] = i + 1;
+                Block s = succs.get(i);
+                if (visited.add(s)) stack.push(new Object[] { s, 0 });
+            } else {
+                post.add(b);
+                stack.pop();
+            }
+        }
+        Collections.reverse(post);
+        return post;
+    }
+
+    private static boolean dominates(Block a, Block b) {
+        return a.domEnter >= 0 && b.domEnter >= 0 && a.domEnter <= b.domEnter && b.domExit <= a.domExit;
+    }
+
+    // ---------------- Numeração global de valores ----------------
+
+    // Percorre a árvore de dominadores com uma tabela por escopo: uma
+    // operação igual a outra de um bloco dominante usa o valor dela
+    private void numberValues() {
+        Map<Long, Value> available = new HashMap<>();
+        Deque<Object[]> stack = new ArrayDeque<>();
+        stack.push(new Object[] { entry, null });
+        while (!stack.isEmpty()) {
+            Object[] frame = stack.pop();
+            Block b = (Block) frame[0];
+            if (frame[1] != null) {
+                // Saindo do bloco: desfaz o que ele acrescentou
+                @SuppressWarnings("unchecked")
+                List<Long> added = (List<Long>) frame[1];
+                for (Long key : added) available.remove(key);
+                continue;
+            }
+            List<Long> added = new ArrayList<>();
+            for (int i = 0; i < b.items.size(); i++) {
+                Value v = b.items.get(i);
+                resolveArgs(v);
+                if (!v.isPure()) continue;
+                long key = key(v);
+                Value existing = available.get(key);
+                if (existing != null) {
+                    v.replacement = existing;
+                    b.items.remove(i--);
+                    numberedValues++;
+                } else {
+                    available.put(key, v);
+                    added.add(key);
+                }
+            }
+            stack.push(new Object[] { b, added });
+            for (Block child : b.domChildren) stack.push(new Object[] { child, null });
+        }
+        resolveAll();
+    }
+
+    // Operação e ids dos operandos (os comutativos em ordem) num long
+    private static long key(Value v) {
+        long a = v.args.get(0).id;
+        long b = v.args.size() > 1 ? v.args.get(1).id : -1;
+        if (isCommutative(v.op) && b < a) {
+            long t = a;
+            a = b;
+            b = t;
+        }
+        return ((long) v.op.ordinal() << 56) | (a << 28) | (b + 1);
+    }
+
+    private static boolean isCommutative(OpCode op) {
+        switch (op) {
+            case ADD: case MUL: case CMP_EQ: case CMP_NEQ:
+            case IADD: case IMUL: case ICMP_EQ: case ICMP_NEQ:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // ---------------- Código invariante de laço ----------------
+
+    // Laços encontrados por hoistInvariants, com cabeçalho e pré-cabeçalho
+    private final List<Set<Block>> loops = new ArrayList<>();
+    private final Map<Set<Block>, Block> headerOf = new IdentityHashMap<>();
+    private final Map<Set<Block>, Block> preheaderOf = new IdentityHashMap<>();
+
+    private void hoistInvariants() {
+        // Cabeçalhos: destinos de arestas de volta (origem dominada por ele)
+        List<Block> headers = new ArrayList<>();
+        for (Block b : reversePostOrder()) {
+            for (Block p : b.preds) {
+                if (dominates(b, p) && !headers.contains(b)) headers.add(b);
+            }
+        }
+        if (headers.isEmpty()) return;
+
+        for (Block h : headers) preheader(h);
+        computeDominators();
+
+        // Laços de dentro para fora (menores primeiro), para que um valor
+        // possa subir por vários níveis
+        for (Block h : headers) {
+            Set<Block> body = loopBody(h);
+            loops.add(body);
+            headerOf.put(body, h);
+            for (Block p : h.preds) {
+                if (!body.contains(p)) preheaderOf.put(body, p);
+            }
+        }
+        loops.sort((x, y) -> Integer.compare(x.size(), y.size()));
+
+        for (Set<Block> body : loops) {
+            Block pre = preheaderOf.get(body);
+            List<Block> blocks = new ArrayList<>(body);
+            blocks.sort((x, y) -> Integer.compare(x.rpo, y.rpo));
+            for (Block b : blocks) {
+                for (int i = 0; i < b.items.size(); i++) {
+                    Value v = b.items.get(i);
+                    if (!v.isPure() || !invariant(v, body)) continue;
+                    b.items.remove(i--);
+                    pre.items.add(v);
+                    v.block = pre;
+                    hoistedValues++;
+                }
+            }
+        }
+    }
+
+    private static boolean invariant(Value v, Set<Block> body) {
+        for (Value arg : v.args) {
+            if (!arg.isConst() && body.contains(arg.block)) return false;
+        }
+        return true;
+    }
+
+    private Set<Block> loopBody(Block h) {
+        Set<Block> body = new LinkedHashSet<>();
+        body.add(h);
+        Deque<Block> work = new ArrayDeque<>();
+        for (Block p : h.preds) {
+            if (dominates(h, p) && body.add(p)) work.push(p);
+        }
+        while (!work.isEmpty()) {
+            for (Block p : work.pop().preds) {
+                if (body.add(p)) work.push(p);
+            }
+        }
+        return body;
+    }
+
+    // Garante um único predecessor de fora do laço, que só segue para o
+    // cabeçalho, para receber o código que sobe
+    private void preheader(Block h) {
+        List<Block> outside = new ArrayList<>();
+        for (Block p : h.preds) {
+            if (!dominates(h, p)) outside.add(p);
+        }
+        if (outside.size() == 1 && outside.get(0).condition == null && outside.get(0) != exit) return;
+
+        Block pre = new Block(nextBlockId++);
+        pre.sealed = true;
+        pre.filled = true;
+        for (Value phi : h.phis) {
+            List<Value> incoming = new ArrayList<>();
+            for (int i = 0; i < h.preds.size(); i++) {
+                if (outside.contains(h.preds.get(i))) incoming.add(phi.args.get(i));
+            }
+            Value merged;
+            if (new HashSet<>(incoming).size() == 1) {
+                merged = incoming.get(0);
+            } else {
+                merged = newValue(null, phi.isInt, 0, phi.name, pre);
+                merged.args.addAll(incoming);
+                pre.phis.add(merged);
+            }
+            for (int i = h.preds.size() - 1; i >= 0; i--) {
+                if (outside.contains(h.preds.get(i))) phi.args.remove(i);
+            }
+            phi.args.add(merged);
+        }
+        for (Block p : outside) {
+            p.replaceSucc(h, pre);
+            pre.preds.add(p);
+        }
+        h.preds.removeAll(outside);
+        h.preds.add(pre);
+        pre.next = h;
+        layout.add(layout.indexOf(h), pre);
+    }
+
+    // ---------------- Variáveis de indução ----------------
+
+    // Valor escrito como base + constante (int)
+    private static final class Affine {
+        final Value base;
+        final long offset;
+
+        Affine(Value base, long offset) {
+            this.base = base;
+            this.offset = offset;
+        }
+    }
+
+    private static Affine affine(Value v) {
+        long offset = 0;
+        while (true) {
+            if (v.op == OpCode.IADD && v.args.get(1).isConst()) {
+                offset += (long) v.args.get(1).constant;
+                v = v.args.get(0);
+            } else if (v.op == OpCode.IADD && v.args.get(0).isConst()) {
+                offset += (long) v.args.get(0).constant;
+                v = v.args.get(1);
+            } else if (v.op == OpCode.ISUB && v.args.get(1).isConst()) {
+                offset -= (long) v.args.get(1).constant;
+                v = v.args.get(0);
+            } else {
+                return new Affine(v, offset);
+            }
+        }
+    }
+
+    // Cadeias de somas com constantes (como i + 1 + 1 + 1 do laço
+    // desenrolado) viram uma soma só sobre a base
+    private void reassociate() {
+        for (Block b : layout) {
+            for (int i = 0; i < b.items.size(); i++) {
+                Value v = b.items.get(i);
+                if (v.op != OpCode.IADD && v.op != OpCode.ISUB) continue;
+                resolveArgs(v);
+                Affine a = affine(v);
+                if (a.base == v || !exact(a.offset)) continue;
+                Value inner = v.args.get(0).isConst() ? v.args.get(1) : v.args.get(0);
+                if (affine(inner).base == inner) continue; // já é base + constante
+                Value replacement = a.base;
+                if (a.offset != 0) {
+                    replacement = newValue(OpCode.IADD, true, 0, null, b);
+                    replacement.args.add(a.base);
+                    replacement.args.add(constant(a.offset, true));
+                    b.items.set(i, replacement);
+                } else {
+                    b.items.remove(i--);
+                }
+                v.replacement = replacement;
+            }
+        }
+        resolveAll();
+    }
+
+    // Redução de força: num laço com uma só volta, um phi int do
+    // cabeçalho que recebe ele mesmo mais uma constante é uma variável de
+    // indução básica. Um produto dela (ou dela mais uma constante) por
+    // constante vira um novo phi que soma passo * constante a cada volta,
+    // trocando o IMUL por leitura ou IADD. Com aritmética módulo 2^64 as
+    // duas formas dão sempre o mesmo valor.
+    private void reduceStrength() {
+        for (Set<Block> body : loops) {
+            Block h = headerOf.get(body);
+            Block pre = preheaderOf.get(body);
+            if (h.preds.size() != 2) continue;
+            int preIndex = h.preds.indexOf(pre);
+            int latchIndex = 1 - preIndex;
+            Block latch = h.preds.get(latchIndex);
+
+            for (Value phi : new ArrayList<>(h.phis)) {
+                if (!phi.isInt) continue;
+                Affine next = affine(resolve(phi.args.get(latchIndex)));
+                if (next.base != phi || next.offset == 0) continue;
+                long step = next.offset;
+
+                Map<Long, Value> reduced = new HashMap<>();
+                for (Block b : body) {
+                    for (int i = 0; i < b.items.size(); i++) {
+                        Value v = b.items.get(i);
+                        if (v.op != OpCode.IMUL) continue;
+                        resolveArgs(v);
+                        int constIndex = v.args.get(1).isConst() ? 1 : v.args.get(0).isConst() ? 0 : -1;
+                        if (constIndex < 0) continue;
+                        long factor = (long) v.args.get(constIndex).constant;
+                        Affine a = affine(v.args.get(1 - constIndex));
+                        if (a.base != phi) continue;
+                        if (!exact((double) step * factor) || !exact((double) a.offset * factor)) continue;
+
+                        Value derived = reduced.get(factor);
+                        if (derived == null) {
+                            derived = inductionPhi(phi, factor, step, h, pre, latch, preIndex, latchIndex);
+                            if (derived == null) continue;
+                            reduced.put(factor, derived);
+                        }
+                        Value replacement = derived;
+                        if (a.offset != 0) {
+                            replacement = newValue(OpCode.IADD, true, 0, null, b);
+                            replacement.args.add(derived);
+                            replacement.args.add(constant(a.offset * factor, true));
+                            b.items.set(i, replacement);
+                        } else {
+                            b.items.remove(i--);
+                        }
+                        v.replacement = replacement;
+                        reducedValues++;
+                    }
+                }
+            }
+        }
+        resolveAll();
+    }
+
+    // Phi j = phi(início * fator, j + passo * fator) no cabeçalho
+    private Value inductionPhi(Value phi, long factor, long step, Block h, Block pre, Block latch,
+                               int preIndex, int latchIndex) {
+        Value start = resolve(phi.args.get(preIndex));
+        Value initial;
+        if (start.isConst()) {
+            initial = fold(OpCode.IMUL, start, constant(factor, true));
+            if (initial == null) return null;
+        } else {
+            initial = newValue(OpCode.IMUL, true, 0, null, pre);
+            initial.args.add(start);
+            initial.args.add(constant(factor, true));
+            pre.items.add(initial);
+        }
+
+        Value derived = newValue(null, true, 0, null, h);
+        Value increment = newValue(OpCode.IADD, true, 0, null, latch);
+        increment.args.add(derived);
+        increment.args.add(constant(step * factor, true));
+        latch.items.add(increment);
+
+        Value[] args = new Value[2];
+        args[preIndex] = initial;
+        args[latchIndex] = increment;
+        derived.args.addAll(Arrays.asList(args));
+        h.phis.add(derived);
+        return derived;
+    }
+
+    private static boolean exact(double value) {
+        return Math.abs(value) <= MAX_EXACT;
+    }
+
+    // ---------------- Código morto ----------------
+
+    private void eliminateDeadCode() {
+        Deque<Value> work = new ArrayDeque<>();
+        for (Block b : layout) {
+            for (Value v : b.items) {
+                if (v.isPinned()) mark(v, work);
+            }
+            if (b.condition != null) mark(b.condition, work);
+        }
+        while (!work.isEmpty()) {
+            for (Value arg : work.pop().args) mark(arg, work);
+        }
+        for (Block b : layout) {
+            b.items.removeIf(v -> !v.live);
+            b.phis.removeIf(v -> !v.live);
+        }
+    }
+
+    private static void mark(Value v, Deque<Value> work) {
+        if (!v.live) {
+            v.live = true;
+            work.push(v);
+        }
+    }
+
+    // ---------------- De volta ao código de pilha ----------------
+
+    private List<Instruction> out;
+    private int nextRealSlot = 0;
+    private int nextIntSlot = 0;
+
+    private List<Instruction> lower() {
+        splitCriticalEdges();
+        countUses();
+
+        for (Block b : layout) {
+            for (Value phi : b.phis) phi.slot = newSlot(phi.isInt);
+            for (Value v : b.items) {
+                if (v.op != OpCode.PRINT && !inline(v)) v.slot = newSlot(v.isInt);
+            }
+        }
+
+        out = new ArrayList<>();
+        Map<Block, Integer> start = new HashMap<>();
+        List<Object[]> pending = new ArrayList<>(); // {índice da instrução, bloco destino}
+        for (int k = 0; k < layout.size(); k++) {
+            Block b = layout.get(k);
+            Block following = k + 1 < layout.size() ? layout.get(k + 1) : null;
+            start.put(b, out.size());
+            if (b == exit) continue;
+
+            for (Value v : b.items) emitItem(v);
+
+            if (b.condition == null && b.next != null && !b.next.phis.isEmpty()) {
+                emitCopies(b, b.next);
+            }
+
+            if (b.condition != null) {
+                emitTree(b.condition);
+                pending.add(new Object[] { out.size(), b.branchTarget });
+                out.add(new Instruction(b.condition.isInt ? OpCode.IJMP_IF_FALSE : OpCode.JMP_IF_FALSE, -1));
+            }
+            if (b.next != null && b.next != following) {
+                pending.add(new Object[] { out.size(), b.next });
+                out.add(new Instruction(OpCode.JMP, -1));
+            }
+        }
+        for (Object[] p : pending) {
+            int at = (Integer) p[0];
+            Instruction ins = out.get(at);
+            out.set(at, new Instruction(ins.op, start.get((Block) p[1])));
+        }
+        return out;
+    }
+
+    // Aresta de um bloco com dois sucessores para um bloco com phis ganha
+    // um bloco no meio, onde ficam as cópias
+    private void splitCriticalEdges() {
+        for (Block b : new ArrayList<>(layout)) {
+            if (b.condition == null) continue;
+            for (Block s : b.succs()) {
+                if (s.phis.isEmpty()) continue;
+                Block mid = new Block(nextBlockId++);
+                mid.preds.add(b);
+                mid.next = s;
+                s.preds.set(s.preds.indexOf(b), mid);
+                b.replaceSucc(s, mid);
+                // No caminho verdadeiro o bloco do meio vem logo depois
+                if (b.next == mid) {
+                    layout.add(layout.indexOf(b) + 1, mid);
+                } else {
+                    layout.add(layout.indexOf(exit), mid);
+                }
+            }
+        }
+    }
+
+    private void countUses() {
+        for (Block b : layout) {
+            for (Value v : b.items) {
+                for (Value arg : v.args) use(arg, b);
+            }
+            if (b.condition != null) use(b.condition, b);
+            for (Value phi : b.phis) {
+                for (int i = 0; i < phi.args.size(); i++) use(phi.args.get(i), b.preds.get(i));
+            }
+        }
+    }
+
+    private static void use(Value v, Block where) {
+        v.uses++;
+        v.useBlock = where;
+    }
+
+    // Valor recalculado na pilha no ponto de uso, em vez de ir para um slot
+    private static boolean inline(Value v) {
+        return v.isPure() && v.uses == 1 && v.useBlock == v.block;
+    }
+
+    private int newSlot(boolean isInt) {
+        return isInt ? nextIntSlot++ : nextRealSlot++;
+    }
+
+    private String slotName(Value v) {
+        return v.name != null ? v.name : "t" + v.id;
+    }
+
+    // Cópias paralelas para os phis do sucessor. Uma cópia cujo destino
+    // não é lido pelas que faltam sai logo (valor e STORE juntos, o que o
+    // peephole reconhece); as que sobram formam ciclos e são feitas
+    // empilhando todos os valores antes dos STOREs
+    private void emitCopies(Block b, Block s) {
+        int index = s.preds.indexOf(b);
+        List<Value> pending = new ArrayList<>();
+        for (Value phi : s.phis) {
+            if (phi.args.get(index) != phi) pending.add(phi);
+        }
+        boolean progress = true;
+        while (progress) {
+            progress = false;
+            for (int i = 0; i < pending.size(); i++) {
+                Value phi = pending.get(i);
+                boolean read = false;
+                for (Value other : pending) {
+                    if (other != phi && reads(other.args.get(index), phi)) read = true;
+                }
+                if (read) continue;
+                emitTree(phi.args.get(index));
+                emitStore(phi);
+                pending.remove(i--);
+                progress = true;
+            }
+        }
+        for (Value phi : pending) emitTree(phi.args.get(index));
+        for (int i = pending.size() - 1; i >= 0; i--) emitStore(pending.get(i));
+    }
+
+    // O código de `tree` lê o slot de `phi`?
+    private static boolean reads(Value tree, Value phi) {
+        if (tree == phi) return true;
+        if (tree.isConst() || tree.slot >= 0) return false;
+        for (Value arg : tree.args) {
+            if (reads(arg, phi)) return true;
+        }
+        return false;
+    }
+
+    private void emitStore(Value v) {
+        out.add(new Instruction(v.isInt ? OpCode.ISTORE_VAR : OpCode.STORE_VAR, slotName(v), v.slot));
+    }
+
+    private void emitItem(Value v) {
+        switch (v.op) {
+            case PRINT:
+                emitTree(v.args.get(0));
+                out.add(new Instruction(OpCode.PRINT));
+                return;
+            case INPUT:
+            case IINPUT:
+                out.add(new Instruction(v.op, v.name, v.slot));
+                return;
+            default:
+                if (inline(v)) return;
+                emitOperation(v);
+                emitStore(v);
+        }
+    }
+
+    private void emitTree(Value v) {
+        if (v.isConst()) {
+            out.add(new Instruction(v.op, v.constant));
+        } else if (v.slot >= 0) {
+            out.add(new Instruction(v.isInt ? OpCode.ILOAD_VAR : OpCode.LOAD_VAR, slotName(v), v.slot));
+        } else {
+            emitOperation(v);
+        }
+    }
+
+    private void emitOperation(Value v) {
+        for (Value arg : v.args) emitTree(arg);
+        out.add(new Instruction(v.op));
+    }
+
+    // ---------------- Recoloração dos slots ----------------
+
+    // Vivacidade dos slots no código gerado; slots que nunca estão vivos
+    // ao mesmo tempo (no mesmo banco) passam a dividir o mesmo índice
+    private List<Instruction> compactSlots(List<Instruction> code) {
+        int n = code.size();
+        int[] color = new int[Math.max(nextRealSlot, nextIntSlot) * 2];
+        Arrays.fill(color, -1);
+
+        // Blocos do código gerado
+        boolean[] leader = new boolean[n + 1];
+        leader[0] = true;
+        leader[n] = true;
+        for (int i = 0; i < n; i++) {
+            Instruction ins = code.get(i);
+            if (ins.op.isJump()) {
+                leader[ins.jumpTarget] = true;
+                leader[i + 1] = true;
+            }
+        }
+        int[] blockOf = new int[n + 1];
+        List<Integer> starts = new ArrayList<>();
+        for (int i = 0; i <= n; i++) {
+            if (leader[i]) starts.add(i);
+            blockOf[i] = starts.size() - 1;
+        }
+        int blocks = starts.size() - 1; // o último começo é o fim do código
+
+        // Só os slots lidos antes de escritos em algum bloco atravessam
+        // blocos; a análise global fica restrita a eles (índices densos)
+        int[] global = new int[color.length];
+        Arrays.fill(global, -1);
+        int globals = 0;
+        BitSet defined = new BitSet();
+        for (int b = 0; b < blocks; b++) {
+            defined.clear();
+            for (int i = starts.get(b); i < starts.get(b + 1); i++) {
+                Instruction ins = code.get(i);
+                int u = used(ins);
+                if (u >= 0 && !defined.get(u) && global[u] < 0) global[u] = globals++;
+                int d = defined(ins);
+                if (d >= 0) defined.set(d);
+            }
+        }
+        int[] keyOf = new int[globals];
+        for (int k = 0; k < global.length; k++) {
+            if (global[k] >= 0) keyOf[global[k]] = k;
+        }
+
+        // Vivacidade por bloco (uso antes de definição e definições), iterada até estabilizar
+        BitSet[] use = new BitSet[blocks];
+        BitSet[] def = new BitSet[blocks];
+        BitSet[] liveIn = new BitSet[blocks + 1];
+        BitSet[] liveOut = new BitSet[blocks];
+        for (int b = 0; b < blocks; b++) {
+            use[b] = new BitSet();
+            def[b] = new BitSet();
+            liveIn[b] = new BitSet();
+            liveOut[b] = new BitSet();
+            defined.clear();
+            for (int i = starts.get(b); i < starts.get(b + 1); i++) {
+                Instruction ins = code.get(i);
+                int u = used(ins);
+                if (u >= 0 && !defined.get(u)) use[b].set(global[u]);
+                int d = defined(ins);
+                if (d >= 0) {
+                    defined.set(d);
+                    if (global[d] >= 0) def[b].set(global[d]);
+                }
+            }
+        }
+        liveIn[blocks] = new BitSet();
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int b = blocks - 1; b >= 0; b--) {
+                Instruction last = code.get(starts.get(b + 1) - 1);
+                BitSet out = liveOut[b];
+                if (last.op != OpCode.JMP) out.or(liveIn[b + 1]);
+                if (last.op.isJump()) out.or(liveIn[blockOf[last.jumpTarget]]);
+                BitSet in = (BitSet) out.clone();
+                in.andNot(def[b]);
+                in.or(use[b]);
+                if (!in.equals(liveIn[b])) {
+                    liveIn[b] = in;
+                    changed = true;
+                }
+            }
+        }
+
+        // Interferência: um slot definido com outro vivo logo depois,
+        // percorrendo cada bloco de trás para frente
+        Map<Integer, Set<Integer>> interferes = new HashMap<>();
+        BitSet live = new BitSet();
+        for (int b = 0; b < blocks; b++) {
+            live.clear();
+            BitSet out = liveOut[b];
+            for (int g = out.nextSetBit(0); g >= 0; g = out.nextSetBit(g + 1)) live.set(keyOf[g]);
+            for (int i = starts.get(b + 1) - 1; i >= starts.get(b); i--) {
+                Instruction ins = code.get(i);
+                int d = defined(ins);
+                if (d >= 0) {
+                    for (int other = live.nextSetBit(0); other >= 0; other = live.nextSetBit(other + 1)) {
+                        if (other == d || (other & 1) != (d & 1)) continue;
+                        interferes.computeIfAbsent(d, k -> new HashSet<>()).add(other);
+                        interferes.computeIfAbsent(other, k -> new HashSet<>()).add(d);
+                    }
+                    live.clear(d);
+                }
+                int u = used(ins);
+                if (u >= 0) live.set(u);
+            }
+        }
+
+        List<Instruction> result = new ArrayList<>(n);
+        for (Instruction ins : code) {
+            int key = defined(ins) >= 0 ? defined(ins) : used(ins);
+            if (key < 0) {
+                result.add(ins);
+                continue;
+            }
+            if (color[key] < 0) {
+                Set<Integer> taken = new HashSet<>();
+                for (int other : interferes.getOrDefault(key, Collections.emptySet())) {
+                    if (color[other] >= 0) taken.add(color[other]);
+                }
+                int c = 0;
+                while (taken.contains(c)) c++;
+                color[key] = c;
+            }
+            result.add(new Instruction(ins.op, ins.strOperand, ins.numOperand, color[key], ins.jumpTarget));
+        }
+        return removeSelfCopies(result);
+    }
+
+    // Cópias de um phi para o slot que ficou com a mesma cor viram
+    // LOAD x; STORE x e são retiradas
+    private static List<Instruction> removeSelfCopies(List<Instruction> code) {
+        int n = code.size();
+        boolean[] isTarget = new boolean[n + 1];
+        for (Instruction ins : code) {
+            if (ins.op.isJump()) isTarget[ins.jumpTarget] = true;
+        }
+        boolean[] drop = new boolean[n];
+        for (int i = 0; i + 1 < n; i++) {
+            Instruction load = code.get(i);
+            Instruction store = code.get(i + 1);
+            boolean copy = (load.op == OpCode.LOAD_VAR && store.op == OpCode.STORE_VAR)
+                    || (load.op == OpCode.ILOAD_VAR && store.op == OpCode.ISTORE_VAR);
+            if (copy && load.slot == store.slot && !isTarget[i + 1]) {
+                drop[i] = true;
+                drop[i + 1] = true;
+                i++;
+            }
+        }
+        int[] newIndex = new int[n + 1];
+        int kept = 0;
+        for (int i = 0; i < n; i++) {
+            newIndex[i] = kept;
+            if (!drop[i]) kept++;
+        }
+        newIndex[n] = kept;
+        List<Instruction> result = new ArrayList<>(kept);
+        for (int i = 0; i < n; i++) {
+            if (drop[i]) continue;
+            Instruction ins = code.get(i);
+            if (ins.op.isJump()) ins = new Instruction(ins.op, newIndex[ins.jumpTarget]);
+            result.add(ins);
+        }
+        return result;
+    }
+
+    // Slot escrito/lido pela instrução, com o banco no bit menos significativo
+    private static int defined(Instruction ins) {
+        switch (ins.op) {
+            case STORE_VAR: case INPUT: return varKey(ins.slot, false);
+            case ISTORE_VAR: case IINPUT: return varKey(ins.slot, true);
+            default: return -1;
+        }
+    }
+
+    private static int used(Instruction ins) {
+        switch (ins.op) {
+            case LOAD_VAR: return varKey(ins.slot, false);
+            case ILOAD_VAR: return varKey(ins.slot, true);
+            default: return -1;
+        }
+    }
+}
@@ -5,6 +5,7 @@ public abstract class Stmt {
     public static class VarDecl extends Stmt {
         public final Token type;
         public final Token name;
+        public int slot = -1; // preenchido pelo SemanticAnalyzer
 
         public VarDecl(Token type, Token name) {
             this.type = type;
@@ -15,6 +16,8 @@ public abstract class Stmt {
     public static class Assign extends Stmt {
         public final Token name;
         public final Expr value;
+        public int slot = -1; // preenchido pelo SemanticAnalyzer
+        public String varType; // idem
 
         public Assign(Token name, Expr value) {
             this.name = name;
@@ -40,6 +43,8 @@ public abstract class Stmt {
 
     public static class Input extends Stmt {
         public final Token name;
+        public int slot = -1; // preenchido pelo SemanticAnalyzer
+        public String varType; // idem
 
         public Input(Token name) {
             this.name = name;
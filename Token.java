@@ -1,10 +1,44 @@
 public class Token {
     public final TokenType type;
     public final String lexeme;
+    public final int offset; // posição na entrada; -1 nos tokens compartilhados
+
+    // Tokens de lexema fixo (palavras-chave, operadores, símbolos, EOF) não
+    // carregam nada além do tipo, então uma única instância de cada é
+    // reaproveitada pelo lexer
+    private static final Token[] FIXED = new Token[TokenType.values().length];
+
+    static {
+        String[] lexemes = {
+            "int", "real", "if", "else", "while", "print", "input",
+            null, null,
+            "+", "-", "*", "/", "=", "==", "!=", ">", ">=", "<", "<=",
+            ";", "(", ")", "{", "}",
+            ""
+        };
+        for (TokenType type : TokenType.values()) {
+            String lexeme = lexemes[type.ordinal()];
+            if (lexeme != null) FIXED[type.ordinal()] = new Token(type, lexeme);
+        }
+    }
 
     public Token(TokenType type, String lexeme) {
+        this(type, lexeme, -1);
+    }
+
+    public Token(TokenType type, String lexeme, int offset) {
         this.type = type;
         this.lexeme = lexeme;
+        this.offset = offset;
+    }
+
+    // Instância compartilhada de um tipo de lexema fixo
+    public static Token of(TokenType type) {
+        Token token = FIXED[type.ordinal()];
+        if (token == null) {
+            throw new IllegalArgumentException("Token sem lexema fixo: " + type);
+        }
+        return token;
     }
 
     @Override
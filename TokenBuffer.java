@@ -0,0 +1,206 @@
+import java.util.Arrays;
+
+// Sequência de tokens guardada em arrays paralelos (tipo, início, tamanho)
+// que apontam para o texto-fonte, sem um objeto por token. Os Token só são
+// criados quando alguém os pede, e o texto de cada identificador ou número
+// distinto vira String uma única vez (NameTable).
+//
+// Depois de uma edição do texto, edit() monta o buffer novo relendo só o
+// trecho alterado: os tokens antes dele são copiados como estão e os
+// depois dele com o início deslocado, a partir do primeiro token relido
+// que começa onde começava um token antigo.
+public class TokenBuffer {
+
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private final char[] source;
+    private final NameTable names;
+    private byte[] types = new byte[256];
+    private int[] starts = new int[256];
+    private int[] lengths = new int[256];
+    private int size = 0;
+
+    // Trecho relido pelo edit que criou este buffer: os tokens em
+    // [changedFrom, changedTo) são novos e os de changedTo em diante são os
+    // antigos a partir de changedTo - shift. Um buffer lido do zero é todo novo.
+    private int changedFrom = 0;
+    private int changedTo;
+    private int shift = 0;
+
+    public TokenBuffer(String source) {
+        this(source.toCharArray(), new NameTable());
+        Lexer lexer = new Lexer(this.source);
+        TokenType type;
+        do {
+            type = lexer.scan();
+            add(type, lexer.tokenOffset(), lexer.tokenLength());
+        } while (type != TokenType.EOF);
+        changedTo = size;
+    }
+
+    private TokenBuffer(char[] source, NameTable names) {
+        this.source = source;
+        this.names = names;
+    }
+
+    // Tokens do texto editado. O primeiro token relido é o que termina no
+    // início da alteração ou depois (um identificador pode ter crescido);
+    // a releitura para no primeiro token que começa já no trecho final
+    // igual ao antigo e no mesmo ponto de um token antigo, porque dali em
+    // diante o lexer vê o mesmo texto. No pior caso isso é o EOF.
+    public TokenBuffer edit(String text) {
+        char[] chars = text.toCharArray();
+        int oldLength = source.length;
+        int limit = Math.min(oldLength, chars.length);
+        int prefix = 0;
+        while (prefix < limit && source[prefix] == chars[prefix]) prefix++;
+        int suffix = 0;
+        while (suffix < limit - prefix && source[oldLength - 1 - suffix] == chars[chars.length - 1 - suffix]) {
+            suffix++;
+        }
+        int delta = chars.length - oldLength;
+        int damageEnd = oldLength - suffix; // primeira posição antiga depois da alteração
+
+        // Primeiro token que termina em `prefix` ou depois (o EOF sempre termina)
+        int low = 0;
+        int high = size - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (starts[mid] + lengths[mid] >= prefix) high = mid; else low = mid + 1;
+        }
+        int first = low;
+
+        TokenBuffer result = new TokenBuffer(chars, names);
+        result.append(this, 0, first, 0);
+        Lexer lexer = new Lexer(chars, first == 0 ? 0 : starts[first - 1] + lengths[first - 1]);
+        int resume;
+        while (true) {
+            TokenType type = lexer.scan();
+            int start = lexer.tokenOffset();
+            if (start - delta >= damageEnd) {
+                resume = indexOf(start - delta, first);
+                if (resume >= 0) break;
+            }
+            result.add(type, start, lexer.tokenLength());
+        }
+        result.changedFrom = first;
+        result.changedTo = result.size;
+        result.shift = result.size - resume;
+        result.append(this, resume, size, delta);
+        return result;
+    }
+
+    // Copia os tokens [from, to) de outro buffer, com o início deslocado
+    private void append(TokenBuffer other, int from, int to, int delta) {
+        int count = to - from;
+        if (size + count > types.length) {
+            int capacity = Math.max(types.length * 2, size + count);
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+        }
+        System.arraycopy(other.types, from, types, size, count);
+        System.arraycopy(other.lengths, from, lengths, size, count);
+        for (int i = 0; i < count; i++) starts[size + i] = other.starts[from + i] + delta;
+        size += count;
+    }
+
+    private void add(TokenType type, int start, int length) {
+        if (size == types.length) {
+            types = Arrays.copyOf(types, size * 2);
+            starts = Arrays.copyOf(starts, size * 2);
+            lengths = Arrays.copyOf(lengths, size * 2);
+        }
+        types[size] = (byte) type.ordinal();
+        starts[size] = start;
+        lengths[size] = length;
+        size++;
+    }
+
+    // Quantidade de tokens, incluindo o EOF final
+    public int size() {
+        return size;
+    }
+
+    public TokenType type(int i) {
+        return TYPES[types[i]];
+    }
+
+    public int start(int i) {
+        return starts[i];
+    }
+
+    public int length(int i) {
+        return lengths[i];
+    }
+
+    public int changedFrom() {
+        return changedFrom;
+    }
+
+    public int changedTo() {
+        return changedTo;
+    }
+
+    public int shift() {
+        return shift;
+    }
+
+    // Índice do token que começa em `offset` (procurando de `from` em
+    // diante), ou -1 se nenhum começa ali
+    public int indexOf(int offset, int from) {
+        int low = from;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (starts[mid] < offset) {
+                low = mid + 1;
+            } else if (starts[mid] > offset) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    // Texto do token i; o mesmo objeto para lexemas iguais
+    public String text(int i) {
+        TokenType type = type(i);
+        if (type == TokenType.IDENTIFIER || type == TokenType.NUMBER) {
+            return names.intern(source, starts[i], lengths[i]);
+        }
+        return Token.of(type).lexeme;
+    }
+
+    public Token token(int i) {
+        TokenType type = type(i);
+        if (type == TokenType.IDENTIFIER || type == TokenType.NUMBER) {
+            return new Token(type, text(i), starts[i]);
+        }
+        return Token.of(type);
+    }
+
+    // Percorre os tokens do início ao fim para alimentar o Parser
+    public TokenSource cursor() {
+        return cursor(0);
+    }
+
+    // A partir do token `from`
+    public TokenSource cursor(int from) {
+        return new TokenSource() {
+            private int next = from;
+
+            @Override
+            public Token nextToken() {
+                int i = next < size ? next++ : size - 1;
+                return token(i);
+            }
+
+            @Override
+            public int tokenOffset() {
+                return next == from ? -1 : starts[next - 1];
+            }
+        };
+    }
+}
@@ -0,0 +1,10 @@
+// Fonte de tokens lida sob demanda pelo Parser. Depois do fim da entrada
+// continua devolvendo EOF.
+public interface TokenSource {
+    Token nextToken();
+
+    // Posição na entrada do último token devolvido, ou -1 se desconhecida
+    default int tokenOffset() {
+        return -1;
+    }
+}
@@ -0,0 +1,82 @@
+import java.util.function.BooleanSupplier;
+import java.util.function.DoubleSupplier;
+
+// Entrada e saída usadas pelos motores de execução (Interpreter e código
+// gerado pelo JvmCompiler), para que todos escrevam exatamente o mesmo texto.
+// Cada execução tem o seu VmIo: execuções simultâneas de um mesmo
+// CompiledProgram não dividem buffer nem entrada.
+public class VmIo {
+
+    private final OutputSink out;
+    private final DoubleSupplier in;
+    private final BooleanSupplier ready;
+    private final BooleanSupplier writable;
+    private final boolean prompt;
+
+    public VmIo() {
+        this(new OutputSink(System.out, false), new NumberReader(System.in), true);
+    }
+
+    public VmIo(OutputSink out) {
+        this(out, new NumberReader(System.in), true);
+    }
+
+    // prompt = false omite o "nome = " antes de cada leitura (modo não interativo)
+    public VmIo(OutputSink out, NumberReader in, boolean prompt) {
+        this(out, (DoubleSupplier) in::nextDouble, prompt);
+    }
+
+    // Entrada vinda de qualquer fonte de números (ex.: um array, num embutimento)
+    public VmIo(OutputSink out, DoubleSupplier in, boolean prompt) {
+        this(out, in, () -> true, prompt);
+    }
+
+    // `ready` diz se um número já pode ser lido sem esperar; sem ele o
+    // input lança Blocked, e na execução em fatias (Interpreter.step) o
+    // INPUT devolve a thread em vez de bloquear
+    public VmIo(OutputSink out, DoubleSupplier in, BooleanSupplier ready, boolean prompt) {
+        this(out, in, ready, () -> true, prompt);
+    }
+
+    // `writable` diz se a saída ainda aceita mais texto; sem espaço o print
+    // lança Blocked antes de escrever, e o PRINT também devolve a thread
+    public VmIo(OutputSink out, DoubleSupplier in, BooleanSupplier ready, BooleanSupplier writable,
+                boolean prompt) {
+        this.out = out;
+        this.in = in;
+        this.ready = ready;
+        this.writable = writable;
+        this.prompt = prompt;
+    }
+
+    // Sem pilha nem mensagem: é só um sinal para o Interpreter, lançado a
+    // cada INPUT que espera entrada e a cada PRINT que espera a saída
+    public static final class Blocked extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        static final Blocked INSTANCE = new Blocked();
+
+        private Blocked() {
+            super(null, null, false, false);
+        }
+    }
+
+    public void print(double value) {
+        if (!writable.getAsBoolean()) throw Blocked.INSTANCE;
+        out.println(value);
+    }
+
+    public double input(String name) {
+        if (!ready.getAsBoolean()) throw Blocked.INSTANCE;
+        if (prompt) {
+            out.print(name + " = ");
+            // O prompt e o que já foi impresso precisam aparecer antes da leitura
+            out.flush();
+        }
+        return in.getAsDouble();
+    }
+
+    // Chamado pelos motores ao terminar, inclusive com erro
+    public void flush() {
+        out.flush();
+    }
+}
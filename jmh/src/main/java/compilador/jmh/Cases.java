@@ -0,0 +1,49 @@
+package compilador.jmh;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.function.LongSupplier;
+
+// Acesso ao BenchmarkCases da raiz. As classes do compilador ficam no
+// pacote padrão, que não pode ser importado daqui (e o JMH não aceita
+// benchmarks no pacote padrão); elas são procuradas pelo nome uma vez, na
+// carga desta classe. Os benchmarks só chamam getAsLong na medição.
+final class Cases {
+
+    private static final MethodHandle SOURCE;     // BenchmarkCases.source(String)
+    private static final MethodHandle OPTIONS;    // new CompileOptions(boolean, int, boolean, boolean)
+    private static final MethodHandle OPERATION;  // BenchmarkCases.operation(String, String, String, CompileOptions)
+    private static final MethodHandle COUNTS;     // BenchmarkCases.countsInstructions(String, String)
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> cases = Class.forName("BenchmarkCases");
+            Class<?> options = Class.forName("CompileOptions");
+            SOURCE = lookup.findStatic(cases, "source", MethodType.methodType(String.class, String.class));
+            OPTIONS = lookup.findConstructor(options, MethodType.methodType(void.class,
+                    boolean.class, int.class, boolean.class, boolean.class));
+            OPERATION = lookup.findStatic(cases, "operation", MethodType.methodType(LongSupplier.class,
+                    String.class, String.class, String.class, options));
+            COUNTS = lookup.findStatic(cases, "countsInstructions",
+                    MethodType.methodType(boolean.class, String.class, String.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private Cases() {
+    }
+
+    static LongSupplier operation(String stage, String program, String engine, boolean astOpt, int unroll,
+                                  boolean ssa, boolean peephole) throws Throwable {
+        String source = (String) SOURCE.invoke(program);
+        Object options = OPTIONS.invoke(astOpt, unroll, ssa, peephole);
+        return (LongSupplier) OPERATION.invoke(stage, source, engine, options);
+    }
+
+    static boolean countsInstructions(String stage, String engine) throws Throwable {
+        return (boolean) COUNTS.invoke(stage, engine);
+    }
+}
@@ -0,0 +1,89 @@
+package compilador.jmh;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// As etapas run (só executar um programa já compilado) e pipeline
+// (compilar e executar) em cada motor: cada combinação dos @Param é medida
+// num fork próprio, então motores (-p engine=interp,jvm), opções de
+// compilação (-p ssa=true,false -p unroll=1,4 ...) e programas
+// (-p program=small,loop,deep:1000 ou um arquivo) aparecem lado a lado.
+//
+// Além de ops/s, o contador instructions mostra as instruções executadas
+// por segundo nos motores que as contam (interp e reg); nos outros fica 0.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PipelineBenchmark {
+
+    @Param({ "interp", "tiered", "jvm", "reg", "ast" })
+    public String engine;
+
+    @Param({ "small", "large", "loop" })
+    public String program;
+
+    @Param({ "true" })
+    public boolean astOpt;
+
+    @Param({ "4" })
+    public int unroll;
+
+    @Param({ "true", "false" })
+    public boolean ssa;
+
+    @Param({ "true", "false" })
+    public boolean peephole;
+
+    private LongSupplier run;
+    private LongSupplier pipeline;
+    private boolean counts;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Instructions {
+        public long instructions;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            instructions = 0;
+        }
+    }
+
+    @Setup
+    public void setup() throws Throwable {
+        run = Cases.operation("run", program, engine, astOpt, unroll, ssa, peephole);
+        pipeline = Cases.operation("pipeline", program, engine, astOpt, unroll, ssa, peephole);
+        counts = Cases.countsInstructions("run", engine);
+    }
+
+    @Benchmark
+    public long pipeline(Instructions counter) {
+        long executed = pipeline.getAsLong();
+        if (counts) counter.instructions += executed;
+        return executed;
+    }
+
+    @Benchmark
+    public long run(Instructions counter) {
+        long executed = run.getAsLong();
+        if (counts) counter.instructions += executed;
+        return executed;
+    }
+}
@@ -0,0 +1,59 @@
+package compilador.jmh;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Cada etapa do compilador sozinha (lex, parse, semantic, codegen, ssa e
+// peephole), sobre a saída das anteriores preparada no @Setup. As opções
+// de compilação valem para as etapas que dependem delas (-p ssa=true,false
+// -p unroll=1,4 ...); lex, parse e semantic não mudam com elas.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StageBenchmark {
+
+    @Param({ "lex", "parse", "semantic", "codegen", "ssa", "peephole" })
+    public String stage;
+
+    @Param({ "small", "large", "loop" })
+    public String program;
+
+    @Param({ "true" })
+    public boolean astOpt;
+
+    @Param({ "4" })
+    public int unroll;
+
+    @Param({ "true" })
+    public boolean ssa;
+
+    @Param({ "true" })
+    public boolean peephole;
+
+    private LongSupplier operation;
+
+    @Setup
+    public void setup() throws Throwable {
+        operation = Cases.operation(stage, program, "-", astOpt, unroll, ssa, peephole);
+    }
+
+    @Benchmark
+    public long stage() {
+        return operation.getAsLong();
+    }
+}